@@ -6,6 +6,8 @@ import java.nio.file.Paths;
 import org.eclipse.core.resources.IWorkspace;
 import org.eclipse.core.resources.IWorkspaceRoot;
 import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
 import org.eclipse.ui.plugin.AbstractUIPlugin;
 import org.osgi.framework.BundleContext;
 
@@ -51,4 +53,22 @@ public class Activator extends AbstractUIPlugin {
 	public static Activator getDefault() {
 		return INSTANCE;
 	}
+
+	/**
+	 * Log the error to the Eclipse error log
+	 *
+	 * @param message
+	 * @param e
+	 */
+	public static void log(final String message, final Throwable e) {
+		Activator activator = INSTANCE;
+
+		if (activator == null) {
+			// Plug-in was stopped (such as while shutting down)
+			e.printStackTrace();
+			return;
+		}
+
+		activator.getLog().log(new Status(IStatus.ERROR, PLUGIN_ID, message, e));
+	}
 }
@@ -18,11 +18,25 @@ public class DYCESearch {
 	private final DYCESearcher searcher;
 	private final Operator defaultOperator;
 	private final boolean shouldIncludeComments;
+	private final boolean shouldSortByRecency;
 	// Comment
 
 	public DYCESearch(final String text, final long delay, final boolean shouldSelectFirstResult, final int hitLimit,
 			final Optional<Query> extraQuery, final DYCESearcher searcher, final Operator defaultOperator,
 			final boolean shouldIncludeComments) {
+		this(text, delay, shouldSelectFirstResult, hitLimit, extraQuery, searcher, defaultOperator,
+				shouldIncludeComments, false);
+	}
+
+	/**
+	 *
+	 * @param shouldSortByRecency whether to show the matches from the most
+	 *            recently modified files first (instead of the best matches
+	 *            first)
+	 */
+	public DYCESearch(final String text, final long delay, final boolean shouldSelectFirstResult, final int hitLimit,
+			final Optional<Query> extraQuery, final DYCESearcher searcher, final Operator defaultOperator,
+			final boolean shouldIncludeComments, final boolean shouldSortByRecency) {
 		this.text = text;
 		this.delay = delay;
 		this.shouldSelectFirstResult = shouldSelectFirstResult;
@@ -31,6 +45,7 @@ public class DYCESearch {
 		this.searcher = searcher;
 		this.defaultOperator = defaultOperator;
 		this.shouldIncludeComments = shouldIncludeComments;
+		this.shouldSortByRecency = shouldSortByRecency;
 	}
 
 	public String getText() {
@@ -80,10 +95,14 @@ public class DYCESearch {
 		return this.shouldIncludeComments;
 	}
 
+	public boolean shouldSortByRecency() {
+		return this.shouldSortByRecency;
+	}
+
 	@Override
 	public int hashCode() {
 		return Objects.hash(this.extraQuery, this.hitLimit, this.text, this.searcher, this.defaultOperator,
-				this.shouldIncludeComments);
+				this.shouldIncludeComments, this.shouldSortByRecency);
 	}
 
 	@Override
@@ -101,7 +120,8 @@ public class DYCESearch {
 		return Objects.equals(this.extraQuery, other.extraQuery) && this.hitLimit == other.hitLimit
 				&& Objects.equals(this.text, other.text) && Objects.equals(this.searcher, other.searcher)
 				&& this.defaultOperator == other.defaultOperator
-				&& this.shouldIncludeComments == other.shouldIncludeComments;
+				&& this.shouldIncludeComments == other.shouldIncludeComments
+				&& this.shouldSortByRecency == other.shouldSortByRecency;
 	}
 
 	@Override
@@ -109,9 +129,11 @@ public class DYCESearch {
 		@NonNull
 		@SuppressWarnings("null")
 		String toString = String.format(
-				"DYCE Searching top %d hits for %s%s (%s; defaultOperator = %s; includeComments = %s)", this.hitLimit,
-				this.text, this.extraQuery.isPresent() ? " with extra query " + this.extraQuery.get() : "",
-				this.searcher.getIndexPath(), this.defaultOperator, this.shouldIncludeComments);
+				"DYCE Searching top %d hits for %s%s (%s; defaultOperator = %s; includeComments = %s; sortByRecency = %s)",
+				this.hitLimit, this.text,
+				this.extraQuery.isPresent() ? " with extra query " + this.extraQuery.get() : "",
+				this.searcher.getIndexPath(), this.defaultOperator, this.shouldIncludeComments,
+				this.shouldSortByRecency);
 
 		return toString;
 	}
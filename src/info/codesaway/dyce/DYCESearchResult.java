@@ -17,13 +17,28 @@ public class DYCESearchResult {
 	@Nullable
 	private final ScoreDoc lastDocument;
 
+	/**
+	 * Total number of hits (may be more if isTotalHitsExact is
+	 * <code>false</code>)
+	 */
+	private final long totalHits;
+	private final boolean isTotalHitsExact;
+
 	public DYCESearchResult(final DYCESearch search, final List<DYCESearchResultEntry> results,
 			final String message, final boolean isIndexCreated, @Nullable final ScoreDoc lastDocument) {
+		this(search, results, message, isIndexCreated, lastDocument, results.size(), true);
+	}
+
+	public DYCESearchResult(final DYCESearch search, final List<DYCESearchResultEntry> results,
+			final String message, final boolean isIndexCreated, @Nullable final ScoreDoc lastDocument,
+			final long totalHits, final boolean isTotalHitsExact) {
 		this.search = search;
 		this.results = results;
 		this.message = message;
 		this.isIndexCreated = isIndexCreated;
 		this.lastDocument = lastDocument;
+		this.totalHits = totalHits;
+		this.isTotalHitsExact = isTotalHitsExact;
 	}
 
 	public DYCESearch getSearch() {
@@ -46,4 +61,12 @@ public class DYCESearchResult {
 	public ScoreDoc getLastDocument() {
 		return this.lastDocument;
 	}
+
+	public long getTotalHits() {
+		return this.totalHits;
+	}
+
+	public boolean isTotalHitsExact() {
+		return this.isTotalHitsExact;
+	}
 }
@@ -0,0 +1,137 @@
+package info.codesaway.dyce;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import org.apache.lucene.search.ReferenceManager;
+import org.apache.lucene.search.SearcherManager;
+import org.eclipse.jdt.annotation.Nullable;
+
+/**
+ * Recent search results, so searching again for the same query (such as
+ * switching back and forth between queries) doesn't search the index
+ *
+ * <p>
+ * Results are keyed by the search and the version of the indexes they were
+ * found in, so results from before the index changed are never returned. The
+ * cache is also cleared each time a searcher manager refreshes, so old
+ * results don't take up space.
+ * </p>
+ */
+public final class DYCESearchResultCache {
+	// Least recently used results are removed first
+	// (synchronize on the map when using)
+	private static final Map<Key, DYCESearchResult> RESULTS = new LinkedHashMap<Key, DYCESearchResult>(16, 0.75f,
+			true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(final Map.Entry<Key, DYCESearchResult> eldest) {
+			return this.size() > DYCESettings.SEARCH_RESULT_CACHE_SIZE;
+		}
+	};
+
+	private DYCESearchResultCache() {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Clear the cache each time the searcher manager refreshes
+	 */
+	public static void listenTo(final SearcherManager searcherManager) {
+		searcherManager.addListener(new ReferenceManager.RefreshListener() {
+			@Override
+			public void beforeRefresh() {
+			}
+
+			@Override
+			public void afterRefresh(final boolean didRefresh) throws IOException {
+				if (didRefresh) {
+					clear();
+				}
+			}
+		});
+
+		// New searcher manager (such as after rebuilding the index), so versions may not match the old index
+		clear();
+	}
+
+	/**
+	 * Get the cached result for the search
+	 *
+	 * @param indexVersions the version of each index being searched
+	 * @param archiveGeneration the generation of the source archive readers
+	 *            being searched
+	 * @return the cached result or <code>null</code> if the search isn't cached
+	 */
+	@Nullable
+	public static DYCESearchResult get(final DYCESearch search, final List<Long> indexVersions,
+			final long archiveGeneration) {
+		DYCESearchResult result;
+
+		synchronized (RESULTS) {
+			result = RESULTS.get(new Key(search, indexVersions, archiveGeneration));
+		}
+
+		if (result == null) {
+			return null;
+		}
+
+		// Return with the new search (may be a different delay or way to select the results)
+		return new DYCESearchResult(search, result.getResults(), result.getMessage(), result.isIndexCreated(),
+				result.getLastDocument(), result.getTotalHits(), result.isTotalHitsExact());
+	}
+
+	public static void put(final DYCESearch search, final List<Long> indexVersions, final long archiveGeneration,
+			final DYCESearchResult result) {
+		if (DYCESettings.SEARCH_RESULT_CACHE_SIZE <= 0) {
+			return;
+		}
+
+		synchronized (RESULTS) {
+			RESULTS.put(new Key(search, indexVersions, archiveGeneration), result);
+		}
+	}
+
+	public static void clear() {
+		synchronized (RESULTS) {
+			RESULTS.clear();
+		}
+	}
+
+	private static final class Key {
+		private final DYCESearch search;
+		private final List<Long> indexVersions;
+		private final long archiveGeneration;
+
+		Key(final DYCESearch search, final List<Long> indexVersions, final long archiveGeneration) {
+			this.search = search;
+			this.indexVersions = indexVersions;
+			this.archiveGeneration = archiveGeneration;
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(this.search, this.indexVersions, this.archiveGeneration);
+		}
+
+		@Override
+		public boolean equals(final @Nullable Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (obj == null) {
+				return false;
+			}
+			if (this.getClass() != obj.getClass()) {
+				return false;
+			}
+			Key other = (Key) obj;
+			return Objects.equals(this.search, other.search) && this.indexVersions.equals(other.indexVersions)
+					&& this.archiveGeneration == other.archiveGeneration;
+		}
+	}
+}
@@ -1,16 +1,44 @@
 package info.codesaway.dyce;
 
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
+/**
+ * Group of indexes searched together
+ *
+ * <p>
+ * Each index (and each source archive index, if included) is searched at the
+ * same time, then the top hits are merged
+ * </p>
+ */
 public class DYCESearcher {
 	private final String name;
 	private final Path indexPath;
 	private final int hitLimit;
+	private final List<Path> additionalIndexPaths;
+	private final boolean shouldIncludeSourceArchives;
 
 	public DYCESearcher(final String name, final Path indexPath, final int hitLimit) {
+		this(name, indexPath, hitLimit, Collections.emptyList(), true);
+	}
+
+	/**
+	 *
+	 * @param indexPath the main index (cannot search until it's created)
+	 * @param additionalIndexPaths other indexes to search (such as an index
+	 *            shared by a team); skipped if they don't exist
+	 * @param shouldIncludeSourceArchives whether to also search the source
+	 *            archives (such as the JDK)
+	 */
+	public DYCESearcher(final String name, final Path indexPath, final int hitLimit,
+			final List<Path> additionalIndexPaths, final boolean shouldIncludeSourceArchives) {
 		this.name = name;
 		this.indexPath = indexPath;
 		this.hitLimit = hitLimit;
+		this.additionalIndexPaths = Collections.unmodifiableList(new ArrayList<>(additionalIndexPaths));
+		this.shouldIncludeSourceArchives = shouldIncludeSourceArchives;
 	}
 
 	public String getName() {
@@ -24,4 +52,12 @@ public class DYCESearcher {
 	public int getHitLimit() {
 		return this.hitLimit;
 	}
+
+	public List<Path> getAdditionalIndexPaths() {
+		return this.additionalIndexPaths;
+	}
+
+	public boolean shouldIncludeSourceArchives() {
+		return this.shouldIncludeSourceArchives;
+	}
 }
@@ -0,0 +1,94 @@
+package info.codesaway.dyce;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.SearcherFactory;
+
+/**
+ * Creates searchers which search an index's segments at the same time
+ *
+ * <p>
+ * Segments are grouped into slices, and each slice is searched on its own
+ * thread (from a pool shared by all the searchers). The pool is smaller than
+ * the number of processors (see DYCESettings.SEGMENT_SEARCH_THREAD_COUNT), so
+ * a broad query doesn't starve Eclipse's own jobs.
+ * </p>
+ */
+public class DYCESearcherFactory extends SearcherFactory {
+	// Most documents in a slice
+	// (small segments are searched together, since searching each on its own thread costs more than it saves)
+	private static final int MAX_DOCS_PER_SLICE = 250_000;
+
+	// Most segments in a slice
+	private static final int MAX_SEGMENTS_PER_SLICE = 5;
+
+	private static final ExecutorService EXECUTOR = Executors
+			.newFixedThreadPool(DYCESettings.SEGMENT_SEARCH_THREAD_COUNT, DYCESearcherFactory::createSegmentThread);
+
+	private static Thread createSegmentThread(final Runnable runnable) {
+		Thread thread = new Thread(runnable, "DYCE Segment Searcher");
+		// Don't prevent Eclipse from shutting down
+		thread.setDaemon(true);
+		return thread;
+	}
+
+	@Override
+	public IndexSearcher newSearcher(final IndexReader reader, final IndexReader previousReader) {
+		return createSearcher(reader);
+	}
+
+	/**
+	 * Create a searcher which searches the reader's slices at the same time
+	 *
+	 * <p>
+	 * Only searches using a CollectorManager use multiple threads (searching
+	 * with a single Collector searches each segment in turn)
+	 * </p>
+	 */
+	public static IndexSearcher createSearcher(final IndexReader reader) {
+		return new IndexSearcher(reader, EXECUTOR) {
+			@Override
+			protected LeafSlice[] slices(final List<LeafReaderContext> leaves) {
+				return DYCESearcherFactory.slices(leaves);
+			}
+		};
+	}
+
+	/**
+	 * Group the segments into slices
+	 *
+	 * <p>
+	 * Keeps the segments in order, so hits with the same score stay in
+	 * document order when the slices' hits are merged (otherwise, getting the
+	 * next page of results could skip or repeat hits)
+	 * </p>
+	 */
+	static IndexSearcher.LeafSlice[] slices(final List<LeafReaderContext> leaves) {
+		List<IndexSearcher.LeafSlice> slices = new ArrayList<>();
+		List<LeafReaderContext> slice = new ArrayList<>();
+		long docCount = 0;
+
+		for (LeafReaderContext leaf : leaves) {
+			slice.add(leaf);
+			docCount += leaf.reader().maxDoc();
+
+			if (docCount >= MAX_DOCS_PER_SLICE || slice.size() >= MAX_SEGMENTS_PER_SLICE) {
+				slices.add(new IndexSearcher.LeafSlice(slice.toArray(new LeafReaderContext[0])));
+				slice.clear();
+				docCount = 0;
+			}
+		}
+
+		if (!slice.isEmpty()) {
+			slices.add(new IndexSearcher.LeafSlice(slice.toArray(new LeafReaderContext[0])));
+		}
+
+		return slices.toArray(new IndexSearcher.LeafSlice[0]);
+	}
+}
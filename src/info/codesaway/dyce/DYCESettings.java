@@ -2,30 +2,189 @@ package info.codesaway.dyce;
 
 import java.io.IOException;
 import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.search.SearcherManager;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.FSDirectory;
 
+import info.codesaway.dyce.indexer.DYCEElementDictionary;
+import info.codesaway.dyce.indexer.DYCEFileIndexer;
+import info.codesaway.dyce.indexer.DYCEFileIndexers;
 import info.codesaway.dyce.indexer.DYCEIndexer;
 
 public class DYCESettings {
 	// TODO: read from XML
+	// Version of the documents for files which don't have an indexer
+	// (each indexer has its own version; see DYCEFileIndexer)
 	public static long DOCUMENT_VERSION = 2;
 
+	// TODO: read from XML
+	// Extensions of the files to index each line of (such as configuration files and SQL scripts)
+	public static List<String> LINE_INDEXED_EXTENSIONS = Arrays.asList("xml", "properties", "sql", "jsp", "yaml",
+			"yml");
+
+	// TODO: read from XML
+	// Largest file indexed by line which is read entirely by the parsers (larger files, such as SQL dumps, are read
+	// a part at a time as they are written, so use bounded memory)
+	public static long MAX_PARSED_LINE_FILE_SIZE = 8 * 1024 * 1024;
+
+	// TODO: read from XML
+	// Number of threads used to parse files when indexing
+	// (leave a processor free, so Eclipse stays responsive while indexing)
+	public static int PARSER_THREAD_COUNT = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+
+	// TODO: read from XML
+	// Whether to parse Java files from the same project together
+	// (much faster to resolve bindings, since only need to setup once for all the files)
+	public static boolean SHOULD_BATCH_PARSE = true;
+
+	// TODO: read from XML
+	// Whether to index Java files without resolving bindings, then resolve them in a low priority background job
+	// (resolving bindings is the slowest part of parsing, so method names are searchable much sooner)
+	public static boolean SHOULD_RESOLVE_BINDINGS_IN_BACKGROUND = true;
+
+	// TODO: read from XML
+	// Number of the slowest files to parse to show in the indexing statistics
+	// (helps find files which are slow to index, such as large generated sources)
+	public static int SLOWEST_FILE_COUNT = 10;
+
+	// TODO: read from XML
+	// Whether to suggest element names (such as method names) while typing in the search box
+	// (can also use Ctrl+Space to show them)
+	public static boolean SHOULD_SUGGEST_ELEMENT_NAMES = true;
+
+	// TODO: read from XML
+	// Most element names to suggest
+	public static int ELEMENT_SUGGESTION_COUNT = 15;
+
+	// TODO: read from XML
+	// Milliseconds to wait after the workspace index refreshes before rebuilding the element names suggested
+	// (refreshes while waiting are rebuilt together, such as while indexing)
+	public static long ELEMENT_DICTIONARY_REBUILD_DELAY = 2000;
+
+	// TODO: read from XML
+	// Whether to search while typing (otherwise, only searches when press Enter or F5)
+	public static boolean SHOULD_SEARCH_AS_YOU_TYPE = true;
+
+	// Time to wait after typing stops before searching (in milliseconds)
+	// (typing again restarts the wait, and cancels a search that's already running)
+	public static long SEARCH_AS_YOU_TYPE_DELAY = 250;
+
+	// TODO: read from XML
+	// Number of recent search results to keep, so searching again for the same query doesn't search the index
+	// (cleared each time the index changes; 0 to not cache results)
+	public static int SEARCH_RESULT_CACHE_SIZE = 50;
+
+	// TODO: read from XML
+	// Number of results to get at a time, when scrolling through the results
+	public static int RESULT_PAGE_SIZE = 100;
+
+	// TODO: read from XML
+	// Most results to show for a search
+	public static int MAX_RESULT_COUNT = 10_000;
+
+	// Number of files to parse together (when batch parsing)
+	public static int PARSE_BATCH_SIZE = 50;
+
+	// TODO: read from XML
+	// Number of threads used to walk the projects' directories
+	// (walking is mostly waiting on the file system, so can use every processor)
+	public static int WALKER_THREAD_COUNT = Runtime.getRuntime().availableProcessors();
+
+	// TODO: read from XML
+	// Whether to check every file when the view is created
+	// (otherwise, only indexes the work still outstanding when Eclipse last closed)
+	public static boolean SHOULD_CHECK_ALL_FILES_ON_STARTUP = false;
+
+	// TODO: read from XML
+	// How often to commit while indexing
+	// (indexed files are searchable right away using near real-time readers; committing just makes them durable)
+	public static int COMMIT_INTERVAL_SECONDS = 30;
+
+	// Number of indexed files before committing, even if the interval hasn't passed
+	public static int COMMIT_FILE_COUNT = 5000;
+
+	// TODO: read from XML
+	// Whether rebuilding the entire index bulk loads every file into a new index, which is swapped in once done
+	// (otherwise, marks every file as needing to be reindexed, then updates them the same as an incremental index)
+	public static boolean SHOULD_BULK_REBUILD_INDEX = true;
+
+	// Memory used to buffer documents when bulk loading (fewer, larger segments are written)
+	public static double BULK_RAM_BUFFER_MB = 256;
+
+	// Number of segments to merge down to once bulk loaded
+	public static int BULK_MERGE_SEGMENT_COUNT = 5;
+
+	// TODO: read from XML
+	// Whether to find changed files by walking the files and the index together (both in pathname order)
+	// (uses much less memory on large workspaces than reading every indexed file into memory first)
+	public static boolean SHOULD_MERGE_JOIN_INCREMENTAL_INDEX = true;
+
+	// TODO: read from XML
+	// Whether to sort the index by the files' last modified (most recent first)
+	// (searching for the most recent matches can then stop once it has enough hits in each segment)
+	// (changing this recreates the workspace index, the next time it's opened)
+	public static boolean SHOULD_SORT_INDEX_BY_RECENCY = true;
+
+	// TODO: read from XML
+	// Source archives to index, such as the JDK src.zip
+	// (each is indexed once into its own index, which is searched along with the workspace index)
+	// (can also give a directory, such as the local Maven repository, to index each "-sources.jar" in it)
+	public static List<Path> SOURCE_ARCHIVES = Arrays.asList(Paths.get("C:\\Java\\jdk8\\src.zip"));
+
+	// TODO: read from XML
+	// Packages to index from the JDK src.zip
+	// (skips the internal packages, such as sun and com.sun)
+	public static List<String> JDK_SOURCE_PACKAGES = Arrays.asList("java", "javax");
+
 	// TODO: does it need to be concurrent?
 	private static final Map<Path, SearcherManager> SEARCHER_MANAGERS = new ConcurrentHashMap<>();
 
+	// TODO: read from XML
+	// Other indexes to search along with the workspace (such as an index shared by a team)
+	// (each index is searched at the same time, so searching more indexes takes about as long as the slowest one)
+	public static List<Path> ADDITIONAL_INDEX_PATHS = Collections.emptyList();
+
+	// TODO: read from XML
+	// Threads used to search an index's segments at the same time (shared by all searches)
+	// (half the processors, so a broad query doesn't starve Eclipse's own jobs)
+	public static int SEGMENT_SEARCH_THREAD_COUNT = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+
+	// TODO: read from XML
+	// Most indexes to search at the same time
+	// (the rest of the processors, so a query uses at most about one thread per processor in total; an index with a
+	// single slice is searched on its own thread, while one with more waits for the segment threads)
+	public static int SEARCH_THREAD_COUNT = Math.max(1,
+			Runtime.getRuntime().availableProcessors() - SEGMENT_SEARCH_THREAD_COUNT);
+
 	// TODO: make use of the hit limit
 	public static final DYCESearcher SEARCHER_WORKSPACE = new DYCESearcher("Workspace", DYCEIndexer.INDEX_PATH,
-			5);
+			5, ADDITIONAL_INDEX_PATHS, true);
+
+	/**
+	 * Version of the documents for files with the extension
+	 *
+	 * <p>
+	 * Stored in each file's metadocument, so files indexed with a different
+	 * version are reindexed
+	 * </p>
+	 */
+	public static long getDocumentVersion(final String extension) {
+		DYCEFileIndexer indexer = DYCEFileIndexers.get(extension);
+		return indexer != null ? indexer.getDocumentVersion() : DOCUMENT_VERSION;
+	}
 
 	public static boolean shouldIndexFile(final Path path) {
-		String pathString = path.toString();
-		return pathString.endsWith(".java");
+		// Only index files which have an indexer
+		return DYCEFileIndexers.get(path) != null;
 	}
 
 	public static DYCESearcher getSearcherWorkspace() {
@@ -61,18 +220,65 @@ public class DYCESettings {
 
 		// http://blog.mikemccandless.com/2011/09/lucenes-searchermanager-simplifies.html
 
-		Directory dir = FSDirectory.open(indexPath);
+		// Workspace index may have been rebuilt into another directory
+		Directory dir = FSDirectory
+				.open(indexPath.equals(DYCEIndexer.INDEX_PATH) ? DYCEIndexer.getIndexDirectory() : indexPath);
 
 		// If index doesn't already exist, cannot search it
 		if (!DirectoryReader.indexExists(dir)) {
 			return null;
 		}
 
-		SearcherManager searcherManager = new SearcherManager(dir, null);
+		SearcherManager searcherManager = new SearcherManager(dir, new DYCESearcherFactory());
 		SEARCHER_MANAGERS.put(indexPath, searcherManager);
+		DYCESearchResultCache.listenTo(searcherManager);
+		listenForElementNames(indexPath, searcherManager);
 		return searcherManager;
 	}
 
+	/**
+	 * Search the index using the writer's near real-time readers
+	 *
+	 * <p>
+	 * Written documents are then searchable after refreshing, without
+	 * committing them
+	 * </p>
+	 *
+	 * <p>
+	 * Replaces any existing SearcherManager for the index, which is closed. A
+	 * search which got the previous one, but hasn't acquired a searcher from it
+	 * yet, gets an AlreadyClosedException when acquiring, and should get the
+	 * SearcherManager again (as DYCEFederatedSearcher does).
+	 * </p>
+	 *
+	 * @return the SearcherManager
+	 * @throws IOException
+	 */
+	public static SearcherManager openNearRealTimeSearcherManager(final Path indexPath, final IndexWriter writer)
+			throws IOException {
+		SearcherManager searcherManager = new SearcherManager(writer, new DYCESearcherFactory());
+		SearcherManager previous = SEARCHER_MANAGERS.put(indexPath, searcherManager);
+
+		// Searches using the previous one can still release their searchers
+		if (previous != null) {
+			previous.close();
+		}
+
+		DYCESearchResultCache.listenTo(searcherManager);
+		listenForElementNames(indexPath, searcherManager);
+		return searcherManager;
+	}
+
+	/**
+	 * Keep the element names suggested while typing up to date with the
+	 * workspace index
+	 */
+	private static void listenForElementNames(final Path indexPath, final SearcherManager searcherManager) {
+		if (indexPath.equals(DYCEIndexer.INDEX_PATH)) {
+			DYCEElementDictionary.listenTo(searcherManager);
+		}
+	}
+
 	public static void maybeRefreshSearcherManagers() {
 		// As part of initialization refresh managers
 		// (allows quick refreshing; also, this way refreshes if closed then
@@ -96,5 +302,9 @@ public class DYCESettings {
 				e.printStackTrace();
 			}
 		}
+
+		// Create new ones if the view is opened again
+		SEARCHER_MANAGERS.clear();
+		DYCESearchResultCache.clear();
 	}
 }
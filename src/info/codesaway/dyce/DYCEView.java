@@ -23,10 +23,15 @@ import org.eclipse.core.runtime.IPath;
 import org.eclipse.core.runtime.jobs.Job;
 import org.eclipse.jdt.annotation.NonNull;
 import org.eclipse.jdt.annotation.NonNullByDefault;
-import org.eclipse.jface.viewers.ArrayContentProvider;
+import org.eclipse.jface.bindings.keys.KeyStroke;
+import org.eclipse.jface.fieldassist.ContentProposal;
+import org.eclipse.jface.fieldassist.ContentProposalAdapter;
+import org.eclipse.jface.fieldassist.IContentProposal;
+import org.eclipse.jface.fieldassist.IContentProposalProvider;
 import org.eclipse.jface.viewers.ColumnLabelProvider;
 import org.eclipse.jface.viewers.DelegatingStyledCellLabelProvider;
 import org.eclipse.jface.viewers.DelegatingStyledCellLabelProvider.IStyledLabelProvider;
+import org.eclipse.jface.viewers.ILazyContentProvider;
 import org.eclipse.jface.viewers.StructuredSelection;
 import org.eclipse.jface.viewers.StyledString;
 import org.eclipse.jface.viewers.TableViewer;
@@ -41,6 +46,7 @@ import org.eclipse.swt.layout.GridData;
 import org.eclipse.swt.layout.GridLayout;
 import org.eclipse.swt.widgets.Composite;
 import org.eclipse.swt.widgets.Display;
+import org.eclipse.swt.widgets.Label;
 import org.eclipse.swt.widgets.Table;
 import org.eclipse.swt.widgets.TableColumn;
 import org.eclipse.ui.IEditorInput;
@@ -53,10 +59,17 @@ import org.eclipse.ui.PlatformUI;
 import org.eclipse.ui.model.WorkbenchLabelProvider;
 import org.eclipse.ui.part.ViewPart;
 
+import info.codesaway.dyce.indexer.DYCEElementDictionary;
+import info.codesaway.dyce.indexer.DYCEIndexStatistics;
 import info.codesaway.dyce.indexer.DYCEIndexer;
+import info.codesaway.dyce.indexer.PathWithAttributes;
+import info.codesaway.dyce.indexer.SourceArchiveIndexer;
 import info.codesaway.dyce.jobs.DYCEIndexJob;
+import info.codesaway.dyce.jobs.DYCERebuildIndexJob;
+import info.codesaway.dyce.jobs.DYCERefreshSearchersJob;
+import info.codesaway.dyce.jobs.DYCEResolveBindingsJob;
 import info.codesaway.dyce.jobs.DYCESearchJob;
-import info.codesaway.util.indexer.PathWithLastModified;
+import info.codesaway.dyce.util.StyledTextContentAdapter;
 import info.codesaway.util.indexer.PathWithTerm;
 import info.codesaway.util.regex.Matcher;
 import info.codesaway.util.regex.Pattern;
@@ -69,15 +82,49 @@ public class DYCEView extends ViewPart {
 
 	private StyledText searchText;
 
+	// Statistics from the last time indexed (hover to see each stage and the slowest files)
+	private Label indexStatisticsLabel;
+
+	// Suggests element names (such as method names) while typing in the search box
+	private ContentProposalAdapter elementProposals;
+
+	// Characters which show the element name suggestions (if DYCESettings.SHOULD_SUGGEST_ELEMENT_NAMES)
+	private static final char[] ELEMENT_NAME_CHARACTERS = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789_$"
+			.toCharArray();
+
+	// Delay after typing before suggesting element names (in milliseconds)
+	private static final int ELEMENT_SUGGESTION_DELAY = 150;
+
+	// Shortest word to suggest element names for
+	private static final int ELEMENT_SUGGESTION_MIN_LENGTH = 2;
+
+	// Number of results to show
+	private static final int DEFAULT_HIT_LIMIT = 5;
+
 	public static final String ERROR_STATUS = "ERROR";
 
 	private static DYCEIndexJob indexJob;
 	private static DYCESearchJob searchJob;
+	private static DYCERebuildIndexJob rebuildIndexJob;
+	private static DYCEResolveBindingsJob resolveBindingsJob;
+	private static DYCERefreshSearchersJob refreshSearchersJob;
 
 	private TableViewer viewer;
 
+	// Results loaded so far (the table is virtual, so only creates rows for the results shown)
+	private final List<DYCESearchResultEntry> results = new ArrayList<>();
+
+	// Last page of results, used to get the next page when scroll past the loaded results
+	private DYCESearchResult lastResult;
+
+	// Whether getting the next page of results
+	private boolean isLoadingNextPage;
+
 	private long lastIndexTime = 0;
 
+	// When the results of the last search were shown (so indexing doesn't wipe out the search's message)
+	private long lastSearchDoneTime = 0;
+
 	// Initialize with true, so if index doesn't exist,
 	// the first time we query, it will create the index
 	// (since isIndexCreated is true and if the index didn't exist when call
@@ -103,7 +150,7 @@ public class DYCEView extends ViewPart {
 		// }
 
 		ArrayDeque<IResourceDelta> deltas = new ArrayDeque<>();
-		ArrayDeque<PathWithLastModified> paths = new ArrayDeque<>();
+		ArrayDeque<PathWithAttributes> paths = new ArrayDeque<>();
 		ArrayDeque<Term> deletes = new ArrayDeque<>();
 		deltas.add(event.getDelta());
 
@@ -136,7 +183,7 @@ public class DYCEView extends ViewPart {
 						IProject iProject = resource1.getProject();
 						String project = iProject != null ? iProject.getName() : "";
 						// System.out.println("Changed! " + path);
-						paths.add(new PathWithLastModified(project, path));
+						paths.add(PathWithAttributes.of(project, path));
 						//						paths.add(PathWithTerm.wrap(project, path));
 					}
 				} else if ((delta.getKind() & IResourceDelta.REMOVED) != 0) {
@@ -180,10 +227,15 @@ public class DYCEView extends ViewPart {
 
 		this.createSearchText(parent);
 
+		this.createIndexStatisticsLabel(parent);
+
 		this.createViewer(parent);
 
-		indexJob = new DYCEIndexJob(this);
+		resolveBindingsJob = new DYCEResolveBindingsJob(this);
+		indexJob = new DYCEIndexJob(this, resolveBindingsJob);
 		searchJob = new DYCESearchJob(this);
+		rebuildIndexJob = new DYCERebuildIndexJob(this, indexJob);
+		refreshSearchersJob = new DYCERefreshSearchersJob();
 
 		// Add change listener here instead of Activator
 		// (since don't need to watch for changes unless the CASTLE Searching
@@ -200,14 +252,24 @@ public class DYCEView extends ViewPart {
 		INSTANCE = this;
 
 		// Index the current files when the view is created
-		this.index();
+		// (if the index was already built, only need to index the work still outstanding when Eclipse last closed)
+		if (DYCESettings.SHOULD_CHECK_ALL_FILES_ON_STARTUP || !indexJob.scheduleJournal()) {
+			this.index();
+		} else {
+			this.lastIndexTime = System.currentTimeMillis();
+
+			// Resolve any bindings not resolved when Eclipse last closed
+			indexJob.scheduleResolveBindings();
+		}
 	}
 
 	private void createViewer(final Composite parent) {
 		// Source:
 		// https://www.vogella.com/tutorials/EclipseJFaceTable/article.html
+		// Virtual, so only creates rows as they're shown
+		// (results are loaded a page at a time, as scroll through them)
 		this.viewer = new TableViewer(parent,
-				SWT.MULTI | SWT.H_SCROLL | SWT.V_SCROLL | SWT.FULL_SELECTION | SWT.BORDER);
+				SWT.MULTI | SWT.H_SCROLL | SWT.V_SCROLL | SWT.FULL_SELECTION | SWT.BORDER | SWT.VIRTUAL);
 
 		this.createColumns(parent, this.viewer);
 
@@ -215,7 +277,9 @@ public class DYCEView extends ViewPart {
 		table.setHeaderVisible(true);
 		table.setLinesVisible(true);
 
-		this.viewer.setContentProvider(new ArrayContentProvider());
+		this.viewer.setContentProvider((ILazyContentProvider) this::updateResult);
+		this.viewer.setUseHashlookup(true);
+		this.viewer.setInput(this.results);
 		this.viewer.getControl().setLayoutData(new GridData(SWT.FILL, SWT.FILL, true, true, 2, 1));
 		// this.viewer.getControl().setLayoutData(new GridData(SWT.FILL,
 		// SWT.FILL, true, true, 3, 1));
@@ -368,7 +432,14 @@ public class DYCEView extends ViewPart {
 		if (System.currentTimeMillis() - this.lastIndexTime >= INDEX_DELAY) {
 			// Perform an incremental index update
 			this.index();
-			DYCESettings.maybeRefreshSearcherManagers();
+
+			// Refreshing flushes the index writer, so don't do on the UI thread
+			refreshSearchersJob.schedule();
+		}
+
+		// Enter chooses the suggested element name instead of searching
+		if (this.elementProposals != null && this.elementProposals.isProposalPopupOpen()) {
+			return;
 		}
 
 		switch (e.keyCode) {
@@ -379,14 +450,17 @@ public class DYCEView extends ViewPart {
 			this.searchText.selectAll();
 			//			this.outputMethods();
 
-			int hitLimit = 5;
+			int hitLimit = DEFAULT_HIT_LIMIT;
 			//			int hitLimit = this.getHitLimit(e);
 			//
 			//			if (this.isIncrementalSearch() && DEFAULT_INCREMENTAL_HIT_LIMIT > hitLimit) {
 			//				hitLimit = DEFAULT_INCREMENTAL_HIT_LIMIT;
 			//			}
 
-			this.search(0, false, hitLimit);
+			// Ctrl+Enter shows the matches in the most recently modified files first
+			boolean shouldSortByRecency = (e.stateMask & SWT.MOD1) != 0;
+
+			this.search(0, false, hitLimit, Optional.empty(), shouldSortByRecency);
 			return;
 		}
 	}
@@ -413,6 +487,22 @@ public class DYCEView extends ViewPart {
 	@NonNullByDefault
 	public void search(final long delay, final boolean shouldSelectFirstResult, final int hitLimit,
 			final Optional<Query> extraQuery) {
+		this.search(delay, shouldSelectFirstResult, hitLimit, extraQuery, false);
+	}
+
+	/**
+	 *
+	 *
+	 * @param delay
+	 *            the delay to which before starting the search (enter 0 to
+	 *            search immediately)
+	 * @param shouldSortByRecency
+	 *            whether to show the matches in the most recently modified
+	 *            files first (instead of the best matches first)
+	 */
+	@NonNullByDefault
+	public void search(final long delay, final boolean shouldSelectFirstResult, final int hitLimit,
+			final Optional<Query> extraQuery, final boolean shouldSortByRecency) {
 		//		DYCESearcher searcher = DYCESettings.getSearcher(this.comboDropDown.getText());
 		DYCESearcher searcher = DYCESettings.getSearcherWorkspace();
 
@@ -436,7 +526,7 @@ public class DYCEView extends ViewPart {
 		//		boolean shouldIncludeComments = this.shouldIncludeComments();
 
 		DYCESearch search = new DYCESearch(text, delay, shouldSelectFirstResult, hitLimit, extraQuery, searcher,
-				defaultOperator, shouldIncludeComments);
+				defaultOperator, shouldIncludeComments, shouldSortByRecency);
 
 		// Determines whether to run the current search or the new search
 		searchJob.handleSearch(search);
@@ -575,6 +665,12 @@ public class DYCEView extends ViewPart {
 		this.searchText.addModifyListener(event -> {
 			// Format text
 			this.styleSearchText();
+
+			if (DYCESettings.SHOULD_SEARCH_AS_YOU_TYPE) {
+				// Search once stop typing
+				// (each change reschedules the search, cancelling the prior one even if it's running)
+				this.search(DYCESettings.SEARCH_AS_YOU_TYPE_DELAY, false, DEFAULT_HIT_LIMIT);
+			}
 		});
 
 		this.searchText.addKeyListener(new KeyAdapter() {
@@ -588,6 +684,85 @@ public class DYCEView extends ViewPart {
 			//				DYCEView.this.handleKeyReleasedInSearchText(e);
 			//			}
 		});
+
+		this.createElementProposals();
+	}
+
+	/**
+	 * Suggest element names (such as method names) for the word being typed
+	 *
+	 * <p>
+	 * Names are looked up in memory (see DYCEElementDictionary), so doesn't
+	 * search the index for each key typed
+	 * </p>
+	 */
+	private void createElementProposals() {
+		IContentProposalProvider provider = (contents, position) -> {
+			String word = getWordBefore(contents, position);
+
+			if (word.length() < ELEMENT_SUGGESTION_MIN_LENGTH) {
+				return new IContentProposal[0];
+			}
+
+			return DYCEElementDictionary.lookup(word, DYCESettings.ELEMENT_SUGGESTION_COUNT)
+					.stream()
+					.map(ContentProposal::new)
+					.toArray(IContentProposal[]::new);
+		};
+
+		// Can always use Ctrl+Space to show the suggestions
+		char[] autoActivationCharacters = DYCESettings.SHOULD_SUGGEST_ELEMENT_NAMES ? ELEMENT_NAME_CHARACTERS
+				: null;
+
+		this.elementProposals = new ContentProposalAdapter(this.searchText, new StyledTextContentAdapter(), provider,
+				KeyStroke.getInstance(SWT.CTRL, ' '), autoActivationCharacters);
+		this.elementProposals.setAutoActivationDelay(ELEMENT_SUGGESTION_DELAY);
+
+		// Replace the word being typed with the chosen name
+		this.elementProposals.setProposalAcceptanceStyle(ContentProposalAdapter.PROPOSAL_IGNORE);
+		this.elementProposals.addContentProposalListener(proposal -> {
+			int position = this.searchText.getCaretOffset();
+			int start = position - getWordBefore(this.searchText.getText(), position).length();
+
+			this.searchText.replaceTextRange(start, position - start, proposal.getContent());
+			this.searchText.setCaretOffset(start + proposal.getContent().length());
+		});
+	}
+
+	/**
+	 * Get the word (such as a partial method name) before the position
+	 */
+	private static String getWordBefore(final String text, final int position) {
+		int start = position;
+
+		while (start > 0 && Character.isJavaIdentifierPart(text.charAt(start - 1))) {
+			start--;
+		}
+
+		return text.substring(start, position);
+	}
+
+	private void createIndexStatisticsLabel(final Composite parent) {
+		this.indexStatisticsLabel = new Label(parent, SWT.NONE);
+		this.indexStatisticsLabel.setLayoutData(new GridData(SWT.END, SWT.CENTER, false, false));
+	}
+
+	/**
+	 * Show the indexing statistics (the summary, with each stage and the
+	 * slowest files to parse in the tooltip)
+	 *
+	 * <p>
+	 * Must be called from the UI thread
+	 * </p>
+	 */
+	public void setIndexStatistics(final DYCEIndexStatistics statistics) {
+		if (this.indexStatisticsLabel.isDisposed()) {
+			return;
+		}
+
+		this.indexStatisticsLabel.setText(statistics.getSummary());
+		this.indexStatisticsLabel.setToolTipText(statistics.getDashboard());
+		this.indexStatisticsLabel.getParent().layout();
 	}
 
 	public TableViewer getViewer() {
@@ -655,6 +830,23 @@ public class DYCEView extends ViewPart {
 		indexJob.schedule(true, Collections.emptyList(), Collections.emptyList());
 	}
 
+	/**
+	 * Rebuild the entire index (bulk loads every file into a new index, which
+	 * is swapped in once done)
+	 *
+	 * <p>
+	 * Searches keep using the existing index while rebuilding
+	 * </p>
+	 */
+	public void rebuildIndex() {
+		this.lastIndexTime = System.currentTimeMillis();
+		// Also look for source archives added since Eclipse started
+		SourceArchiveIndexer.rescanArchives();
+		// Start over if already rebuilding
+		rebuildIndexJob.cancel();
+		rebuildIndexJob.schedule();
+	}
+
 	public static boolean isIndexing() {
 		return indexJob.getState() == Job.RUNNING;
 	}
@@ -734,6 +926,10 @@ public class DYCEView extends ViewPart {
 		// result.append(entry.getContent(), JAVA_STRING_STYLER);
 	}
 
+	public long getLastSearchDoneTime() {
+		return this.lastSearchDoneTime;
+	}
+
 	public String getStatus() {
 		//		if (this.statusLabel.isDisposed()) {
 		return "UNKNOWN";
@@ -762,8 +958,85 @@ public class DYCEView extends ViewPart {
 		//		}
 	}
 
-	public void setResults(final List<DYCESearchResultEntry> results) {
-		this.viewer.setInput(results);
+	/**
+	 * Show the first page of results for a search
+	 */
+	public void setResults(final DYCESearchResult result) {
+		this.lastSearchDoneTime = System.currentTimeMillis();
+		this.results.clear();
+		this.results.addAll(result.getResults());
+		this.lastResult = result;
+		this.isLoadingNextPage = false;
+
+		this.viewer.setItemCount(this.getResultCount(result));
+		this.viewer.refresh();
+	}
+
+	/**
+	 * Add the next page of results
+	 */
+	public void appendResults(final DYCESearchResult result) {
+		// Ignore if a new search was done since
+		if (this.lastResult == null || !result.getSearch().equals(this.lastResult.getSearch())) {
+			return;
+		}
+
+		this.results.addAll(result.getResults());
+		this.lastResult = result;
+		this.isLoadingNextPage = false;
+
+		this.viewer.setItemCount(this.getResultCount(result));
+		// Only updates the rows being shown
+		this.viewer.refresh();
+	}
+
+	/**
+	 * Allow getting the next page again (such as if getting it was canceled or
+	 * couldn't search)
+	 */
+	public void nextPageFailed() {
+		this.isLoadingNextPage = false;
+	}
+
+	/**
+	 * Get the number of rows to show in the table
+	 *
+	 * <p>
+	 * Includes the results not loaded yet (the next page is loaded once they're
+	 * shown)
+	 * </p>
+	 */
+	private int getResultCount(final DYCESearchResult result) {
+		long count;
+
+		if (result.getLastDocument() == null || result.getResults().isEmpty()) {
+			// No more results
+			count = this.results.size();
+		} else if (result.isTotalHitsExact()) {
+			count = result.getTotalHits();
+		} else {
+			// Only counted some of the hits, so show one more row than loaded, to get the next page once it's shown
+			count = Math.max(result.getTotalHits(), this.results.size() + 1L);
+		}
+
+		return (int) Math.min(count, DYCESettings.MAX_RESULT_COUNT);
+	}
+
+	/**
+	 * Show the result in the table's row (called by the table as the row is
+	 * shown)
+	 */
+	private void updateResult(final int index) {
+		if (index < this.results.size()) {
+			this.viewer.replace(this.results.get(index), index);
+			return;
+		}
+
+		// Row is shown, but isn't loaded yet
+		if (!this.isLoadingNextPage && this.lastResult != null) {
+			this.isLoadingNextPage = true;
+			searchJob.scheduleNextPage(this.lastResult, this.results.size());
+		}
 	}
 
 	// TODO: implement
@@ -796,6 +1069,28 @@ public class DYCEView extends ViewPart {
 			}
 		}
 
+		if (resolveBindingsJob != null) {
+			resolveBindingsJob.cancel();
+
+			try {
+				resolveBindingsJob.join();
+			} catch (InterruptedException e) {
+				// TODO Auto-generated catch block
+				e.printStackTrace();
+			}
+		}
+
+		if (rebuildIndexJob != null) {
+			rebuildIndexJob.cancel();
+
+			try {
+				rebuildIndexJob.join();
+			} catch (InterruptedException e) {
+				// TODO Auto-generated catch block
+				e.printStackTrace();
+			}
+		}
+
 		if (searchJob != null) {
 			searchJob.cancel();
 			try {
@@ -804,9 +1099,12 @@ public class DYCEView extends ViewPart {
 				// TODO Auto-generated catch block
 				e.printStackTrace();
 			}
+
+			searchJob.releasePagedSearcher();
 		}
 
 		DYCESettings.closeSearcherManagers();
+		SourceArchiveIndexer.closeReaders();
 
 		DYCEIndexer.closeWriter();
 	}
@@ -0,0 +1,49 @@
+package info.codesaway.dyce.indexer;
+
+import java.util.Iterator;
+
+import org.apache.lucene.document.Document;
+
+/**
+ * Counts the documents as they are read
+ *
+ * <p>
+ * Documents may be created lazily (see
+ * {@link DYCEFileIndexer#createDocuments(PathWithAttributes)}), so they can
+ * only be counted once written
+ * </p>
+ */
+class CountedDocuments implements Iterable<Document> {
+	private final Iterable<Document> documents;
+	private int count;
+
+	CountedDocuments(final Iterable<Document> documents) {
+		this.documents = documents;
+	}
+
+	@Override
+	public Iterator<Document> iterator() {
+		Iterator<Document> iterator = this.documents.iterator();
+
+		return new Iterator<Document>() {
+			@Override
+			public boolean hasNext() {
+				return iterator.hasNext();
+			}
+
+			@Override
+			public Document next() {
+				Document document = iterator.next();
+				CountedDocuments.this.count++;
+				return document;
+			}
+		};
+	}
+
+	/**
+	 * Number of documents read
+	 */
+	int getCount() {
+		return this.count;
+	}
+}
@@ -0,0 +1,183 @@
+package info.codesaway.dyce.indexer;
+
+import static info.codesaway.util.indexer.IndexerUtilities.FULL_PATH_FIELD;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.lucene.document.BinaryDocValuesField;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.document.SortedDocValuesField;
+import org.apache.lucene.document.StoredField;
+import org.apache.lucene.index.BinaryDocValues;
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.index.SortedDocValues;
+import org.apache.lucene.util.BytesRef;
+
+/**
+ * Fields shown in the search results, which are also indexed as doc values
+ *
+ * <p>
+ * Search results are read from the doc values, so showing a result doesn't
+ * need to decompress a block of stored fields. Content (or a comment) longer
+ * than MAX_DOC_VALUES_LENGTH is only stored, and is read from the stored
+ * fields.
+ * </p>
+ */
+public final class DYCEDisplayFields {
+	// Fields with a single value, which is often shared by many documents (such as the file)
+	private static final String[] SORTED_FIELDS = { FULL_PATH_FIELD, "file", "element", "type", "ext" };
+
+	// Fields with text, which is usually different for each document
+	private static final String[] BINARY_FIELDS = { "content", "comment" };
+
+	private static final String LINE_FIELD = "line";
+
+	// Set if the document's content or comment is too long to put in doc values
+	private static final String STORED_ONLY_FIELD = "storedOnly";
+
+	private static final Set<String> BINARY_FIELD_NAMES = new HashSet<>(Arrays.asList(BINARY_FIELDS));
+
+	// Longest content (or comment) to put in doc values
+	public static final int MAX_DOC_VALUES_LENGTH = 1000;
+
+	private DYCEDisplayFields() {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Add the doc values for the display fields already added to the document
+	 *
+	 * <p>
+	 * Called once all the fields are added (uses the stored values)
+	 * </p>
+	 */
+	static void addDocValues(final Document document) {
+		for (String field : SORTED_FIELDS) {
+			String value = document.get(field);
+
+			if (value != null) {
+				document.add(new SortedDocValuesField(field, new BytesRef(value)));
+			}
+		}
+
+		boolean isStoredOnly = false;
+
+		for (String field : BINARY_FIELDS) {
+			String value = document.get(field);
+
+			if (value == null) {
+				continue;
+			}
+
+			if (value.length() > MAX_DOC_VALUES_LENGTH) {
+				isStoredOnly = true;
+			} else {
+				document.add(new BinaryDocValuesField(field, new BytesRef(value)));
+			}
+		}
+
+		if (isStoredOnly) {
+			document.add(new NumericDocValuesField(STORED_ONLY_FIELD, 1));
+		}
+
+		String line = document.get(LINE_FIELD);
+
+		if (line != null) {
+			document.add(new NumericDocValuesField(LINE_FIELD, Integer.parseInt(line)));
+		}
+	}
+
+	/**
+	 * Reads the display fields of documents in a segment
+	 *
+	 * <p>
+	 * Doc values can only be read forward, so documents must be read in
+	 * increasing order
+	 * </p>
+	 */
+	public static final class Reader {
+		private final LeafReader reader;
+
+		private final SortedDocValues[] sortedValues = new SortedDocValues[SORTED_FIELDS.length];
+		private final BinaryDocValues[] binaryValues = new BinaryDocValues[BINARY_FIELDS.length];
+		private final NumericDocValues lineValues;
+		private final NumericDocValues storedOnlyValues;
+
+		public Reader(final LeafReader reader) throws IOException {
+			this.reader = reader;
+
+			// Segments written before the display fields had doc values have the fields, but without doc values
+			// (so use empty doc values, instead of DocValues.getSorted, which would throw an exception)
+			for (int i = 0; i < SORTED_FIELDS.length; i++) {
+				SortedDocValues values = reader.getSortedDocValues(SORTED_FIELDS[i]);
+				this.sortedValues[i] = values != null ? values : DocValues.emptySorted();
+			}
+
+			for (int i = 0; i < BINARY_FIELDS.length; i++) {
+				BinaryDocValues values = reader.getBinaryDocValues(BINARY_FIELDS[i]);
+				this.binaryValues[i] = values != null ? values : DocValues.emptyBinary();
+			}
+
+			this.lineValues = getNumeric(reader, LINE_FIELD);
+			this.storedOnlyValues = getNumeric(reader, STORED_ONLY_FIELD);
+		}
+
+		private static NumericDocValues getNumeric(final LeafReader reader, final String field) throws IOException {
+			NumericDocValues values = reader.getNumericDocValues(field);
+			return values != null ? values : DocValues.emptyNumeric();
+		}
+
+		/**
+		 * Read the display fields of the document
+		 *
+		 * @param docId the document's id in the segment
+		 * @return the document with the display fields
+		 */
+		public Document read(final int docId) throws IOException {
+			// Indexed before the display fields had doc values
+			if (!this.lineValues.advanceExact(docId)) {
+				return this.reader.document(docId);
+			}
+
+			Document document = new Document();
+			document.add(new StoredField(LINE_FIELD, (int) this.lineValues.longValue()));
+
+			for (int i = 0; i < SORTED_FIELDS.length; i++) {
+				SortedDocValues values = this.sortedValues[i];
+
+				if (values.advanceExact(docId)) {
+					document.add(new StoredField(SORTED_FIELDS[i], values.lookupOrd(values.ordValue()).utf8ToString()));
+				}
+			}
+
+			if (this.storedOnlyValues.advanceExact(docId)) {
+				// Content is too long for doc values
+				Document storedDocument = this.reader.document(docId, BINARY_FIELD_NAMES);
+
+				for (String field : BINARY_FIELDS) {
+					String value = storedDocument.get(field);
+
+					if (value != null) {
+						document.add(new StoredField(field, value));
+					}
+				}
+			} else {
+				for (int i = 0; i < BINARY_FIELDS.length; i++) {
+					BinaryDocValues values = this.binaryValues[i];
+
+					if (values.advanceExact(docId)) {
+						document.add(new StoredField(BINARY_FIELDS[i], values.binaryValue().utf8ToString()));
+					}
+				}
+			}
+
+			return document;
+		}
+	}
+}
@@ -0,0 +1,443 @@
+package info.codesaway.dyce.indexer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.MultiReader;
+import org.apache.lucene.index.SortedSetDocValues;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.ReferenceManager;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.IntsRefBuilder;
+import org.apache.lucene.util.automaton.Automata;
+import org.apache.lucene.util.automaton.ByteRunAutomaton;
+import org.apache.lucene.util.automaton.LevenshteinAutomata;
+import org.apache.lucene.util.automaton.Operations;
+import org.apache.lucene.util.fst.Builder;
+import org.apache.lucene.util.fst.FST;
+import org.apache.lucene.util.fst.PositiveIntOutputs;
+import org.apache.lucene.util.fst.Util;
+import org.eclipse.jdt.annotation.Nullable;
+
+import info.codesaway.dyce.DYCESettings;
+import info.codesaway.dyce.jobs.DYCEElementDictionaryJob;
+
+/**
+ * In-memory dictionary of the indexed element names (such as method names),
+ * used to complete names as they are typed
+ *
+ * <p>
+ * Names are stored in FSTs (one keyed by the lowercase name and one by the
+ * name's camelCase initials), so lookups don't need to search the index.
+ * Rebuilt in the background after the workspace searcher refreshes (refreshes
+ * within {@link DYCESettings#ELEMENT_DICTIONARY_REBUILD_DELAY} of each other
+ * are rebuilt once); the names in each index segment are cached, so only new
+ * segments are read. Includes the source archives (such as the JDK).
+ * </p>
+ */
+public final class DYCEElementDictionary {
+	/**
+	 * Field with the element's name (the whole name, unlike the analyzed
+	 * "element" field)
+	 */
+	public static final String ELEMENT_NAME_FIELD = "elementName";
+
+	private static final PositiveIntOutputs OUTPUTS = PositiveIntOutputs.getSingleton();
+
+	private static volatile Dictionary DICTIONARY = Dictionary.EMPTY;
+
+	// Names in each segment, keyed by the segment's core cache key
+	// (segments never change, so only need to read new segments)
+	private static Map<Object, List<String>> SEGMENT_NAMES = new HashMap<>();
+
+	private DYCEElementDictionary() {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Build the dictionary from the searcher manager's index, and rebuild it
+	 * each time it refreshes
+	 *
+	 * @param searcherManager
+	 */
+	public static void listenTo(final SearcherManager searcherManager) {
+		DYCEElementDictionaryJob rebuildJob = new DYCEElementDictionaryJob(searcherManager);
+
+		searcherManager.addListener(new ReferenceManager.RefreshListener() {
+			@Override
+			public void beforeRefresh() {
+			}
+
+			@Override
+			public void afterRefresh(final boolean didRefresh) {
+				if (didRefresh) {
+					// Does nothing if already waiting to rebuild (the rebuild gets the latest searcher)
+					rebuildJob.schedule(DYCESettings.ELEMENT_DICTIONARY_REBUILD_DELAY);
+				}
+			}
+		});
+
+		rebuildJob.schedule();
+	}
+
+	/**
+	 * Rebuild the dictionary from the searcher manager's index (run by
+	 * DYCEElementDictionaryJob)
+	 *
+	 * @param searcherManager
+	 * @throws IOException
+	 */
+	public static void rebuild(final SearcherManager searcherManager) throws IOException {
+		IndexSearcher searcher;
+
+		try {
+			searcher = searcherManager.acquire();
+		} catch (IllegalStateException e) {
+			// Searcher manager was closed
+			return;
+		}
+
+		try (MultiReader reader = SourceArchiveIndexer.combineReaders(searcher.getIndexReader())) {
+			rebuild(reader);
+		} finally {
+			searcherManager.release(searcher);
+		}
+	}
+
+	/**
+	 * Rebuild the dictionary with the names in the reader
+	 */
+	static synchronized void rebuild(final IndexReader reader) throws IOException {
+		if (isBuiltFrom(reader)) {
+			// Same segments as last time (such as if refreshed without any new names)
+			return;
+		}
+
+		Map<Object, List<String>> segmentNames = new HashMap<>();
+
+		// Keyed by the lowercase name (sorted by its UTF-8 bytes, as required to build the FST)
+		TreeMap<BytesRef, String> names = new TreeMap<>();
+
+		for (LeafReaderContext context : reader.leaves()) {
+			LeafReader leafReader = context.reader();
+			IndexReader.CacheHelper cacheHelper = leafReader.getCoreCacheHelper();
+			Object key = cacheHelper != null ? cacheHelper.getKey() : null;
+
+			List<String> leafNames = key != null ? SEGMENT_NAMES.get(key) : null;
+
+			if (leafNames == null) {
+				leafNames = readNames(leafReader);
+			}
+
+			if (key != null) {
+				segmentNames.put(key, leafNames);
+			}
+
+			for (String name : leafNames) {
+				names.putIfAbsent(new BytesRef(name.toLowerCase(Locale.ROOT)), name);
+			}
+		}
+
+		// Only keep the segments still used (the others were merged away)
+		SEGMENT_NAMES = segmentNames;
+
+		DICTIONARY = Dictionary.build(names);
+	}
+
+	/**
+	 * Whether the dictionary was built from the same segments as the reader
+	 */
+	private static boolean isBuiltFrom(final IndexReader reader) {
+		List<LeafReaderContext> leaves = reader.leaves();
+
+		if (leaves.size() != SEGMENT_NAMES.size()) {
+			return false;
+		}
+
+		for (LeafReaderContext context : leaves) {
+			IndexReader.CacheHelper cacheHelper = context.reader().getCoreCacheHelper();
+
+			if (cacheHelper == null || !SEGMENT_NAMES.containsKey(cacheHelper.getKey())) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	private static List<String> readNames(final LeafReader leafReader) throws IOException {
+		SortedSetDocValues docValues = DocValues.getSortedSet(leafReader, ELEMENT_NAME_FIELD);
+		List<String> names = new ArrayList<>((int) Math.min(Integer.MAX_VALUE, docValues.getValueCount()));
+
+		TermsEnum termsEnum = docValues.termsEnum();
+
+		for (BytesRef term = termsEnum.next(); term != null; term = termsEnum.next()) {
+			names.add(term.utf8ToString());
+		}
+
+		return names;
+	}
+
+	/**
+	 * Look up the element names matching the text
+	 *
+	 * <p>
+	 * Returns names starting with the text first (ignoring case), then names
+	 * whose camelCase initials start with the text (such as "npe" for
+	 * NullPointerException), then names within a couple of typos of the text
+	 * </p>
+	 *
+	 * @param text
+	 * @param limit the most names to return
+	 * @return the matching names
+	 */
+	public static List<String> lookup(final String text, final int limit) {
+		String key = text.toLowerCase(Locale.ROOT);
+
+		if (key.isEmpty() || limit <= 0) {
+			return Collections.emptyList();
+		}
+
+		Dictionary dictionary = DICTIONARY;
+		Set<String> results = new LinkedHashSet<>();
+
+		try {
+			dictionary.lookupPrefix(key, limit, results);
+
+			if (results.size() < limit) {
+				dictionary.lookupInitials(key, limit, results);
+			}
+
+			if (results.size() < limit && key.length() >= 3) {
+				dictionary.lookupFuzzy(key, limit, results);
+			}
+		} catch (IOException e) {
+			// FST is in memory, so shouldn't occur
+			e.printStackTrace();
+		}
+
+		return new ArrayList<>(results);
+	}
+
+	/**
+	 * Number of names in the dictionary
+	 */
+	public static int size() {
+		return DICTIONARY.names.length;
+	}
+
+	/**
+	 * Get the camelCase initials of the name (such as "npe" for
+	 * NullPointerException)
+	 */
+	static String getInitials(final String name) {
+		StringBuilder initials = new StringBuilder();
+
+		for (int i = 0; i < name.length(); i++) {
+			char c = name.charAt(i);
+
+			boolean isStart = i == 0 ? Character.isLetterOrDigit(c)
+					: Character.isUpperCase(c) && !Character.isUpperCase(name.charAt(i - 1))
+							|| Character.isLetterOrDigit(c) && !Character.isLetterOrDigit(name.charAt(i - 1));
+
+			if (isStart) {
+				initials.append(Character.toLowerCase(c));
+			}
+		}
+
+		return initials.toString();
+	}
+
+	/**
+	 * Immutable snapshot of the names (replaced as a whole when rebuilt)
+	 */
+	private static final class Dictionary {
+		static final Dictionary EMPTY = new Dictionary(null, new String[0], null, new String[0][]);
+
+		// Lowercase name -> index into names
+		@Nullable
+		private final FST<Long> nameFST;
+		private final String[] names;
+
+		// Initials -> index into initialsNames (names with the same initials)
+		@Nullable
+		private final FST<Long> initialsFST;
+		private final String[][] initialsNames;
+
+		private Dictionary(@Nullable final FST<Long> nameFST, final String[] names,
+				@Nullable final FST<Long> initialsFST, final String[][] initialsNames) {
+			this.nameFST = nameFST;
+			this.names = names;
+			this.initialsFST = initialsFST;
+			this.initialsNames = initialsNames;
+		}
+
+		static Dictionary build(final TreeMap<BytesRef, String> lowercaseNames) throws IOException {
+			if (lowercaseNames.isEmpty()) {
+				return EMPTY;
+			}
+
+			IntsRefBuilder scratch = new IntsRefBuilder();
+
+			Builder<Long> nameBuilder = new Builder<>(FST.INPUT_TYPE.BYTE1, OUTPUTS);
+			String[] names = new String[lowercaseNames.size()];
+			TreeMap<BytesRef, List<String>> initialsMap = new TreeMap<>();
+
+			int ord = 0;
+			for (Entry<BytesRef, String> entry : lowercaseNames.entrySet()) {
+				String name = entry.getValue();
+
+				nameBuilder.add(Util.toIntsRef(entry.getKey(), scratch), (long) ord);
+				names[ord++] = name;
+
+				String initials = getInitials(name);
+
+				if (!initials.isEmpty()) {
+					initialsMap.computeIfAbsent(new BytesRef(initials), k -> new ArrayList<>()).add(name);
+				}
+			}
+
+			Builder<Long> initialsBuilder = new Builder<>(FST.INPUT_TYPE.BYTE1, OUTPUTS);
+			String[][] initialsNames = new String[initialsMap.size()][];
+
+			ord = 0;
+			for (Entry<BytesRef, List<String>> entry : initialsMap.entrySet()) {
+				// Shortest names first, since more likely to be wanted
+				List<String> sameInitials = entry.getValue();
+				sameInitials.sort((a, b) -> Integer.compare(a.length(), b.length()));
+
+				initialsBuilder.add(Util.toIntsRef(entry.getKey(), scratch), (long) ord);
+				initialsNames[ord++] = sameInitials.toArray(new String[0]);
+			}
+
+			return new Dictionary(nameBuilder.finish(), names, initialsBuilder.finish(), initialsNames);
+		}
+
+		void lookupPrefix(final String prefix, final int limit, final Set<String> results) throws IOException {
+			this.lookupPrefix(this.nameFST, prefix, limit, ord -> results.add(this.names[ord]), results);
+		}
+
+		void lookupInitials(final String prefix, final int limit, final Set<String> results) throws IOException {
+			this.lookupPrefix(this.initialsFST, prefix, limit, ord -> {
+				for (String name : this.initialsNames[ord]) {
+					if (results.size() >= limit) {
+						return;
+					}
+
+					results.add(name);
+				}
+			}, results);
+		}
+
+		/**
+		 * Find names which start with something within a couple of typos of the
+		 * text
+		 */
+		void lookupFuzzy(final String text, final int limit, final Set<String> results) throws IOException {
+			FST<Long> fst = this.nameFST;
+
+			if (fst == null) {
+				return;
+			}
+
+			int maxEdits = text.length() <= 5 ? 1 : 2;
+
+			ByteRunAutomaton automaton = new ByteRunAutomaton(Operations.concatenate(
+					new LevenshteinAutomata(text, true).toAutomaton(maxEdits), Automata.makeAnyString()));
+
+			FST.Arc<Long> root = fst.getFirstArc(new FST.Arc<>());
+
+			this.collect(fst, fst.getBytesReader(), root, OUTPUTS.getNoOutput(), automaton, 0, limit,
+					ord -> results.add(this.names[ord]), results);
+		}
+
+		private void lookupPrefix(@Nullable final FST<Long> fst, final String prefix, final int limit,
+				final OrdConsumer consumer, final Set<String> results) throws IOException {
+			if (fst == null) {
+				return;
+			}
+
+			FST.BytesReader bytesReader = fst.getBytesReader();
+			FST.Arc<Long> arc = fst.getFirstArc(new FST.Arc<>());
+			Long output = OUTPUTS.getNoOutput();
+
+			// Follow the prefix
+			BytesRef bytes = new BytesRef(prefix);
+
+			for (int i = bytes.offset; i < bytes.offset + bytes.length; i++) {
+				if (fst.findTargetArc(bytes.bytes[i] & 0xFF, arc, arc, bytesReader) == null) {
+					return;
+				}
+
+				output = OUTPUTS.add(output, arc.output);
+			}
+
+			if (arc.isFinal()) {
+				consumer.accept(OUTPUTS.add(output, arc.nextFinalOutput).intValue());
+			}
+
+			this.collect(fst, bytesReader, arc, output, null, 0, limit, consumer, results);
+		}
+
+		/**
+		 * Collect the names after the arc (depth first, so in alphabetical
+		 * order)
+		 *
+		 * @param automaton if not <code>null</code>, only names it accepts
+		 * @param state the automaton's state after the arc
+		 */
+		private void collect(final FST<Long> fst, final FST.BytesReader bytesReader, final FST.Arc<Long> arc,
+				final Long output, @Nullable final ByteRunAutomaton automaton, final int state, final int limit,
+				final OrdConsumer consumer, final Set<String> results) throws IOException {
+			if (!FST.targetHasArcs(arc)) {
+				return;
+			}
+
+			FST.Arc<Long> child = fst.readFirstTargetArc(arc, new FST.Arc<>(), bytesReader);
+
+			while (results.size() < limit) {
+				// Arc for the end of a name which other names start with isn't a real arc
+				// (the name was already collected, since the arc before it is final)
+				int childState = child.label == FST.END_LABEL ? -1
+						: automaton != null ? automaton.step(state, child.label) : 0;
+
+				if (childState != -1) {
+					Long childOutput = OUTPUTS.add(output, child.output);
+
+					if (child.isFinal() && (automaton == null || automaton.isAccept(childState))) {
+						consumer.accept(OUTPUTS.add(childOutput, child.nextFinalOutput).intValue());
+					}
+
+					this.collect(fst, bytesReader, new FST.Arc<Long>().copyFrom(child), childOutput, automaton,
+							childState, limit, consumer, results);
+				}
+
+				if (child.isLast()) {
+					break;
+				}
+
+				fst.readNextArc(child, bytesReader);
+			}
+		}
+	}
+
+	@FunctionalInterface
+	private interface OrdConsumer {
+		void accept(int ord);
+	}
+}
@@ -0,0 +1,69 @@
+package info.codesaway.dyce.indexer;
+
+import java.io.IOException;
+
+import org.apache.lucene.document.Document;
+
+/**
+ * Creates the documents to index for a type of file
+ *
+ * <p>
+ * Registered by file extension in {@link DYCEFileIndexers}. The metadocument
+ * (used to know when the file needs to be reindexed) is added by the caller.
+ * </p>
+ */
+public interface DYCEFileIndexer {
+	/**
+	 * Cost of indexing a file by reading its lines (the cheapest indexer)
+	 */
+	int LINE_COST = 1;
+
+	/**
+	 * Version of the documents created
+	 *
+	 * <p>
+	 * Increment when change how the files are indexed, so only files using
+	 * this indexer are reindexed (must be positive)
+	 * </p>
+	 */
+	long getDocumentVersion();
+
+	/**
+	 * Relative cost of indexing a file, compared to {@link #LINE_COST}
+	 *
+	 * <p>
+	 * Files which are cheap to index are parsed many at a time, so parsers
+	 * spend less time waiting for their next file
+	 * </p>
+	 */
+	int getCost();
+
+	/**
+	 * Create the documents to index for the file
+	 *
+	 * <p>
+	 * The documents may be created lazily, as they are written to the index
+	 * (such as one line at a time, so large files are indexed in bounded
+	 * memory). If cannot read the file while creating them lazily, throws an
+	 * UncheckedIOException. Lazily created documents which are Closeable are
+	 * closed once written (even if writing them failed).
+	 * </p>
+	 *
+	 * @return the documents (only iterated once)
+	 */
+	Iterable<Document> createDocuments(PathWithAttributes path) throws IOException;
+
+	/**
+	 * Create the documents to index for the file, adding the time spent in
+	 * each stage to the statistics
+	 *
+	 * <p>
+	 * By default, doesn't add anything (the caller adds the total time as
+	 * parse time)
+	 * </p>
+	 */
+	default Iterable<Document> createDocuments(final PathWithAttributes path, final DYCEIndexStatistics statistics)
+			throws IOException {
+		return this.createDocuments(path);
+	}
+}
@@ -0,0 +1,66 @@
+package info.codesaway.dyce.indexer;
+
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+import info.codesaway.dyce.DYCESettings;
+
+/**
+ * Indexer used for each file extension
+ *
+ * <p>
+ * Only files with a registered indexer are indexed
+ * </p>
+ */
+public final class DYCEFileIndexers {
+	private static final Map<String, DYCEFileIndexer> INDEXERS = new ConcurrentHashMap<>();
+
+	static {
+		register("java", new JavaFileIndexer());
+
+		DYCEFileIndexer lineIndexer = new LineFileIndexer();
+
+		for (String extension : DYCESettings.LINE_INDEXED_EXTENSIONS) {
+			register(extension, lineIndexer);
+		}
+	}
+
+	private DYCEFileIndexers() {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Index files with the extension using the indexer (replaces any indexer
+	 * already registered for the extension)
+	 *
+	 * @param extension the file extension (without the period, such as "xml")
+	 * @param indexer
+	 */
+	public static void register(final String extension, final DYCEFileIndexer indexer) {
+		INDEXERS.put(extension, indexer);
+	}
+
+	/**
+	 *
+	 * @param extension the file extension (without the period, such as "xml")
+	 * @return the indexer or <code>null</code> if files with the extension
+	 *         aren't indexed
+	 */
+	@Nullable
+	public static DYCEFileIndexer get(final String extension) {
+		return INDEXERS.get(extension);
+	}
+
+	/**
+	 *
+	 * @return the indexer for the file or <code>null</code> if the file isn't
+	 *         indexed
+	 */
+	@Nullable
+	public static DYCEFileIndexer get(final Path path) {
+		return get(DYCEIndexer.getExtension(String.valueOf(path.getFileName())));
+	}
+}
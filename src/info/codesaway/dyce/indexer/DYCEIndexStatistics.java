@@ -0,0 +1,286 @@
+package info.codesaway.dyce.indexer;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import info.codesaway.dyce.DYCESettings;
+
+/**
+ * Throughput of each stage of the indexing pipeline
+ *
+ * <p>
+ * Parse time is added up across all the parser threads, so can be more than
+ * the time indexing actually took
+ * </p>
+ */
+public class DYCEIndexStatistics {
+	/**
+	 * Stage of the indexing pipeline
+	 */
+	public enum Stage {
+		/**
+		 * Waiting for the files to index to be found (such as walking the
+		 * projects' directories)
+		 */
+		WALK("walk", "files"),
+
+		/**
+		 * Reading the source of Java files (also part of the parse time)
+		 */
+		READ("read", "files"),
+
+		/**
+		 * Creating the documents for the files (without resolving bindings)
+		 */
+		PARSE("parse", "files"),
+
+		/**
+		 * Parsing Java files while resolving bindings
+		 */
+		BINDINGS("bindings", "files"),
+
+		/**
+		 * Adding the documents to the index
+		 */
+		WRITE("write", "docs"),
+
+		/**
+		 * Committing the index
+		 */
+		COMMIT("commit", "commits");
+
+		private final String name;
+		private final String unit;
+
+		Stage(final String name, final String unit) {
+			this.name = name;
+			this.unit = unit;
+		}
+	}
+
+	private final long startTime = System.nanoTime();
+
+	private volatile int parserCount = 1;
+
+	private final Map<Stage, LongAdder> counts = new EnumMap<>(Stage.class);
+	private final Map<Stage, LongAdder> nanos = new EnumMap<>(Stage.class);
+
+	private final LongAdder writtenFiles = new LongAdder();
+
+	// Slowest files to parse (fastest on top, so can remove it when find a slower one)
+	// (synchronize on the queue when using)
+	private final PriorityQueue<FileTime> slowestFiles = new PriorityQueue<>(
+			Comparator.comparingLong(FileTime::getNanos));
+
+	public DYCEIndexStatistics() {
+		for (Stage stage : Stage.values()) {
+			this.counts.put(stage, new LongAdder());
+			this.nanos.put(stage, new LongAdder());
+		}
+	}
+
+	void setParserCount(final int parserCount) {
+		this.parserCount = parserCount;
+	}
+
+	void add(final Stage stage, final long count, final long nanos) {
+		this.counts.get(stage).add(count);
+		this.nanos.get(stage).add(nanos);
+	}
+
+	void addParse(final int fileCount, final long nanos) {
+		this.add(Stage.PARSE, fileCount, nanos);
+	}
+
+	/**
+	 * Add the time to parse a single file (also tracks the slowest files)
+	 */
+	void addParse(final String pathname, final long nanos) {
+		this.addParse(1, nanos);
+		this.addFileTime(pathname, nanos);
+	}
+
+	/**
+	 * Track the time to parse the file, if it's one of the slowest (see
+	 * DYCESettings.SLOWEST_FILE_COUNT)
+	 */
+	void addFileTime(final String pathname, final long nanos) {
+		int maxCount = DYCESettings.SLOWEST_FILE_COUNT;
+
+		if (maxCount <= 0) {
+			return;
+		}
+
+		synchronized (this.slowestFiles) {
+			if (this.slowestFiles.size() < maxCount) {
+				this.slowestFiles.add(new FileTime(pathname, nanos));
+			} else if (this.slowestFiles.peek().getNanos() < nanos) {
+				this.slowestFiles.poll();
+				this.slowestFiles.add(new FileTime(pathname, nanos));
+			}
+		}
+	}
+
+	void addWrite(final int documentCount, final long nanos) {
+		this.writtenFiles.increment();
+		this.add(Stage.WRITE, documentCount, nanos);
+	}
+
+	public int getParserCount() {
+		return this.parserCount;
+	}
+
+	public long getCount(final Stage stage) {
+		return this.counts.get(stage).sum();
+	}
+
+	public long getNanos(final Stage stage) {
+		return this.nanos.get(stage).sum();
+	}
+
+	/**
+	 * Files parsed (with or without resolving bindings)
+	 */
+	public long getParsedFiles() {
+		return this.getCount(Stage.PARSE) + this.getCount(Stage.BINDINGS);
+	}
+
+	public long getWrittenFiles() {
+		return this.writtenFiles.sum();
+	}
+
+	public long getWrittenDocuments() {
+		return this.getCount(Stage.WRITE);
+	}
+
+	/**
+	 * Files parsed per second, across all parsers
+	 */
+	public double getParseRate() {
+		// Parsers run at the same time, so divide the total parse time between them
+		return rate(this.getParsedFiles(),
+				(this.getNanos(Stage.PARSE) + this.getNanos(Stage.BINDINGS)) / this.parserCount);
+	}
+
+	/**
+	 * Documents written per second by the writer
+	 */
+	public double getWriteRate() {
+		return rate(this.getWrittenDocuments(), this.getNanos(Stage.WRITE));
+	}
+
+	/**
+	 * Get the slowest files to parse
+	 *
+	 * @return the files (slowest first)
+	 */
+	public List<FileTime> getSlowestFiles() {
+		List<FileTime> files;
+
+		synchronized (this.slowestFiles) {
+			files = new ArrayList<>(this.slowestFiles);
+		}
+
+		files.sort(Comparator.comparingLong(FileTime::getNanos).reversed());
+		return files;
+	}
+
+	private static double rate(final long count, final long nanos) {
+		if (nanos <= 0) {
+			return 0;
+		}
+
+		return count * (double) TimeUnit.SECONDS.toNanos(1) / nanos;
+	}
+
+	public String getMessage() {
+		return String.format("Parsed %,d files (%,.1f files/sec with %d %s); wrote %,d documents (%,.1f docs/sec)",
+				this.getParsedFiles(), this.getParseRate(), this.parserCount,
+				this.parserCount == 1 ? "parser" : "parsers",
+				this.getWrittenDocuments(), this.getWriteRate());
+	}
+
+	/**
+	 * Get a one line summary (such as for a status line)
+	 */
+	public String getSummary() {
+		long elapsedNanos = System.nanoTime() - this.startTime;
+
+		return String.format("Indexed %,d files (%,.1f files/sec, %,.1f docs/sec)", this.getWrittenFiles(),
+				rate(this.getWrittenFiles(), elapsedNanos), rate(this.getWrittenDocuments(), elapsedNanos));
+	}
+
+	/**
+	 * Get the time and rate of each stage, along with the slowest files to
+	 * parse
+	 */
+	public String getDashboard() {
+		StringBuilder dashboard = new StringBuilder(this.getSummary())
+				.append(String.format(" in %,.1f sec", seconds(System.nanoTime() - this.startTime)));
+
+		for (Stage stage : Stage.values()) {
+			long count = this.getCount(stage);
+			long stageNanos = this.getNanos(stage);
+
+			if (count == 0 && stageNanos == 0) {
+				continue;
+			}
+
+			dashboard.append(String.format("%n%-9s %,10d %-7s %,9.2f sec %,12.1f %s/sec", stage.name, count,
+					stage.unit, seconds(stageNanos), rate(count, stageNanos), stage.unit));
+		}
+
+		if (this.getCount(Stage.PARSE) + this.getCount(Stage.BINDINGS) > 0) {
+			dashboard.append(String.format("%n(parse times are added up across %d %s)", this.parserCount,
+					this.parserCount == 1 ? "parser" : "parsers"));
+		}
+
+		List<FileTime> slowestFiles = this.getSlowestFiles();
+
+		if (!slowestFiles.isEmpty()) {
+			dashboard.append(String.format("%nSlowest files to parse:"));
+
+			for (FileTime file : slowestFiles) {
+				dashboard.append(String.format("%n%,9.2f sec  %s", seconds(file.getNanos()), file.getPathname()));
+			}
+		}
+
+		return dashboard.toString();
+	}
+
+	private static double seconds(final long nanos) {
+		return nanos / (double) TimeUnit.SECONDS.toNanos(1);
+	}
+
+	@Override
+	public String toString() {
+		return this.getMessage();
+	}
+
+	/**
+	 * Time taken to parse a file
+	 */
+	public static final class FileTime {
+		private final String pathname;
+		private final long nanos;
+
+		FileTime(final String pathname, final long nanos) {
+			this.pathname = pathname;
+			this.nanos = nanos;
+		}
+
+		public String getPathname() {
+			return this.pathname;
+		}
+
+		public long getNanos() {
+			return this.nanos;
+		}
+	}
+}
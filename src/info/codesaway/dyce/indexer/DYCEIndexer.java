@@ -4,74 +4,113 @@ import static info.codesaway.util.indexer.IndexerUtilities.FULL_PATH_FIELD;
 import static info.codesaway.util.indexer.IndexerUtilities.PATHNAME_FIELD;
 import static info.codesaway.util.indexer.IndexerUtilities.PATH_FIELD;
 import static info.codesaway.util.indexer.IndexerUtilities.createMetaDocument;
-import static java.util.stream.Collectors.toSet;
 
+import java.io.Closeable;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
 import java.nio.charset.Charset;
-import java.nio.file.FileSystem;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Objects;
-import java.util.Set;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.OptionalLong;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field;
 import org.apache.lucene.document.IntPoint;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.document.SortedSetDocValuesField;
 import org.apache.lucene.document.StoredField;
 import org.apache.lucene.document.StringField;
 import org.apache.lucene.document.TextField;
 import org.apache.lucene.index.BinaryDocValues;
+import org.apache.lucene.index.DirectoryReader;
 import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.IndexWriterConfig.OpenMode;
 import org.apache.lucene.index.LeafReader;
 import org.apache.lucene.index.LeafReaderContext;
 import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.index.PostingsEnum;
+import org.apache.lucene.index.SegmentCommitInfo;
+import org.apache.lucene.index.SegmentInfos;
 import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TieredMergePolicy;
 import org.apache.lucene.search.DocIdSetIterator;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
+import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.FSDirectory;
 import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.BytesRef;
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IProject;
 import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.OperationCanceledException;
 import org.eclipse.jdt.annotation.NonNull;
 import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.eclipse.jdt.core.ICompilationUnit;
 import org.eclipse.jdt.core.IJavaProject;
 import org.eclipse.jdt.core.JavaCore;
+import org.eclipse.jdt.core.JavaModelException;
 import org.eclipse.jdt.core.dom.AST;
 import org.eclipse.jdt.core.dom.ASTNode;
 import org.eclipse.jdt.core.dom.ASTParser;
+import org.eclipse.jdt.core.dom.ASTRequestor;
 import org.eclipse.jdt.core.dom.ASTVisitor;
 import org.eclipse.jdt.core.dom.CompilationUnit;
 import org.eclipse.jdt.core.dom.IMethodBinding;
+import org.eclipse.jdt.core.dom.ITypeBinding;
 import org.eclipse.jdt.core.dom.MethodDeclaration;
 
 import info.codesaway.dyce.Activator;
 import info.codesaway.dyce.DYCESettings;
 import info.codesaway.dyce.DYCEView;
+import info.codesaway.dyce.indexer.DYCEIndexStatistics.Stage;
 import info.codesaway.dyce.jobs.DYCEIndexJob;
 import info.codesaway.dyce.util.DYCEUtilities;
-import info.codesaway.util.indexer.DocumentInfo;
+import info.codesaway.dyce.util.XXHash64;
 import info.codesaway.util.indexer.LuceneStep;
-import info.codesaway.util.indexer.PathWithLastModified;
 import info.codesaway.util.indexer.PathWithTerm;
 
 public class DYCEIndexer {
@@ -79,8 +118,43 @@ public class DYCEIndexer {
 	// Arrays.asList(Activator.WORKSPACE_PATH);
 	private static SearcherManager SEARCHER_MANAGER;
 
+	// Whether SEARCHER_MANAGER uses the writer's near real-time readers
+	// (once the index is created, so don't need to commit to search the written documents)
+	private static boolean IS_NEAR_REAL_TIME;
+
+	// When last committed and the number of files indexed since
+	// (only written by DYCEIndexJob and DYCEResolveBindingsJob, which share INDEX_WRITER_RULE,
+	// so never run at the same time and don't need to be synchronized)
+	private static long LAST_COMMIT_TIME = System.nanoTime();
+	private static int UNCOMMITTED_FILE_COUNT;
+
+	/**
+	 * Identifies the workspace index (such as to get its SearcherManager)
+	 *
+	 * <p>
+	 * The index is in this directory, until it's rebuilt (see
+	 * {@link #getIndexDirectory()})
+	 * </p>
+	 */
 	public static final Path INDEX_PATH = Activator.STATE_LOCATION.resolve("WorkspaceIndex");
 
+	// Name of the directory the workspace index is in (if not INDEX_PATH)
+	// (a rebuilt index stays in the directory it was written to, then this is changed to point to it)
+	private static final Path INDEX_DIRECTORY_POINTER_PATH = Activator.STATE_LOCATION
+			.resolve("WorkspaceIndexDirectory.txt");
+
+	// Rebuilt indexes are written to a new directory starting with this
+	// (so searches keep using the existing index while rebuilding)
+	private static final String REBUILD_INDEX_DIRECTORY_PREFIX = "WorkspaceIndex-";
+
+	// Directory the workspace index is in (read from the pointer file the first time it's needed)
+	@Nullable
+	private static volatile Path INDEX_DIRECTORY;
+
+	// Directory the index is being rebuilt in (or was rebuilt in, until it's swapped in)
+	@Nullable
+	private static volatile Path REBUILD_INDEX_PATH;
+
 	private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
 
 	/**
@@ -88,11 +162,58 @@ public class DYCEIndexer {
 	 */
 	private static final Term METADOCUMENT_TERM = new Term("metadocument", "meta");
 
-	// Index JDK zip
-	// https://stackoverflow.com/a/37413531
-	// https://docs.oracle.com/javase/8/docs/technotes/guides/io/fsp/zipfilesystemprovider.html
-	private static final String jdkZipPathname = "C:\\Java\\jdk8\\src.zip";
-	private static final Path jdkZipPath = Paths.get(jdkZipPathname);
+	// Metadocuments for Java files indexed without resolving bindings, which are still to be resolved
+	// (see DYCESettings.SHOULD_RESOLVE_BINDINGS_IN_BACKGROUND)
+	private static final Term BINDINGS_PENDING_TERM = new Term("bindings", "pending");
+
+	/**
+	 * Pathname indexed only in the metadocument
+	 *
+	 * <p>
+	 * Used to update the metadocument's doc values without affecting the other
+	 * documents for the file (which all have the same
+	 * {@link PathWithTerm#getTerm(String) term})
+	 * </p>
+	 */
+	static final String METADOCUMENT_PATH_FIELD = "metapath";
+
+	/**
+	 * Hash of the file contents, stored in the metadocument
+	 *
+	 * <p>
+	 * Used to skip reindexing files whose last modified changed, but whose
+	 * contents didn't (such as after switching git branches)
+	 * </p>
+	 */
+	static final String CONTENT_HASH_FIELD = "contentHash";
+
+	/**
+	 * Last modified of the file, in each of the file's documents
+	 *
+	 * <p>
+	 * Separate from the metadocument's fileLastModified, which is updated
+	 * without reindexing the file (Lucene doesn't allow updating the doc values
+	 * an index is sorted by). Kept from when the file was indexed, so a file
+	 * whose last modified changed, but whose contents didn't, keeps its place.
+	 * </p>
+	 */
+	static final String LAST_MODIFIED_FIELD = "lastModified";
+
+	/**
+	 * Most recently modified files first
+	 *
+	 * <p>
+	 * Used to sort the index (see DYCESettings.SHOULD_SORT_INDEX_BY_RECENCY)
+	 * and to sort the hits when searching for the most recent matches. Files
+	 * modified at the same time keep their documents in order.
+	 * </p>
+	 */
+	public static final Sort RECENCY_SORT = new Sort(new SortField(LAST_MODIFIED_FIELD, SortField.Type.LONG, true));
+
+	// Files at least this size are memory mapped to hash their contents
+	// (smaller files are just read, since on Windows, a memory mapped file
+	// cannot be modified or deleted until the mapping is garbage collected)
+	private static final long MEMORY_MAP_SIZE = 1024 * 1024;
 
 	@NonNull
 	//	public static final String COMMENT = "comment";
@@ -100,11 +221,12 @@ public class DYCEIndexer {
 	private static IndexWriter INDEX_WRITER;
 
 	// TODO: make settings
-	// Number of files to index at once before committing
+	// Number of files to index at once before refreshing the searcher
 	// (especially needed to handle initial indexing when all documents need to
 	// be indexed)
 	// (this way, once a group of files have been indexed, they can be queried,
 	// while the rest of the files are still being indexed)
+	// (only commits if it's time to; see DYCESettings.COMMIT_INTERVAL_SECONDS)
 	// https://stackoverflow.com/questions/32269632/writing-to-lucene-index-one-document-at-a-time-slows-down-over-time
 	private static int INDEX_GROUP_COUNT = 100;
 
@@ -115,25 +237,181 @@ public class DYCEIndexer {
 	// index)
 	private static int INITIALLY_READ_COUNT = 10;
 
+	// Number of parse tasks each parser can have waiting to be written
+	// (keeps the parsers busy, while limiting how many documents are held in
+	// memory)
+	private static int PARSE_TASKS_PER_PARSER = 2;
+
 	private static final int SECONDS_PER_MINUTE = 60;
 	private static final int SECONDS_PER_HOUR = 60 * SECONDS_PER_MINUTE;
 
-	private static IndexWriter createWriter() throws IOException {
-		FSDirectory dir = FSDirectory.open(INDEX_PATH);
+	private static IndexWriter createWriter(final Path indexDirectory) throws IOException {
+		FSDirectory dir = FSDirectory.open(indexDirectory);
 
 		Analyzer analyzer = DYCEUtilities.createAnalyzer(LuceneStep.INDEX);
 
-		IndexWriterConfig config = new IndexWriterConfig(analyzer);
+		IndexWriterConfig config = setIndexSort(new IndexWriterConfig(analyzer));
+
+		if (config.getIndexSort() != null && !isSortedBy(dir, config.getIndexSort())) {
+			// An existing index's sort can't be changed, so start over
+			// (every file is then reindexed, since none have a metadocument)
+			config.setOpenMode(OpenMode.CREATE);
+		}
+
 		IndexWriter writer = new IndexWriter(dir, config);
 		return writer;
 	}
 
+	/**
+	 * Sort the index by recency, if enabled (see
+	 * DYCESettings.SHOULD_SORT_INDEX_BY_RECENCY)
+	 *
+	 * @return the config
+	 */
+	static IndexWriterConfig setIndexSort(final IndexWriterConfig config) {
+		if (DYCESettings.SHOULD_SORT_INDEX_BY_RECENCY) {
+			config.setIndexSort(RECENCY_SORT);
+		}
+
+		return config;
+	}
+
+	/**
+	 * Whether each segment of the index is sorted by the sort
+	 *
+	 * @return <code>true</code> if each segment is sorted by the sort (or the
+	 *         index doesn't exist yet)
+	 */
+	private static boolean isSortedBy(final Directory directory, final Sort sort) throws IOException {
+		if (!DirectoryReader.indexExists(directory)) {
+			return true;
+		}
+
+		for (SegmentCommitInfo segment : SegmentInfos.readLatestCommit(directory)) {
+			if (!sort.equals(segment.info.getIndexSort())) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
 	private static IndexWriter getWriter() throws IOException {
 		if (INDEX_WRITER != null) {
 			return INDEX_WRITER;
 		}
 
-		return INDEX_WRITER = createWriter();
+		INDEX_WRITER = createWriter(getIndexDirectory());
+		openNearRealTimeSearcher(INDEX_WRITER);
+
+		// Such as a previous index which couldn't be deleted when a rebuilt index was swapped in
+		deleteStaleIndexDirectories();
+
+		return INDEX_WRITER;
+	}
+
+	/**
+	 * Get the directory the workspace index is in
+	 *
+	 * <p>
+	 * This is INDEX_PATH, unless the index was rebuilt (see
+	 * {@link #swapInRebuiltIndex(DYCEIndexJob)})
+	 * </p>
+	 */
+	public static Path getIndexDirectory() {
+		Path indexDirectory = INDEX_DIRECTORY;
+
+		if (indexDirectory == null) {
+			indexDirectory = readIndexDirectory();
+			INDEX_DIRECTORY = indexDirectory;
+		}
+
+		return indexDirectory;
+	}
+
+	private static Path readIndexDirectory() {
+		try {
+			String name = new String(Files.readAllBytes(INDEX_DIRECTORY_POINTER_PATH), StandardCharsets.UTF_8)
+					.trim();
+
+			if (!name.isEmpty()) {
+				return Activator.STATE_LOCATION.resolve(name);
+			}
+		} catch (NoSuchFileException e) {
+			// Index was never rebuilt
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+
+		return INDEX_PATH;
+	}
+
+	/**
+	 * Point to the directory the workspace index is in
+	 *
+	 * <p>
+	 * Replaces the pointer file in one step, so it points to either the
+	 * previous directory or the new one (even if Eclipse closes while
+	 * writing)
+	 * </p>
+	 */
+	private static void writeIndexDirectory(final Path indexDirectory) throws IOException {
+		Path tempPath = INDEX_DIRECTORY_POINTER_PATH
+				.resolveSibling(INDEX_DIRECTORY_POINTER_PATH.getFileName() + ".tmp");
+
+		Files.write(tempPath, String.valueOf(indexDirectory.getFileName()).getBytes(StandardCharsets.UTF_8));
+		Files.move(tempPath, INDEX_DIRECTORY_POINTER_PATH, StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Delete the directories of previous workspace indexes
+	 *
+	 * <p>
+	 * Keeps the current index and the index being rebuilt. If cannot delete
+	 * a directory (such as on Windows, while a search still has the index
+	 * open), will try again the next time the writer is created.
+	 * </p>
+	 */
+	private static void deleteStaleIndexDirectories() {
+		Path indexDirectory = getIndexDirectory();
+
+		try (Stream<Path> paths = Files.list(Activator.STATE_LOCATION)) {
+			paths.filter(p -> String.valueOf(p.getFileName()).startsWith(INDEX_PATH.getFileName().toString()))
+					.filter(Files::isDirectory)
+					.filter(p -> !p.equals(indexDirectory) && !p.equals(REBUILD_INDEX_PATH))
+					.forEach(SourceArchiveIndexer::delete);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Search using the writer's near real-time readers, once the index exists
+	 *
+	 * <p>
+	 * Until the index is first committed, it doesn't exist, so the search shows
+	 * the index is still being created
+	 * </p>
+	 */
+	private static void openNearRealTimeSearcher(final IndexWriter writer) throws IOException {
+		if (IS_NEAR_REAL_TIME || !DirectoryReader.indexExists(writer.getDirectory())) {
+			return;
+		}
+
+		SEARCHER_MANAGER = DYCESettings.openNearRealTimeSearcherManager(INDEX_PATH, writer);
+		IS_NEAR_REAL_TIME = true;
+	}
+
+	/**
+	 * Indicates if the workspace index exists
+	 */
+	public static boolean indexExists() {
+		try (FSDirectory dir = FSDirectory.open(getIndexDirectory())) {
+			return DirectoryReader.indexExists(dir);
+		} catch (IOException e) {
+			return false;
+		}
 	}
 
 	public static void closeWriter() {
@@ -143,90 +421,70 @@ public class DYCEIndexer {
 			} catch (IOException e) {
 				// TODO Auto-generated catch block
 			}
+
+			// Create a new writer (and searcher) if the view is opened again
+			INDEX_WRITER = null;
+			SEARCHER_MANAGER = null;
+			IS_NEAR_REAL_TIME = false;
 		}
 	}
 
-	private static Stream<PathWithLastModified> walkDirectories() {
-		// System.out.println("Walk directories: " + directories);
+	/**
+	 * Walk the projects' files which should be indexed
+	 *
+	 * <p>
+	 * Walks the projects in parallel, reading each file's attributes once
+	 * </p>
+	 *
+	 * @return the files (in no particular order)
+	 */
+	private static Stream<PathWithAttributes> walkDirectories() {
+		return ParallelWorkspaceWalk.walk(getProjectRoots());
+	}
 
-		Stream<PathWithLastModified> result = Stream.empty();
+	/**
+	 * Gets the project for each project location
+	 *
+	 * @return the project names (keyed by project location)
+	 */
+	private static Map<Path, String> getProjectRoots() {
+		Map<Path, String> projectRoots = new HashMap<>();
 
-		// Add any external projects (not a child of the workspace path)
 		for (IProject project : Activator.WORKSPACE_ROOT.getProjects()) {
-			@NonNull
-			@SuppressWarnings("null")
-			String projectName = project.getName();
-			Path projectPath = project.getLocation().toFile().toPath();
-
-			//
-			Stream<PathWithLastModified> projectStream;
-			try {
-				projectStream = Files.walk(projectPath)
-						.filter(DYCESettings::shouldIndexFile)
-						.map(p -> new PathWithLastModified(projectName, p));
-			} catch (IOException e) {
-				projectStream = Stream.empty();
-			}
-
-			result = Stream.concat(result, projectStream);
-		}
-
-		// 11/6/2020 - Index JDK, so can find method names as part of dictation
-		// https://www.javadevjournal.com/java/zipping-and-unzipping-in-java/
-		// https://www.baeldung.com/java-compress-and-uncompress
-		// TODO: pass as setting
-		//		String jdkZipPathname = "C:\\Java\\jdk8\\src.zip";
-		//		Path jdkZipPath = Paths.get(jdkZipPathname);
-		//
-		//		// TODO: reference which uses FileSystems (Java 8)
-		//		// https://stackoverflow.com/a/37413531
-		//		FileSystems.newFile
-		//
-		//		if (Files.exists(jdkZipPath)) {
-		//			// https://stackoverflow.com/a/15667326
-		//			try (ZipFile zipFile = new ZipFile(jdkZipPathname)) {
-		//				zipFile.stream()
-		//						.filter(DYCEIndexer::shouldIndexJDKZipEntry)
-		//						.forEachOrdered(e -> System.out.println(e));
-		//			} catch (IOException e) {
-		//				// Do nothing
-		//			}
-		//
-		//			//			Stream<PathWithLastModified> jdkStream;
-		//			//			try {
-		//			//				jdkStream = Files.walk(projectPath)
-		//			//						.filter(DYCESettings::shouldIndexFile)
-		//			//						.map(p -> new PathWithLastModified(projectName, p));
-		//			//			} catch (IOException e) {
-		//			//				jdkStream = Stream.empty();
-		//			//			}
-		//			//
-		//			//			result = Stream.concat(result, jdkStream);
-		//		}
-
-		return result;
-	}
-
-	//	private static boolean shouldIndexJDKZipEntry(final ZipEntry entry) {
-	private static boolean shouldIndexJDKZipEntry(final Path entry) {
-		if (Files.isDirectory(entry)) {
-			//		if (entry.isDirectory()) {
-			return false;
-		}
+			IPath location = project.getLocation();
 
-		String entryName = entry.toString();
-
-		if (!entryName.endsWith(".java")) {
-			return false;
+			if (location != null) {
+				projectRoots.put(location.toFile().toPath(), project.getName());
+			}
 		}
 
-		return entryName.startsWith("/java/") || entryName.startsWith("/javax/");
+		return projectRoots;
 	}
 
-	private static boolean shouldIndex(final PathWithLastModified path, final Map<String, DocumentInfo> documents) {
-
-		DocumentInfo doc = documents.get(path.getPathname());
+	/**
+	 *
+	 * @param path
+	 * @param documents
+	 * @param touchedPaths paths whose last modified changed, but whose
+	 *            contents didn't (only the last modified needs to be updated)
+	 * @return <code>true</code> if should index the path
+	 */
+	private static boolean shouldIndex(final PathWithAttributes path,
+			final Map<String, FileDocumentInfo> documents, final List<PathWithAttributes> touchedPaths) {
+		return shouldIndex(path, documents.get(path.getPathname()), touchedPaths);
+	}
 
+	/**
+	 *
+	 * @param path
+	 * @param doc the indexed information for the path (<code>null</code> if
+	 *            not indexed)
+	 * @param touchedPaths paths whose last modified changed, but whose
+	 *            contents didn't (only the last modified needs to be updated)
+	 * @return <code>true</code> if should index the path
+	 */
+	private static boolean shouldIndex(final PathWithAttributes path, @Nullable final FileDocumentInfo doc,
+			final List<PathWithAttributes> touchedPaths) {
 		if (doc == null) {
 			// Newly added file, should index
 			return true;
@@ -237,12 +495,91 @@ public class DYCEIndexer {
 
 		long documentVersion = doc.getDocumentVersion();
 
-		boolean isModified = fileLastModified != lastModifiedValue
-				// TODO: change to have version per indexer (based on file
-				// extension)
-				|| DYCESettings.DOCUMENT_VERSION != documentVersion;
+		// Reindex if the file's indexer changed
+		if (getDocumentVersion(path.getPath()) != documentVersion) {
+			return true;
+		}
+
+		if (fileLastModified == lastModifiedValue) {
+			return false;
+		}
+
+		// Last modified changed, check if the contents did
+		// (hashing is much faster than parsing)
+		OptionalLong contentHash = doc.getContentHash();
+
+		if (contentHash.isPresent() && contentHash.equals(hashContent(path.getPath()))) {
+			touchedPaths.add(path);
+			return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Hash the contents of the file
+	 *
+	 * @return the hash or empty if cannot read the file
+	 */
+	private static OptionalLong hashContent(final Path path) {
+		try {
+			ByteBuffer content;
+
+			if (path.getFileSystem() != FileSystems.getDefault()) {
+				// Such as a file in a zip, which cannot be memory mapped
+				content = ByteBuffer.wrap(Files.readAllBytes(path));
+			} else {
+				try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+					long size = channel.size();
+
+					if (size > Integer.MAX_VALUE) {
+						return OptionalLong.empty();
+					} else if (size >= MEMORY_MAP_SIZE) {
+						content = channel.map(MapMode.READ_ONLY, 0, size);
+					} else {
+						content = ByteBuffer.allocate((int) size);
+
+						while (content.hasRemaining() && channel.read(content) != -1) {
+							// Keep reading until read entire file
+						}
+
+						content.flip();
+					}
+				}
+			}
+
+			return OptionalLong.of(hashContent(content));
+		} catch (IOException e) {
+			return OptionalLong.empty();
+		}
+	}
+
+	/**
+	 * Hash the file's contents, which were already read (such as by the
+	 * indexer; see HashedDocuments)
+	 *
+	 * @param content the file's bytes (the buffer's position isn't changed)
+	 */
+	static long hashContent(final ByteBuffer content) {
+		return XXHash64.hash(content, 0);
+	}
+
+	/**
+	 * Update the last modified stored for files whose contents didn't change
+	 * (so don't need to check them again)
+	 */
+	private static void updateLastModified(final IndexWriter writer, final List<PathWithAttributes> touchedPaths)
+			throws IOException {
+		if (touchedPaths.isEmpty()) {
+			return;
+		}
+
+		for (PathWithAttributes path : touchedPaths) {
+			writer.updateNumericDocValue(new Term(METADOCUMENT_PATH_FIELD, path.getPathname()), "fileLastModified",
+					path.getLastModified());
+		}
 
-		return isModified;
+		commit(writer);
 	}
 
 	public static void rebuildEntireIndex() {
@@ -250,14 +587,19 @@ public class DYCEIndexer {
 			return;
 		}
 
+		if (DYCESettings.SHOULD_BULK_REBUILD_INDEX) {
+			DYCEView.INSTANCE.rebuildIndex();
+			return;
+		}
+
 		DYCEView.cancelIndexing();
 
 		try {
 			IndexWriter writer = getWriter();
 			// Set all metadocuments to have the same document version
 			// Will then index, which should be a different value
-			long documentVersion = (DYCESettings.DOCUMENT_VERSION != Long.MIN_VALUE ? Long.MIN_VALUE
-					: Long.MAX_VALUE);
+			// (document versions are positive)
+			long documentVersion = Long.MIN_VALUE;
 
 			writer.updateNumericDocValue(METADOCUMENT_TERM, "documentVersion", documentVersion);
 
@@ -271,108 +613,186 @@ public class DYCEIndexer {
 		DYCEView.INSTANCE.index();
 	}
 
-	public static String incrementalRebuildIndex(final DYCEIndexJob dyceIndexJob, final IProgressMonitor monitor)
+	/**
+	 * Rebuild the entire index by bulk loading every file into a new index
+	 *
+	 * <p>
+	 * The new index is written to a new directory, so searches keep using the
+	 * existing index while rebuilding. Unlike the incremental index,
+	 * doesn't delete each file's existing documents or commit as it goes. Uses
+	 * a large RAM buffer and a merge policy which merges less often, then
+	 * merges down to a few segments once done.
+	 * </p>
+	 *
+	 * <p>
+	 * Once done, call {@link #swapInRebuiltIndex(DYCEIndexJob)} to replace the
+	 * workspace index. If canceled (or fails), the new index is deleted.
+	 * </p>
+	 */
+	public static String bulkRebuildIndex(final IProgressMonitor monitor, final DYCEIndexStatistics statistics)
 			throws IOException {
-		IndexSearcher searcher = getSearcher();
-
 		LocalDateTime startTime = LocalDateTime.now();
 
-		Map<String, DocumentInfo> documents = new HashMap<>();
-		List<Term> deleteDocuments = new ArrayList<>();
+		// Merge more segments at once, so merges less often while loading
+		// (merges down at the end anyway)
+		TieredMergePolicy mergePolicy = new TieredMergePolicy();
+		mergePolicy.setSegmentsPerTier(50);
+		mergePolicy.setMaxMergeAtOnce(50);
+
+		IndexWriterConfig config = setIndexSort(new IndexWriterConfig(DYCEUtilities.createAnalyzer(LuceneStep.INDEX))
+				.setOpenMode(OpenMode.CREATE)
+				.setRAMBufferSizeMB(DYCESettings.BULK_RAM_BUFFER_MB)
+				.setMergePolicy(mergePolicy)
+				.setUseCompoundFile(false)
+				// Only keep the index once it's complete (such as if rebuilding is canceled)
+				.setCommitOnClose(false));
+
+		boolean isDone = false;
+		int indexedFiles;
+		Duration mergeDuration;
 
-		if (searcher != null) {
-			// For zips, need to keep track of paths which exist, so don't reindex each time
-			// TODO: add ability to indicate that zip was reindexed and don't need to iterate over zip
-			// Presume if last modified didn't change, that the zip didn't change (so no need to iterate it)
-			// (allows indexing large m2 directories without traversing these cached dependencies multiple times)
-			Stream<String> zipPathnamesStream = Stream.empty();
-			Set<String> zipPathnames;
-			try (FileSystem zipFileSystem = FileSystems.newFileSystem(jdkZipPath, null)) {
-				for (Path root : zipFileSystem.getRootDirectories()) {
-					Stream<String> jdkStream;
-					try {
-						jdkStream = Files.walk(root)
-								.filter(DYCEIndexer::shouldIndexJDKZipEntry)
-								.map(Object::toString);
+		Path rebuildIndexPath = Activator.STATE_LOCATION
+				.resolve(REBUILD_INDEX_DIRECTORY_PREFIX + System.currentTimeMillis());
+		REBUILD_INDEX_PATH = rebuildIndexPath;
 
-						zipPathnamesStream = Stream.concat(zipPathnamesStream, jdkStream);
-					} catch (IOException e) {
-						jdkStream = Stream.empty();
-					}
-				}
+		try (FSDirectory dir = FSDirectory.open(rebuildIndexPath);
+				IndexWriter writer = new IndexWriter(dir, config)) {
+			Stream<PathWithAttributes> stream = walkDirectories();
 
-				zipPathnames = zipPathnamesStream.collect(toSet());
+			try {
+				indexedFiles = index(stream, null, monitor, false, DYCEIndexJob.EMPTY_TERM_ARRAY, statistics,
+						writer);
+			} finally {
+				// Stop walking the files (such as if canceled)
+				stream.close();
 			}
 
-			// Determine when last modified file
-			// (to allow incremental reindexing)
-			for (LeafReaderContext context : searcher.getIndexReader().leaves()) {
-				LeafReader leafReader = context.reader();
-				Bits liveDocs = leafReader.getLiveDocs();
+			if (monitor.isCanceled()) {
+				throw new OperationCanceledException();
+			}
 
-				BinaryDocValues pathnameDocValues = DocValues.getBinary(leafReader, PATHNAME_FIELD);
+			LocalDateTime mergeStartTime = LocalDateTime.now();
+			writer.forceMerge(Math.max(1, DYCESettings.BULK_MERGE_SEGMENT_COUNT));
+			mergeDuration = Duration.between(mergeStartTime, LocalDateTime.now());
 
-				// Will be iterating over both groups of values
-				// (uses pathnameDocValues as the main iteration)
-				NumericDocValues lastModifiedDocValues = DocValues.getNumeric(leafReader, "fileLastModified");
-				int lastModifiedDocId = lastModifiedDocValues.nextDoc();
+			long commitStart = System.nanoTime();
+			writer.commit();
+			statistics.add(Stage.COMMIT, 1, System.nanoTime() - commitStart);
+			isDone = true;
+		} finally {
+			if (!isDone) {
+				REBUILD_INDEX_PATH = null;
+				SourceArchiveIndexer.delete(rebuildIndexPath);
+			}
+		}
 
-				// Used to track which version of the code created the document
-				// (this way as changes are made to how the documents are
-				// indexed, can update the existing documents)
-				NumericDocValues documentVersionDocValues = DocValues.getNumeric(leafReader, "documentVersion");
-				int documentVersionDocId = documentVersionDocValues.nextDoc();
+		Duration duration = Duration.between(startTime, LocalDateTime.now());
 
-				while (pathnameDocValues.nextDoc() != DocIdSetIterator.NO_MORE_DOCS) {
-					// https://stackoverflow.com/a/15570353
-					int docID = pathnameDocValues.docID();
+		String indexMessage = indexedFiles == 1 ? "1 file" : indexedFiles + " files";
 
-					// Ignore deleted documents
-					if (liveDocs != null && !liveDocs.get(docID)) {
-						continue;
-					}
+		return String.format("Rebuilt index with %s. It took %s (merging took %s). %s.", indexMessage,
+				formatDuration(duration), formatDuration(mergeDuration), statistics.getMessage());
+	}
 
-					// Find the last modified value corresponding to the
-					// document
-					// (if none, use 0, so will show as file has been modified)
-					// (handles case if each document doesn't have the pathname
-					// and fileLastModified doc values)
-					// (should never occur, but handling just in case)
-					while (lastModifiedDocId < docID) {
-						lastModifiedDocId = lastModifiedDocValues.nextDoc();
-					}
+	/**
+	 * Replace the workspace index with the index built by
+	 * {@link #bulkRebuildIndex(IProgressMonitor, DYCEIndexStatistics)}
+	 *
+	 * <p>
+	 * The rebuilt index isn't copied; it stays in its own directory, which
+	 * becomes the workspace index's directory (see
+	 * {@link #getIndexDirectory()}). The writer and the near real-time
+	 * searcher are switched to the rebuilt index, so searches see either the
+	 * existing index or the rebuilt one (never part of each, or an empty
+	 * index). Searches still using the existing index keep it open until
+	 * they're done, then its directory is deleted.
+	 * </p>
+	 *
+	 * <p>
+	 * If it fails before switching, the existing index is kept as is.
+	 * </p>
+	 *
+	 * <p>
+	 * Called by the index job, since it's the only one which writes to the
+	 * workspace index
+	 * </p>
+	 *
+	 * @return <code>true</code> if swapped in the rebuilt index
+	 */
+	public static boolean swapInRebuiltIndex(final DYCEIndexJob dyceIndexJob) throws IOException {
+		Path rebuiltIndexPath = REBUILD_INDEX_PATH;
 
-					while (documentVersionDocId < docID) {
-						documentVersionDocId = documentVersionDocValues.nextDoc();
-					}
+		if (rebuiltIndexPath == null) {
+			return false;
+		}
 
-					if (lastModifiedDocId == docID) {
-						long lastModified = lastModifiedDocValues.longValue();
-						lastModifiedDocId = lastModifiedDocValues.nextDoc();
+		try (FSDirectory dir = FSDirectory.open(rebuiltIndexPath)) {
+			if (!DirectoryReader.indexExists(dir)) {
+				return false;
+			}
+		}
 
-						long documentVersion = documentVersionDocId == docID ? documentVersionDocValues.longValue() : 0;
+		IndexWriter rebuiltWriter = createWriter(rebuiltIndexPath);
 
-						@NonNull
-						@SuppressWarnings("null")
-						String pathname = pathnameDocValues.binaryValue().utf8ToString();
+		try {
+			// Once written, the rebuilt index is the workspace index (even if Eclipse closes before done swapping)
+			writeIndexDirectory(rebuiltIndexPath);
+		} catch (IOException | RuntimeException e) {
+			rebuiltWriter.rollback();
+			throw e;
+		}
 
-						// TODO: need to handle files within zip - so don't reindex every time
-						//						System.out.println("Pathname: " + pathname);
+		REBUILD_INDEX_PATH = null;
+		IndexWriter previousWriter = INDEX_WRITER;
 
-						// Check if pathname still exists
-						// (if not, delete the associated documents)
+		INDEX_DIRECTORY = rebuiltIndexPath;
+		INDEX_WRITER = rebuiltWriter;
+		IS_NEAR_REAL_TIME = false;
+		LAST_COMMIT_TIME = System.nanoTime();
+		UNCOMMITTED_FILE_COUNT = 0;
 
-						//						if (new File(pathname).exists()) {
-						if (zipPathnames.contains(pathname) || Files.exists(Paths.get(pathname))) {
-							documents.put(pathname, new DocumentInfo(lastModified, documentVersion));
-						} else {
-							// Path no longer exists
-							//							System.out.println("Pathname doesn't exist: " + pathname);
-							deleteDocuments.add(PathWithTerm.getTerm(pathname));
-						}
-					}
-				}
+		// Searches switch to the rebuilt index
+		openNearRealTimeSearcher(rebuiltWriter);
+
+		if (previousWriter != null) {
+			// Files modified while rebuilding are indexed into the rebuilt index next
+			// (so don't need to commit the previous index's changes)
+			previousWriter.rollback();
+		}
+
+		deleteStaleIndexDirectories();
+
+		dyceIndexJob.setIndexCreated(true);
+		return true;
+	}
+
+	public static String incrementalRebuildIndex(final DYCEIndexJob dyceIndexJob, final IProgressMonitor monitor,
+			final DYCEIndexStatistics statistics) throws IOException {
+		LocalDateTime startTime = LocalDateTime.now();
+
+		List<Term> deleteDocuments = new ArrayList<>();
+		List<PathWithAttributes> touchedPaths = new ArrayList<>();
+
+		Stream<PathWithAttributes> stream;
+
+		IndexSearcher searcher = getSearcher();
+
+		try {
+			if (searcher == null) {
+				// Nothing indexed yet, so index every file
+				stream = walkDirectories();
+			} else if (DYCESettings.SHOULD_MERGE_JOIN_INCREMENTAL_INDEX) {
+				stream = mergeJoinChangedFiles(searcher.getIndexReader(), deleteDocuments, touchedPaths, monitor)
+						.stream();
+			} else {
+				Map<String, FileDocumentInfo> documents = readIndexedFiles(searcher.getIndexReader(),
+						deleteDocuments);
+
+				stream = walkDirectories()
+						.filter(p -> shouldIndex(p, documents, touchedPaths));
 			}
+		} finally {
+			releaseSearcher(searcher);
 		}
 
 		if (monitor.isCanceled()) {
@@ -382,328 +802,1199 @@ public class DYCEIndexer {
 		// Determine files need to index and start with the latest modified
 		// (since it more likely to want to search more recently modified files)
 
-		@SuppressWarnings("null")
-		Stream<PathWithLastModified> stream = walkDirectories()
-				.filter(p -> searcher == null ? true : shouldIndex(p, documents))
-				// Sort by last modified descending
-				// (since want to index recently modified files first
-				.sorted(Comparator.comparing(PathWithLastModified::getLastModified).reversed());
+		// Sort by last modified descending
+		// (since want to index recently modified files first
+		stream = stream.sorted(Comparator.comparing(PathWithAttributes::getLastModified).reversed());
 
 		int indexedFiles;
+		try {
+			indexedFiles = index(stream, dyceIndexJob, monitor, false, deleteDocuments.toArray(new Term[0]),
+					statistics);
+		} finally {
+			// Stop walking the files (such as if canceled)
+			stream.close();
+		}
 
-		// TODO: track when the zip was modified, since don't need to reread
+		updateLastModified(getWriter(), touchedPaths);
 
-		try (FileSystem zipFileSystem = FileSystems.newFileSystem(jdkZipPath, null)) {
-			for (Path root : zipFileSystem.getRootDirectories()) {
-				Stream<PathWithLastModified> jdkStream;
-				try {
-					jdkStream = Files.walk(root)
-							.filter(DYCEIndexer::shouldIndexJDKZipEntry)
-							.map(p -> new PathWithLastModified("[JDK]", p))
-							.filter(p -> searcher == null ? true : shouldIndex(p, documents));
-
-					//					Files.walk(root)
-					//							.filter(DYCEIndexer::shouldIndexJDKZipEntry)
-					//							.forEachOrdered(p -> System.out.println(p));
-				} catch (IOException e) {
-					jdkStream = Stream.empty();
-					e.printStackTrace();
+		LocalDateTime endTime = LocalDateTime.now();
+
+		Duration duration = Duration.between(startTime, endTime);
+
+		return createIndexDoneMessage(indexedFiles, duration, statistics);
+	}
+
+	/**
+	 * Read the indexed files (and find any indexed files which no longer exist)
+	 *
+	 * @param reader
+	 * @param deleteDocuments the terms to delete the documents for files which no
+	 *            longer exist
+	 * @return the indexed information for each existing file (keyed by pathname)
+	 */
+	private static Map<String, FileDocumentInfo> readIndexedFiles(final IndexReader reader,
+			final List<Term> deleteDocuments) throws IOException {
+		Map<String, FileDocumentInfo> documents = new HashMap<>();
+
+		// Determine when last modified file
+		// (to allow incremental reindexing)
+		for (LeafReaderContext context : reader.leaves()) {
+			LeafReader leafReader = context.reader();
+			Bits liveDocs = leafReader.getLiveDocs();
+
+			BinaryDocValues pathnameDocValues = DocValues.getBinary(leafReader, PATHNAME_FIELD);
+
+			// Will be iterating over both groups of values
+			// (uses pathnameDocValues as the main iteration)
+			NumericDocValues lastModifiedDocValues = DocValues.getNumeric(leafReader, "fileLastModified");
+			int lastModifiedDocId = lastModifiedDocValues.nextDoc();
+
+			// Used to track which version of the code created the document
+			// (this way as changes are made to how the documents are
+			// indexed, can update the existing documents)
+			NumericDocValues documentVersionDocValues = DocValues.getNumeric(leafReader, "documentVersion");
+			int documentVersionDocId = documentVersionDocValues.nextDoc();
+
+			NumericDocValues contentHashDocValues = DocValues.getNumeric(leafReader, CONTENT_HASH_FIELD);
+			int contentHashDocId = contentHashDocValues.nextDoc();
+
+			while (pathnameDocValues.nextDoc() != DocIdSetIterator.NO_MORE_DOCS) {
+				// https://stackoverflow.com/a/15570353
+				int docID = pathnameDocValues.docID();
+
+				// Ignore deleted documents
+				if (liveDocs != null && !liveDocs.get(docID)) {
+					continue;
+				}
+
+				// Find the last modified value corresponding to the
+				// document
+				// (if none, use 0, so will show as file has been modified)
+				// (handles case if each document doesn't have the pathname
+				// and fileLastModified doc values)
+				// (should never occur, but handling just in case)
+				while (lastModifiedDocId < docID) {
+					lastModifiedDocId = lastModifiedDocValues.nextDoc();
+				}
+
+				while (documentVersionDocId < docID) {
+					documentVersionDocId = documentVersionDocValues.nextDoc();
+				}
+
+				while (contentHashDocId < docID) {
+					contentHashDocId = contentHashDocValues.nextDoc();
 				}
 
-				stream = Stream.concat(stream, jdkStream);
+				if (lastModifiedDocId == docID) {
+					long lastModified = lastModifiedDocValues.longValue();
+					lastModifiedDocId = lastModifiedDocValues.nextDoc();
+
+					long documentVersion = documentVersionDocId == docID ? documentVersionDocValues.longValue() : 0;
+
+					OptionalLong contentHash = contentHashDocId == docID
+							? OptionalLong.of(contentHashDocValues.longValue())
+							: OptionalLong.empty();
+
+					@NonNull
+					@SuppressWarnings("null")
+					String pathname = pathnameDocValues.binaryValue().utf8ToString();
+
+					// TODO: need to handle files within zip - so don't reindex every time
+					//						System.out.println("Pathname: " + pathname);
+
+					// Check if pathname still exists
+					// (if not, delete the associated documents)
+
+					// (entries from source archives, such as the JDK, are now in their own index,
+					// so any indexed here before will be deleted)
+					//						if (new File(pathname).exists()) {
+					if (Files.exists(Paths.get(pathname))) {
+						documents.put(pathname, new FileDocumentInfo(lastModified, documentVersion, contentHash));
+					} else {
+						// Path no longer exists
+						//							System.out.println("Pathname doesn't exist: " + pathname);
+						deleteDocuments.add(PathWithTerm.getTerm(pathname));
+					}
+				}
 			}
+		}
 
-			indexedFiles = index(stream, dyceIndexJob, monitor, false, deleteDocuments.toArray(new Term[0]));
+		return documents;
+	}
+
+	/**
+	 * Find the files which need to be indexed, by walking the files and the
+	 * indexed pathnames together, both in pathname order
+	 *
+	 * <p>
+	 * Unlike {@link #readIndexedFiles(IndexReader, List)}, doesn't read every
+	 * indexed file into memory or check if each still exists (files only in the
+	 * index no longer exist)
+	 * </p>
+	 *
+	 * @param reader
+	 * @param deleteDocuments the terms to delete the documents for files which no
+	 *            longer exist
+	 * @param touchedPaths paths whose last modified changed, but whose
+	 *            contents didn't
+	 * @param monitor
+	 * @return the files which need to be indexed
+	 */
+	private static List<PathWithAttributes> mergeJoinChangedFiles(final IndexReader reader,
+			final List<Term> deleteDocuments, final List<PathWithAttributes> touchedPaths,
+			final IProgressMonitor monitor) throws IOException {
+		List<PathWithAttributes> changedFiles = new ArrayList<>();
+
+		// Projects are walked in parallel, and their files merged in pathname order
+		try (MergedWorkspaceWalk files = new MergedWorkspaceWalk(getProjectRoots())) {
+			IndexedFileIterator indexedFiles = new IndexedFileIterator(reader);
+
+			PathWithAttributes file = files.hasNext() ? files.next() : null;
+			BytesRef filePathname = file != null ? new BytesRef(file.getPathname()) : null;
+			BytesRef indexedPathname = indexedFiles.next() ? indexedFiles.getPathname() : null;
+
+			int count = 0;
+
+			while (file != null || indexedPathname != null) {
+				if (++count % CANCEL_CHECK_COUNT == 0 && monitor.isCanceled()) {
+					throw new OperationCanceledException();
+				}
+
+				int comparison;
+
+				if (file == null) {
+					comparison = 1;
+				} else if (indexedPathname == null) {
+					comparison = -1;
+				} else {
+					comparison = filePathname.compareTo(indexedPathname);
+				}
+
+				if (comparison > 0) {
+					// Indexed file no longer exists
+					deleteDocuments.add(new Term(FULL_PATH_FIELD, BytesRef.deepCopyOf(indexedPathname)));
+				} else if (comparison < 0) {
+					// New file
+					changedFiles.add(file);
+				} else if (shouldIndex(file, indexedFiles.getDocumentInfo(), touchedPaths)) {
+					changedFiles.add(file);
+				}
+
+				if (comparison <= 0) {
+					file = files.hasNext() ? files.next() : null;
+					filePathname = file != null ? new BytesRef(file.getPathname()) : null;
+				}
+
+				if (comparison >= 0) {
+					indexedPathname = indexedFiles.next() ? indexedFiles.getPathname() : null;
+				}
+			}
+		}
+
+		return changedFiles;
+	}
+
+	public static <T extends PathWithAttributes> int index(final Stream<T> paths, final DYCEIndexJob dyceIndexJob,
+			final IProgressMonitor monitor, final boolean removeWhenDone, final Term[] deleteDocuments,
+			final DYCEIndexStatistics statistics) throws IOException {
+		return index(paths, dyceIndexJob, monitor, removeWhenDone, deleteDocuments, statistics, null);
+	}
+
+	/**
+	 *
+	 * @param dyceIndexJob the index job (only <code>null</code> when bulk
+	 *            loading)
+	 * @param bulkLoadWriter the writer for the empty index to bulk load, or
+	 *            <code>null</code> to update the workspace index (when bulk
+	 *            loading, adds the documents without deleting any existing ones
+	 *            and doesn't refresh or commit; the caller commits once done)
+	 */
+	private static <T extends PathWithAttributes> int index(final Stream<T> paths,
+			@Nullable final DYCEIndexJob dyceIndexJob, final IProgressMonitor monitor, final boolean removeWhenDone,
+			final Term[] deleteDocuments, final DYCEIndexStatistics statistics,
+			@Nullable final IndexWriter bulkLoadWriter) throws IOException {
+		// TODO: see how can use submonitor to indicate progress (harder since
+		// parallel)
+		int initiallyReadCount = INITIALLY_READ_COUNT;
+
+		if (INDEX_GROUP_COUNT < initiallyReadCount) {
+			initiallyReadCount = INDEX_GROUP_COUNT;
+		}
+
+		int filesModifiedCount = 0;
+
+		boolean isBulkLoad = bulkLoadWriter != null;
+		IndexWriter writer = isBulkLoad ? bulkLoadWriter : getWriter();
+
+		if (deleteDocuments.length > 0) {
+			writer.deleteDocuments(deleteDocuments);
+
+			// Committed along with the indexed files
+			if (IS_NEAR_REAL_TIME) {
+				SEARCHER_MANAGER.maybeRefreshBlocking();
+			} else {
+				commit(writer, statistics);
+			}
+		}
+
+		// Parse files on multiple threads, but write them to the index on this
+		// thread, in the same order as given
+		// (so newly modified files are still indexed first)
+		int parserCount = Math.max(1, DYCESettings.PARSER_THREAD_COUNT);
+		statistics.setParserCount(parserCount);
+
+		ExecutorService parsers = Executors.newFixedThreadPool(parserCount, DYCEIndexer::createParserThread);
+
+		// Files being parsed, in the order to write them
+		// (limited, so parsers don't get too far ahead of the writer and use
+		// up memory with documents waiting to be written)
+		ArrayDeque<Future<List<ParsedPath>>> parseTasks = new ArrayDeque<>();
+		int maxParseTasks = parserCount * PARSE_TASKS_PER_PARSER;
+
+		// Parse files from the same Java project together
+		// (shares the work to resolve bindings between the files)
+		int batchSize = DYCESettings.SHOULD_BATCH_PARSE ? Math.max(1, DYCESettings.PARSE_BATCH_SIZE) : 1;
+
+		ArrayDeque<ParsedPath> parsedPaths = new ArrayDeque<>();
+
+		try {
+			Iterator<T> iterator = paths.iterator();
+
+			while (iterator.hasNext() || !parseTasks.isEmpty() || !parsedPaths.isEmpty()) {
+				// Keep the parsers busy
+				// (time spent getting the next paths is time waiting for the files to be walked)
+				long walkStart = System.nanoTime();
+
+				while (iterator.hasNext() && parseTasks.size() < maxParseTasks) {
+					List<T> nextPaths = new ArrayList<>(batchSize);
+
+					while (iterator.hasNext() && nextPaths.size() < batchSize) {
+						T path = iterator.next();
+
+						if (path != null) {
+							nextPaths.add(path);
+						}
+					}
+
+					statistics.add(Stage.WALK, nextPaths.size(), System.nanoTime() - walkStart);
+
+					for (Callable<List<ParsedPath>> parseTask : createParseTasks(nextPaths, monitor, statistics)) {
+						parseTasks.add(parsers.submit(parseTask));
+					}
+
+					walkStart = System.nanoTime();
+				}
+
+				statistics.add(Stage.WALK, 0, System.nanoTime() - walkStart);
+
+				if (parsedPaths.isEmpty()) {
+					if (parseTasks.isEmpty()) {
+						continue;
+					}
+
+					parsedPaths.addAll(getParsedPaths(parseTasks.remove(), monitor));
+
+					if (parsedPaths.isEmpty()) {
+						continue;
+					}
+				}
+
+				ParsedPath parsedPath = parsedPaths.remove();
+
+				if (parsedPath.isFailed()) {
+					// Couldn't parse the file, so don't keep retrying it
+					// (indexed again once it's modified)
+					if (removeWhenDone) {
+						dyceIndexJob.removePath(parsedPath.getPath());
+					}
+
+					continue;
+				}
+
+				try {
+					if (!writer.isOpen()) {
+						// Handle case such as user deleting the index directory
+						// in the middle of indexing
+						monitor.setCanceled(true);
+						throw new OperationCanceledException();
+					}
+
+					long writeStart = System.nanoTime();
+
+					// Counted as they are written (since may be created as they are written)
+					CountedDocuments documents = new CountedDocuments(parsedPath.getDocuments());
+
+					try {
+						if (isBulkLoad) {
+							// Index is empty, so no existing documents to replace
+							writer.addDocuments(documents);
+						} else {
+							// Replaces any existing documents, in case file was partially
+							// indexed and interrupted
+							// (want to start fresh and reindex file)
+							writer.updateDocuments(parsedPath.getPath().getTerm(), documents);
+						}
+					} finally {
+						// Close the file, even if couldn't write all its documents
+						closeDocuments(parsedPath.getDocuments());
+					}
+
+					int count = ++filesModifiedCount;
+
+					if (!isBulkLoad) {
+						UNCOMMITTED_FILE_COUNT++;
+					}
+
+					if (count % CANCEL_CHECK_COUNT == 0 && monitor.isCanceled()) {
+						throw new OperationCanceledException();
+					}
+
+					if (count % INDEX_GROUP_COUNT == 0 && !isBulkLoad) {
+						if (!writer.isOpen()) {
+							// Handle case such as user deleting the index
+							// directory in the middle of indexing
+							monitor.setCanceled(true);
+							throw new OperationCanceledException();
+						}
+
+						// Refresh the searcher in groups, so can start querying
+						// even as rest of files index
+						refresh(writer, statistics);
+					}
+
+					if (count == initiallyReadCount && !isBulkLoad) {
+						if (count < INDEX_GROUP_COUNT) {
+							if (!writer.isOpen()) {
+								// Handle case such as user deleting the index
+								// directory in the middle of indexing
+								monitor.setCanceled(true);
+								throw new OperationCanceledException();
+							}
+
+							if (monitor.isCanceled()) {
+								throw new OperationCanceledException();
+							}
+
+							// Refresh the searcher so can then search quickly
+							refresh(writer, statistics);
+						}
+
+						dyceIndexJob.setIndexCreated(true);
+					}
+
+					statistics.addWrite(documents.getCount(), System.nanoTime() - writeStart);
+
+					if (removeWhenDone) {
+						dyceIndexJob.removePath(parsedPath.getPath());
+					}
+				} catch (IOException | UncheckedIOException e) {
+					// Such as if couldn't read the file while writing its documents
+					// TODO Auto-generated catch block
+					e.printStackTrace();
+				}
+			}
+		} finally {
+			// Stop parsing any remaining files (such as if canceled)
+			for (Future<List<ParsedPath>> parseTask : parseTasks) {
+				parseTask.cancel(true);
+			}
+
+			parsers.shutdownNow();
+		}
+
+		// Make the changes durable once done
+		if (!isBulkLoad && (filesModifiedCount > 0 || deleteDocuments.length > 0)) {
+			commit(writer, statistics);
+		}
+
+		return filesModifiedCount;
+	}
+
+	static Thread createParserThread(final Runnable runnable) {
+		Thread thread = new Thread(runnable, "DYCE Parser");
+		// Don't prevent Eclipse from shutting down
+		thread.setDaemon(true);
+		return thread;
+	}
+
+	/**
+	 * Create the tasks to parse the paths (in the same order as the paths)
+	 *
+	 * <p>
+	 * Java files from the same Java project are parsed together in a single
+	 * task; other files are each parsed in their own task
+	 * </p>
+	 */
+	private static <T extends PathWithAttributes> List<Callable<List<ParsedPath>>> createParseTasks(
+			final List<T> paths, final IProgressMonitor monitor, final DYCEIndexStatistics statistics) {
+		if (paths.size() == 1) {
+			T path = paths.get(0);
+			return Collections.singletonList(failSafe(paths, () -> parse(path, monitor, statistics)));
+		}
+
+		// Keyed by Java project (for files parsed together) or by the first
+		// path in the group (for files parsed by themselves)
+		// (LinkedHashMap, so keeps the order files were given)
+		Map<Object, List<PathWithAttributes>> groups = new LinkedHashMap<>();
+
+		// Files parsed by themselves are grouped until their total cost reaches the batch size
+		// (so cheap files, such as files indexed by line, are parsed many at a time)
+		int maxGroupCost = DYCESettings.SHOULD_BATCH_PARSE ? Math.max(1, DYCESettings.PARSE_BATCH_SIZE) : 1;
+		List<PathWithAttributes> group = null;
+		int groupCost = 0;
+
+		for (T path : paths) {
+			// (when bindings are resolved in the background, Java files are parsed by themselves, like any other file)
+			IJavaProject javaProject = DYCESettings.SHOULD_RESOLVE_BINDINGS_IN_BACKGROUND ? null
+					: getJavaProject(path);
+
+			if (javaProject != null) {
+				groups.computeIfAbsent(javaProject, k -> new ArrayList<>()).add(path);
+				continue;
+			}
+
+			DYCEFileIndexer indexer = DYCEFileIndexers.get(path.getPath());
+			int cost = indexer != null ? Math.max(1, indexer.getCost()) : DYCEFileIndexer.LINE_COST;
+
+			if (group == null || groupCost + cost > maxGroupCost) {
+				group = new ArrayList<>();
+				groupCost = 0;
+				groups.put(path, group);
+			}
+
+			group.add(path);
+			groupCost += cost;
+		}
+
+		List<Callable<List<ParsedPath>>> parseTasks = new ArrayList<>(groups.size());
+
+		for (Entry<Object, List<PathWithAttributes>> entry : groups.entrySet()) {
+			Object key = entry.getKey();
+			List<PathWithAttributes> groupPaths = entry.getValue();
+
+			if (key instanceof IJavaProject) {
+				parseTasks.add(failSafe(groupPaths,
+						() -> parseJavaProjectFiles((IJavaProject) key, groupPaths, monitor, statistics)));
+			} else {
+				parseTasks.add(failSafe(groupPaths, () -> parse(groupPaths, monitor, statistics)));
+			}
+		}
+
+		return parseTasks;
+	}
+
+	/**
+	 * Wrap the parse task, so if it fails, each of its paths is returned as
+	 * failed
+	 *
+	 * <p>
+	 * This way, the paths are removed from the files to index, instead of
+	 * being retried each time the index job runs
+	 * </p>
+	 */
+	private static Callable<List<ParsedPath>> failSafe(final List<? extends PathWithAttributes> paths,
+			final Callable<List<ParsedPath>> parseTask) {
+		return () -> {
+			try {
+				return parseTask.call();
+			} catch (OperationCanceledException e) {
+				throw e;
+			} catch (Exception e) {
+				Activator.log("Could not parse " + paths, e);
+				return paths.stream().map(ParsedPath::failed).collect(Collectors.toList());
+			}
+		};
+	}
+
+	/**
+	 * Parse the path into the documents to index (run by the parsers)
+	 *
+	 * @return the parsed path (empty if there's nothing to index)
+	 */
+	private static List<ParsedPath> parse(final PathWithAttributes path, final IProgressMonitor monitor,
+			final DYCEIndexStatistics statistics) throws IOException {
+		return parse(path, monitor, statistics, true);
+	}
+
+	/**
+	 * Parse the path into the documents to index (run by the parsers)
+	 *
+	 * @param shouldMarkBindingsPending whether to mark Java files to have their
+	 *            bindings resolved afterwards, in the background
+	 * @return the parsed path (empty if there's nothing to index)
+	 */
+	private static List<ParsedPath> parse(final PathWithAttributes path, final IProgressMonitor monitor,
+			final DYCEIndexStatistics statistics, final boolean shouldMarkBindingsPending) throws IOException {
+		if (monitor.isCanceled()) {
+			throw new OperationCanceledException();
+		}
+
+		long parseStart = System.nanoTime();
+
+		Iterable<Document> documents = createDocuments(path, statistics, shouldMarkBindingsPending);
+
+		statistics.addParse(path.getPathname(), System.nanoTime() - parseStart);
+
+		// Check without iterating, since documents may be created as they are iterated
+		if (documents instanceof Collection && ((Collection<?>) documents).isEmpty()) {
+			return Collections.emptyList();
+		}
+
+		return Collections.singletonList(new ParsedPath(path, documents));
+	}
+
+	/**
+	 * Parse each of the paths (run by the parsers)
+	 *
+	 * @return the parsed paths (skips paths where there's nothing to index)
+	 */
+	private static List<ParsedPath> parse(final List<PathWithAttributes> paths, final IProgressMonitor monitor,
+			final DYCEIndexStatistics statistics) throws IOException {
+		if (paths.size() == 1) {
+			return parse(paths.get(0), monitor, statistics);
+		}
+
+		List<ParsedPath> parsedPaths = new ArrayList<>(paths.size());
+
+		for (PathWithAttributes path : paths) {
+			try {
+				parsedPaths.addAll(parse(path, monitor, statistics));
+			} catch (IOException e) {
+				// Don't let one file prevent indexing the others
+				Activator.log("Could not parse " + path, e);
+				parsedPaths.add(ParsedPath.failed(path));
+			}
+		}
+
+		return parsedPaths;
+	}
+
+	/**
+	 * Wait for the parser to finish parsing the paths
+	 *
+	 * @return the parsed paths (empty if there's nothing to index; paths which
+	 *         could not be parsed are returned as failed)
+	 */
+	private static List<ParsedPath> getParsedPaths(final Future<List<ParsedPath>> future,
+			final IProgressMonitor monitor) {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			monitor.setCanceled(true);
+			throw new OperationCanceledException();
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+
+			if (cause instanceof OperationCanceledException) {
+				throw (OperationCanceledException) cause;
+			}
+
+			// Parse tasks return failed paths instead of throwing, so only errors get here
+			Activator.log("Could not parse files", cause);
+			return Collections.emptyList();
+		}
+	}
+
+	// TODO: does nothing currently
+	@NonNullByDefault
+	private static Map<String, String> getFileRelatedFields(final Path path, final String filename,
+			final String extension) {
+
+		switch (extension) {
+		// TODO: Need to handle?
+		//		case "java":
+		//			return CASTLEJavaIndexer.getJavaFileRelatedFields(path, filename);
+		default:
+			@SuppressWarnings("null")
+			@NonNull
+			Map<String, String> emptyMap = Collections.emptyMap();
+
+			return emptyMap;
+
+		}
+	}
+
+	/**
+	 * Create the documents to index for the file
+	 *
+	 * @param pathWithTerm
+	 * @param statistics
+	 * @return the documents to index (empty if there's nothing to index)
+	 */
+	@NonNullByDefault
+	static Iterable<Document> createDocuments(final PathWithAttributes pathWithTerm,
+			final DYCEIndexStatistics statistics) throws IOException {
+		return createDocuments(pathWithTerm, statistics, true);
+	}
+
+	/**
+	 * Create the documents to index for the file
+	 *
+	 * @param pathWithTerm
+	 * @param statistics
+	 * @param shouldMarkBindingsPending whether to mark Java files to have their
+	 *            bindings resolved afterwards, in the background
+	 * @return the documents to index (empty if there's nothing to index)
+	 */
+	@NonNullByDefault
+	static Iterable<Document> createDocuments(final PathWithAttributes pathWithTerm,
+			final DYCEIndexStatistics statistics, final boolean shouldMarkBindingsPending) throws IOException {
+		//		File file = pathWithTerm.getFile();
+		//		boolean isFile = file.isFile();
+
+		Path path = pathWithTerm.getPath();
+
+		//		if (!isFile) {
+		if (Files.isDirectory(path)) {
+			// Don't need to index directories
+			@SuppressWarnings("null")
+			@NonNull
+			List<Document> emptyList = Collections.emptyList();
+
+			return emptyList;
+		}
+
+		// Indicate which project in
+		//		Path relative = Activator.WORKSPACE_PATH.relativize(path);
+
+		//		String project = relative.getNameCount() > 0 ? relative.getName(0).toString() : "";
+
+		String project = pathWithTerm.getProject();
+
+		@NonNull
+		@SuppressWarnings("null")
+		String filename = path.getFileName().toString();
+
+		String extension = getExtension(filename);
+
+		DYCEFileIndexer indexer = DYCEFileIndexers.get(extension);
+
+		@SuppressWarnings("null")
+		@NonNull
+		Iterable<Document> documents = indexer != null ? indexer.createDocuments(pathWithTerm, statistics)
+				: Collections.emptyList();
+
+		// Indexers which read the entire file already hashed it (otherwise, such as for large files which are read as
+		// they are written, read the file to hash it)
+		OptionalLong contentHash = documents instanceof HashedDocuments
+				? OptionalLong.of(((HashedDocuments) documents).getContentHash())
+				: hashContent(path);
+
+		Document metaDocument = createFileMetaDocument(pathWithTerm, contentHash);
+
+		if (shouldMarkBindingsPending && indexer instanceof JavaFileIndexer && !JavaFileIndexer.shouldResolveBindings()
+				&& canResolveBindings(pathWithTerm)) {
+			// Bindings are resolved afterwards, in the background
+			metaDocument.add(new StringField(BINDINGS_PENDING_TERM.field(), BINDINGS_PENDING_TERM.text(),
+					Field.Store.NO));
+		}
+
+		long lastModified = pathWithTerm.getLastModified();
+
+		if (documents instanceof List) {
+			List<Document> documentList = new ArrayList<>((List<Document>) documents);
+			documentList.forEach(d -> addLastModified(d, lastModified));
+			documentList.add(metaDocument);
+			return documentList;
+		}
+
+		// Documents are created as they are written, so add the metadocument once they're done
+		return new LazyDocuments(documents, metaDocument, lastModified);
+	}
+
+	/**
+	 * Close the documents, if they read the file as they are written (see
+	 * LineFileIndexer)
+	 */
+	private static void closeDocuments(final Iterable<Document> documents) {
+		if (documents instanceof Closeable) {
+			try {
+				((Closeable) documents).close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	/**
+	 * Add the file's last modified to the document (the index may be sorted by
+	 * it; see {@link #RECENCY_SORT})
+	 */
+	@NonNullByDefault
+	private static void addLastModified(final Document document, final long lastModified) {
+		document.add(new NumericDocValuesField(LAST_MODIFIED_FIELD, lastModified));
+	}
+
+	/**
+	 * Store information about the file itself
+	 *
+	 * <p>
+	 * Stores last modified so can do incremental reindexing, when files are
+	 * added or modified
+	 * </p>
+	 */
+	@NonNullByDefault
+	private static void addMetaDocument(final List<Document> documents, final PathWithAttributes pathWithTerm) {
+		// (done last in case indexing was interupted in middle of file)
+		// (in this case, the document would not show as indexed in full and
+		// would be reindexed)
+		// TODO: should also delete documents when corresponding file is deleted
+		// (contents were read by JDT, so read the file to hash it)
+		documents.add(createFileMetaDocument(pathWithTerm, hashContent(pathWithTerm.getPath())));
+	}
+
+	/**
+	 * @param contentHash hash of the file's contents (see
+	 *            {@link #hashContent(Path)}) or empty if cannot read the file
+	 */
+	@NonNullByDefault
+	private static Document createFileMetaDocument(final PathWithAttributes pathWithTerm,
+			final OptionalLong contentHash) {
+		String pathname = pathWithTerm.getPathname();
+
+		Document metaDocument = createMetaDocument(pathname, pathWithTerm.getLastModified(),
+				getDocumentVersion(pathWithTerm.getPath()));
+
+		metaDocument.add(new StringField(METADOCUMENT_PATH_FIELD, pathname, Field.Store.NO));
+		addLastModified(metaDocument, pathWithTerm.getLastModified());
+
+		if (contentHash.isPresent()) {
+			metaDocument.add(new NumericDocValuesField(CONTENT_HASH_FIELD, contentHash.getAsLong()));
+		}
+
+		return metaDocument;
+	}
+
+	/**
+	 * Create parser used to parse Java files
+	 *
+	 * @param resolveBindings whether to resolve bindings (much slower; only
+	 *            possible for files in a Java project)
+	 */
+	private static ASTParser createJavaParser(final boolean resolveBindings) {
+		ASTParser parser = ASTParser.newParser(AST.JLS13);
+		parser.setResolveBindings(resolveBindings);
+		parser.setKind(ASTParser.K_COMPILATION_UNIT);
+
+		parser.setBindingsRecovery(resolveBindings);
+		// TODO: not sure if needed, but setting
+		parser.setStatementsRecovery(true);
+
+		return parser;
+	}
+
+	/**
+	 * Set the compiler options
+	 *
+	 * <p>
+	 * Note: call after setting the project, since setting the project also sets
+	 * the compiler options
+	 * </p>
+	 */
+	private static void setCompilerOptions(final ASTParser parser) {
+		Map<String, String> options = JavaCore.getOptions();
+
+		// Required to correctly read enums
+		// http://help.eclipse.org/kepler/index.jsp?topic=%2Forg.eclipse.jdt.doc.isv%2Freference%2Fapi%2Forg%2Feclipse%2Fjdt%2Fcore%2Fdom%2FASTParser.html
+		JavaCore.setComplianceOptions(JavaCore.VERSION_1_8, options);
+
+		parser.setCompilerOptions(options);
+	}
+
+	/**
+	 * Decode the Java file's source
+	 *
+	 * <p>
+	 * The same source is parsed and used to index each line, and its bytes are
+	 * hashed (see {@link #hashContent(ByteBuffer)}), so the file is only read
+	 * once
+	 * </p>
+	 *
+	 * @param content the file's bytes
+	 */
+	static char[] readJavaSource(final Path path, final byte[] content) {
+		Charset charset = Charset.defaultCharset();
+
+		if (path.getFileSystem() == FileSystems.getDefault()) {
+			IFile[] files = Activator.WORKSPACE_ROOT.findFilesForLocationURI(path.toUri());
+
+			if (files.length > 0) {
+				try {
+					charset = Charset.forName(files[0].getCharset());
+				} catch (CoreException | IllegalArgumentException e) {
+					// Use the default charset
+				}
+			}
+		}
+
+		return new String(content, charset).toCharArray();
+	}
+
+	/**
+	 * Parse a single Java file
+	 *
+	 * @param path
+	 * @param source the file's source (see {@link #readJavaSource(Path, byte[])})
+	 * @param resolveBindings whether to resolve bindings (only done if the file
+	 *            is in a Java project, such as not for source archive entries)
+	 * @return the compilation unit or <code>null</code> if could not parse
+	 */
+	static CompilationUnit parseJavaFile(final Path path, final char[] source, final boolean resolveBindings) {
+		ASTParser parser = createJavaParser(false);
+		parser.setSource(source);
+
+		try {
+			URI uri = path.toUri();
+
+			// Used to prevent CoreException which checking zip files
+			// (in this case, wouldn't expect to find in project)
+			// org.eclipse.core.runtime.CoreException: No file system is defined for scheme: jar
+			if (!Objects.equals(uri.getScheme(), "jar")) {
+				IFile[] files = Activator.WORKSPACE_ROOT.findFilesForLocationURI(uri);
+
+				if (files.length > 0 && resolveBindings) {
+					IProject iProject = files[0].getProject();
+					// Set unit name (along with the project), so can resolve bindings
+					parser.setUnitName(files[0].getFullPath().toString());
+					// https://stackoverflow.com/a/12521662
+					if (iProject != null && iProject.hasNature(JavaCore.NATURE_ID)) {
+						parser.setResolveBindings(true);
+						parser.setBindingsRecovery(true);
+
+						IJavaProject javaProject = JavaCore.create(iProject);
+						// Not sure what this does, if anything, but no harm keeping
+						parser.setProject(javaProject);
+
+						//						System.out.println("Project location: " + javaProject.getOutputLocation());
+
+						//						System.out.println(
+						//								javaProject.getElementName() + "\t"
+						//										+ Arrays.toString(javaProject.getResolvedClasspath(true)));
+
+						//						String[] classpathEntries = Arrays.stream(javaProject.getResolvedClasspath(true))
+						//								.map(IClasspathEntry::getPath)
+						//								.map(IPath::toPortableString)
+						//								//								.map(Object::toString)
+						//								.toArray(String[]::new);
+
+						//						classpathEntries = new String[] {
+						//								"C:\\Users\\trshco\\Dropbox\\EclipsePlugin\\runtime-EclipseApplication\\Test\\src" };
+
+						//						parser.setEnvironment(classpathEntries, new String[] { path.toString() },
+						//								new String[] { "UTF-8" }, false);
+
+						//						Arrays.stream(javaProject.getResolvedClasspath(true))
+						//								.map(IClasspathEntry::getPath)
+						//								.forEach(c -> System.out.println(c));
+					}
+				}
+			}
+		} catch (CoreException e) {
+			// TODO Auto-generated catch block
+			e.printStackTrace();
+		}
+
+		setCompilerOptions(parser);
+
+		ASTNode astNode = parser.createAST(null);
+
+		return astNode instanceof CompilationUnit ? (CompilationUnit) astNode : null;
+	}
+
+	/**
+	 * Get the Java project the file is part of, so can parse files from the
+	 * same project together
+	 *
+	 * @return the Java project or <code>null</code> if the file should be
+	 *         parsed by itself (such as if it's not a Java file or is in a zip)
+	 */
+	private static IJavaProject getJavaProject(final PathWithAttributes path) {
+		if (!path.getPathname().endsWith(".java") || path.getPath().getFileSystem() != FileSystems.getDefault()) {
+			return null;
 		}
 
-		LocalDateTime endTime = LocalDateTime.now();
+		IProject iProject = Activator.WORKSPACE_ROOT.getProject(path.getProject());
 
-		Duration duration = Duration.between(startTime, endTime);
+		try {
+			if (iProject.isOpen() && iProject.hasNature(JavaCore.NATURE_ID)) {
+				return JavaCore.create(iProject);
+			}
+		} catch (CoreException e) {
+			// Parse file by itself
+		}
 
-		return createIndexDoneMessage(indexedFiles, duration);
+		return null;
 	}
 
-	public static <T extends PathWithLastModified> int index(final Stream<T> paths, final DYCEIndexJob dyceIndexJob,
-			final IProgressMonitor monitor, final boolean removeWhenDone, final Term[] deleteDocuments)
-			throws IOException {
-		// TODO: see how can use submonitor to indicate progress (harder since
-		// parallel)
-		int initiallyReadCount = INITIALLY_READ_COUNT;
+	/**
+	 * Indicates if can resolve the bindings for the file (such as a Java file
+	 * on the build path of a Java project)
+	 */
+	private static boolean canResolveBindings(final PathWithAttributes path) {
+		IJavaProject javaProject = getJavaProject(path);
 
-		if (INDEX_GROUP_COUNT < initiallyReadCount) {
-			initiallyReadCount = INDEX_GROUP_COUNT;
+		if (javaProject == null) {
+			return false;
 		}
 
-		// Introduced to make lambda happy
-		int initiallyReadCountFinal = initiallyReadCount;
-
-		AtomicInteger filesModifiedCount = new AtomicInteger();
+		IFile[] files = Activator.WORKSPACE_ROOT.findFilesForLocationURI(path.getPath().toUri());
 
-		IndexWriter writer = getWriter();
-
-		if (deleteDocuments.length > 0) {
-			writer.deleteDocuments(deleteDocuments);
-			writer.commit();
+		return files.length > 0 && javaProject.isOnClasspath(files[0]);
+	}
 
-			if (SEARCHER_MANAGER != null) {
-				SEARCHER_MANAGER.maybeRefreshBlocking();
-			}
+	/**
+	 * Resolve the bindings for the Java files indexed without them (run in the
+	 * background by DYCEResolveBindingsJob)
+	 *
+	 * <p>
+	 * Parses the files from the same Java project together, then replaces
+	 * their documents with ones which include each method's declaring type and
+	 * signature
+	 * </p>
+	 *
+	 * @return the number of files whose bindings were resolved
+	 */
+	public static int resolveBindings(final IProgressMonitor monitor, final DYCEIndexStatistics statistics)
+			throws IOException {
+		if (!indexExists()) {
+			return 0;
 		}
 
-		// Iterate in order (so index newly modified files first)
-		paths.forEachOrdered(path -> {
-			if (path == null) {
-				return;
-			}
-
-			// Index files
+		IndexWriter writer = getWriter();
 
-			// First delete any documents, in case file was partially
-			// indexed and interrupted
-			// (want to start fresh and reindex file)
-			try {
-				if (!writer.isOpen()) {
-					// Handle case such as user deleting the index directory
-					// in the middle of indexing
-					monitor.setCanceled(true);
-					throw new OperationCanceledException();
-				}
+		// Group the files by Java project, so can parse them together
+		// (LinkedHashMap, so keeps the order files were given)
+		Map<IJavaProject, List<PathWithAttributes>> projectPaths = new LinkedHashMap<>();
 
-				writer.deleteDocuments(path.getTerm());
+		for (PathWithAttributes path : readBindingsPendingFiles()) {
+			IJavaProject javaProject = getJavaProject(path);
 
-				addDocument(writer, path);
+			if (javaProject != null) {
+				projectPaths.computeIfAbsent(javaProject, k -> new ArrayList<>()).add(path);
+			}
+		}
 
-				int count = filesModifiedCount.addAndGet(1);
+		int batchSize = Math.max(1, DYCESettings.PARSE_BATCH_SIZE);
+		int resolvedCount = 0;
 
-				if (count % CANCEL_CHECK_COUNT == 0 && monitor.isCanceled()) {
-					throw new OperationCanceledException();
-				}
+		try {
+			for (Entry<IJavaProject, List<PathWithAttributes>> entry : projectPaths.entrySet()) {
+				List<PathWithAttributes> paths = entry.getValue();
 
-				if (count % INDEX_GROUP_COUNT == 0) {
-					if (!writer.isOpen()) {
-						// Handle case such as user deleting the index
-						// directory in the middle of indexing
-						monitor.setCanceled(true);
+				for (int i = 0; i < paths.size(); i += batchSize) {
+					if (monitor.isCanceled() || !writer.isOpen()) {
 						throw new OperationCanceledException();
 					}
 
-					// Commit changes in groups, so can start querying even
-					// as rest of files index
-					commit(writer);
-				}
+					List<PathWithAttributes> batch = paths.subList(i, Math.min(paths.size(), i + batchSize));
 
-				if (count == initiallyReadCountFinal) {
-					if (count < INDEX_GROUP_COUNT) {
-						if (!writer.isOpen()) {
-							// Handle case such as user deleting the index
-							// directory in the middle of indexing
-							monitor.setCanceled(true);
-							throw new OperationCanceledException();
-						}
+					for (ParsedPath parsedPath : parseJavaProjectFiles(entry.getKey(), batch, monitor, statistics)) {
+						long writeStart = System.nanoTime();
 
-						if (monitor.isCanceled()) {
-							throw new OperationCanceledException();
-						}
+						CountedDocuments documents = new CountedDocuments(parsedPath.getDocuments());
+						writer.updateDocuments(parsedPath.getPath().getTerm(), documents);
 
-						// Commit changes so can then search quickly
-						commit(writer);
-					}
+						UNCOMMITTED_FILE_COUNT++;
+						resolvedCount++;
 
-					dyceIndexJob.setIndexCreated(true);
-				}
+						statistics.addWrite(documents.getCount(), System.nanoTime() - writeStart);
+					}
 
-				if (removeWhenDone) {
-					dyceIndexJob.removePath(path);
+					// Search the resolved files as each batch is done
+					refresh(writer, statistics);
 				}
-			} catch (IOException e) {
-				// TODO Auto-generated catch block
-				e.printStackTrace();
 			}
-		});
-		//		}
-
-		int modifiedCount = filesModifiedCount.get();
-
-		if (modifiedCount > 0) {
-			commit(writer);
+		} finally {
+			// Keep the files already resolved (such as if canceled, since a file was modified)
+			if (resolvedCount > 0 && writer.isOpen()) {
+				commit(writer, statistics);
+			}
 		}
 
-		return modifiedCount;
-	}
-
-	// TODO: does nothing currently
-	@NonNullByDefault
-	private static Map<String, String> getFileRelatedFields(final Path path, final String filename,
-			final String extension) {
-
-		switch (extension) {
-		// TODO: Need to handle?
-		//		case "java":
-		//			return CASTLEJavaIndexer.getJavaFileRelatedFields(path, filename);
-		default:
-			@SuppressWarnings("null")
-			@NonNull
-			Map<String, String> emptyMap = Collections.emptyMap();
-
-			return emptyMap;
-
-		}
+		return resolvedCount;
 	}
 
 	/**
-	 * Index file with each line being a separate document
+	 * Read the Java files indexed without resolving bindings
 	 *
-	 * @param indexWriter
-	 * @param path
+	 * @return the files (skips files which no longer exist, since they will be
+	 *         deleted from the index)
 	 */
-	@NonNullByDefault
-	private static void addDocument(final IndexWriter indexWriter, final PathWithLastModified pathWithTerm)
-			throws IOException {
-		//		File file = pathWithTerm.getFile();
-		//		boolean isFile = file.isFile();
+	private static List<PathWithAttributes> readBindingsPendingFiles() throws IOException {
+		List<PathWithAttributes> paths = new ArrayList<>();
 
-		Path path = pathWithTerm.getPath();
+		IndexSearcher searcher = getSearcher();
 
-		//		if (!isFile) {
-		if (Files.isDirectory(path)) {
-			// Don't need to index directories
-			return;
+		if (searcher == null) {
+			return paths;
 		}
 
-		// Indicate which project in
-		//		Path relative = Activator.WORKSPACE_PATH.relativize(path);
-
-		//		String project = relative.getNameCount() > 0 ? relative.getName(0).toString() : "";
+		try {
+			for (LeafReaderContext context : searcher.getIndexReader().leaves()) {
+				LeafReader leafReader = context.reader();
+				PostingsEnum postings = leafReader.postings(BINDINGS_PENDING_TERM, PostingsEnum.NONE);
 
-		String project = pathWithTerm.getProject();
-		String pathString = path.toString();
+				if (postings == null) {
+					continue;
+				}
 
-		@NonNull
-		@SuppressWarnings("null")
-		String filename = path.getFileName().toString();
+				Bits liveDocs = leafReader.getLiveDocs();
+				BinaryDocValues pathnameDocValues = DocValues.getBinary(leafReader, PATHNAME_FIELD);
 
-		long fileLastModified = pathWithTerm.getLastModified();
+				for (int docID = postings.nextDoc(); docID != DocIdSetIterator.NO_MORE_DOCS; docID = postings
+						.nextDoc()) {
+					// Ignore deleted documents
+					if (liveDocs != null && !liveDocs.get(docID) || !pathnameDocValues.advanceExact(docID)) {
+						continue;
+					}
 
-		String extension = getExtension(filename);
+					Path path = Paths.get(pathnameDocValues.binaryValue().utf8ToString());
+					IFile[] files = Activator.WORKSPACE_ROOT.findFilesForLocationURI(path.toUri());
 
-		if (extension.equals("java")) {
-			addJavaDocument(indexWriter, path);
+					if (files.length > 0 && Files.exists(path)) {
+						paths.add(PathWithAttributes.of(files[0].getProject().getName(), path));
+					}
+				}
+			}
+		} finally {
+			releaseSearcher(searcher);
 		}
 
-		// Store information about the file itself
-		// (stores last modified so can do incremental reindexing, when files
-		// are added or modified)
-		// (done last in case indexing was interupted in middle of file)
-		// (in this case, the document would not show as indexed in full and
-		// would be reindexed)
-		// TODO: should also delete documents when corresponding file is deleted
-		Document metaDocument = createMetaDocument(pathString, fileLastModified,
-				DYCESettings.DOCUMENT_VERSION);
+		return paths;
+	}
 
-		if (!indexWriter.isOpen()) {
-			return;
+	/**
+	 * Parse Java files from the same Java project together (run by the
+	 * parsers)
+	 *
+	 * <p>
+	 * Uses {@link ASTParser#createASTs}, so the environment used to resolve
+	 * bindings is created once for all the files, instead of once per file
+	 * </p>
+	 *
+	 * @return the parsed paths (in the same order as given)
+	 */
+	private static List<ParsedPath> parseJavaProjectFiles(final IJavaProject javaProject,
+			final List<PathWithAttributes> paths, final IProgressMonitor monitor,
+			final DYCEIndexStatistics statistics) throws IOException {
+		if (monitor.isCanceled()) {
+			throw new OperationCanceledException();
 		}
 
-		indexWriter.addDocument(metaDocument);
-	}
+		long parseStart = System.nanoTime();
 
-	private static void addJavaDocument(final IndexWriter indexWriter, final Path path) throws IOException {
-		String pathString = path.toString();
-		String filename = path.getFileName().toString();
+		Map<ICompilationUnit, PathWithAttributes> compilationUnits = new LinkedHashMap<>();
 
-		ASTParser parser = ASTParser.newParser(AST.JLS13);
-		parser.setResolveBindings(true);
-		parser.setKind(ASTParser.K_COMPILATION_UNIT);
+		for (PathWithAttributes path : paths) {
+			IFile[] files = Activator.WORKSPACE_ROOT.findFilesForLocationURI(path.getPath().toUri());
+			ICompilationUnit compilationUnit = files.length > 0 ? JavaCore.createCompilationUnitFrom(files[0]) : null;
 
-		parser.setBindingsRecovery(true);
-		// TODO: not sure if needed, but setting
-		parser.setStatementsRecovery(true);
+			if (compilationUnit != null) {
+				compilationUnits.put(compilationUnit, path);
+			}
+		}
 
-		boolean alreadySetSource = false;
-		try {
-			URI uri = path.toUri();
+		// Documents for each path, as each compilation unit is parsed
+		Map<PathWithAttributes, List<Document>> documentsMap = new HashMap<>();
 
-			// Used to prevent CoreException which checking zip files
-			// (in this case, wouldn't expect to find in project)
-			// org.eclipse.core.runtime.CoreException: No file system is defined for scheme: jar
-			if (!Objects.equals(uri.getScheme(), "jar")) {
-				IFile[] files = Activator.WORKSPACE_ROOT.findFilesForLocationURI(uri);
+		// Files are parsed one after another, so each file's time is the time since the previous one was done
+		long[] lastAcceptTime = { parseStart };
 
-				if (files.length > 0) {
-					IProject iProject = files[0].getProject();
-					// Set source to compilation unit, so can resolve bindings
-					parser.setSource(JavaCore.createCompilationUnitFrom(files[0]));
-					alreadySetSource = true;
-					// https://stackoverflow.com/a/12521662
-					if (iProject != null && iProject.hasNature(JavaCore.NATURE_ID)) {
-						IJavaProject javaProject = JavaCore.create(iProject);
-						// Not sure what this does, if anything, but no harm keeping
-						parser.setProject(javaProject);
+		if (!compilationUnits.isEmpty()) {
+			ASTParser parser = createJavaParser(true);
+			parser.setProject(javaProject);
+			setCompilerOptions(parser);
 
-						//						System.out.println("Project location: " + javaProject.getOutputLocation());
+			ASTRequestor requestor = new ASTRequestor() {
+				@Override
+				public void acceptAST(final ICompilationUnit source, final CompilationUnit compilationUnit) {
+					if (monitor.isCanceled()) {
+						throw new OperationCanceledException();
+					}
 
-						//						System.out.println(
-						//								javaProject.getElementName() + "\t"
-						//										+ Arrays.toString(javaProject.getResolvedClasspath(true)));
+					PathWithAttributes path = compilationUnits.get(source);
 
-						//						String[] classpathEntries = Arrays.stream(javaProject.getResolvedClasspath(true))
-						//								.map(IClasspathEntry::getPath)
-						//								.map(IPath::toPortableString)
-						//								//								.map(Object::toString)
-						//								.toArray(String[]::new);
+					if (path == null) {
+						return;
+					}
 
-						//						classpathEntries = new String[] {
-						//								"C:\\Users\\trshco\\Dropbox\\EclipsePlugin\\runtime-EclipseApplication\\Test\\src" };
+					// Editors keep the source in a buffer, which is reused if open
+					char[] contents;
+					try {
+						contents = source.getSource().toCharArray();
+					} catch (JavaModelException e) {
+						contents = null;
+					}
 
-						//						parser.setEnvironment(classpathEntries, new String[] { path.toString() },
-						//								new String[] { "UTF-8" }, false);
+					List<Document> documents = new ArrayList<>();
+					addJavaDocuments(documents, path.getPath(), compilationUnit, contents);
+					documents.forEach(d -> addLastModified(d, path.getLastModified()));
+					addMetaDocument(documents, path);
 
-						//						Arrays.stream(javaProject.getResolvedClasspath(true))
-						//								.map(IClasspathEntry::getPath)
-						//								.forEach(c -> System.out.println(c));
-					}
+					documentsMap.put(path, documents);
+
+					long acceptTime = System.nanoTime();
+					statistics.addFileTime(path.getPathname(), acceptTime - lastAcceptTime[0]);
+					lastAcceptTime[0] = acceptTime;
 				}
-			}
-		} catch (CoreException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
-		}
+			};
 
-		if (!alreadySetSource) {
-			String source = new String(Files.readAllBytes(path));
-			parser.setSource(source.toCharArray());
+			parser.createASTs(compilationUnits.keySet().toArray(new ICompilationUnit[0]), new String[0], requestor,
+					null);
 		}
 
-		Map<String, String> options = JavaCore.getOptions();
+		statistics.add(Stage.BINDINGS, documentsMap.size(), System.nanoTime() - parseStart);
 
-		// Required to correctly read enums
-		// http://help.eclipse.org/kepler/index.jsp?topic=%2Forg.eclipse.jdt.doc.isv%2Freference%2Fapi%2Forg%2Feclipse%2Fjdt%2Fcore%2Fdom%2FASTParser.html
-		JavaCore.setComplianceOptions(JavaCore.VERSION_1_8, options);
+		List<ParsedPath> parsedPaths = new ArrayList<>(paths.size());
 
-		parser.setCompilerOptions(options);
+		for (PathWithAttributes path : paths) {
+			List<Document> documents = documentsMap.get(path);
 
-		ASTNode astNode = parser.createAST(null);
+			if (documents != null) {
+				parsedPaths.add(new ParsedPath(path, documents));
+			} else {
+				// Wasn't parsed with the project (such as if not on the build path)
+				// Parse the file by itself
+				// (without marking bindings pending, since resolving them would again fall back here)
+				parsedPaths.addAll(parse(path, monitor, statistics, false));
+			}
+		}
 
-		CompilationUnit compilationUnit;
+		return parsedPaths;
+	}
 
-		if (astNode instanceof CompilationUnit) {
-			compilationUnit = (CompilationUnit) astNode;
-		} else {
-			compilationUnit = null;
+	/**
+	 * Add the documents for the Java file (one for each line and one for each
+	 * method)
+	 *
+	 * @param documents
+	 * @param path
+	 * @param compilationUnit the parsed file
+	 * @param source the source the file was parsed from (if <code>null</code>,
+	 *            lines aren't indexed)
+	 */
+	static void addJavaDocuments(final List<Document> documents, final Path path,
+			@Nullable final CompilationUnit compilationUnit, @Nullable final char[] source) {
+		if (source != null) {
+			JavaLineIndexer.addLineDocuments(documents, path, source, compilationUnit);
+		}
+
+		if (compilationUnit == null) {
+			return;
 		}
 
+		String pathString = path.toString();
+		String filename = path.getFileName().toString();
+
 		ASTVisitor visitor = new ASTVisitor() {
 			@Override
 			public boolean visit(final MethodDeclaration methodDeclaration) {
 				String elementName = methodDeclaration.getName().getIdentifier();
 
+				// Only resolved if parsed with bindings (see DYCESettings.SHOULD_RESOLVE_BINDINGS_IN_BACKGROUND)
 				IMethodBinding binding = methodDeclaration.resolveBinding();
 
-				//				if (binding != null) {
-				// TODO: need to add classpath so can resolve binding
-				System.out.println(methodDeclaration.getName() + "\t" + methodDeclaration.resolveBinding());
-				//				}
-
 				Document document = new Document();
 
 				document.add(new StringField(FULL_PATH_FIELD, pathString, Field.Store.YES));
@@ -715,32 +2006,49 @@ public class DYCEIndexer {
 				document.add(new TextField("file", filename, Field.Store.YES));
 				document.add(new TextField("element", elementName, Field.Store.YES));
 
-				if (compilationUnit != null) {
-					int lineNumber = compilationUnit.getLineNumber(methodDeclaration.getName().getStartPosition());
-					document.add(new IntPoint("line", lineNumber));
-					document.add(new StoredField("line", lineNumber));
-				}
+				// Whole name, used to complete names (see DYCEElementDictionary)
+				document.add(new SortedSetDocValuesField(DYCEElementDictionary.ELEMENT_NAME_FIELD,
+						new BytesRef(elementName)));
 
-				if (!indexWriter.isOpen()) {
-					return false;
+				if (binding != null) {
+					document.add(new TextField("declaringType", binding.getDeclaringClass().getQualifiedName(),
+							Field.Store.YES));
+					document.add(new TextField("signature", getSignature(binding), Field.Store.YES));
 				}
 
-				try {
-					indexWriter.addDocument(document);
-				} catch (IOException e) {
-					// TODO Auto-generated catch block
-					//					e.printStackTrace();
-				}
+				int lineNumber = compilationUnit.getLineNumber(methodDeclaration.getName().getStartPosition());
+				document.add(new IntPoint("line", lineNumber));
+				document.add(new StoredField("line", lineNumber));
+
+				DYCEDisplayFields.addDocValues(document);
+
+				documents.add(document);
 
 				return true;
 			}
 		};
 
-		astNode.accept(visitor);
+		compilationUnit.accept(visitor);
+	}
+
+	/**
+	 * Get the method's signature (such as "indexOf(String, int) : int")
+	 */
+	private static String getSignature(final IMethodBinding binding) {
+		return Arrays.stream(binding.getParameterTypes())
+				.map(ITypeBinding::getName)
+				.collect(Collectors.joining(", ", binding.getName() + "(", ") : " + binding.getReturnType().getName()));
+	}
+
+	/**
+	 * Version of the documents for the file (based on its extension)
+	 */
+	static long getDocumentVersion(final Path path) {
+		return DYCESettings.getDocumentVersion(getExtension(String.valueOf(path.getFileName())));
 	}
 
 	@NonNullByDefault
-	private static String getExtension(final String filename) {
+	static String getExtension(final String filename) {
 		int lastPeriod = filename.lastIndexOf('.');
 
 		@NonNull
@@ -749,9 +2057,24 @@ public class DYCEIndexer {
 		return extension;
 	}
 
+	/**
+	 * Commit, adding the time taken to the statistics
+	 */
+	private static void commit(final IndexWriter writer, final DYCEIndexStatistics statistics) throws IOException {
+		long commitStart = System.nanoTime();
+		commit(writer);
+		statistics.add(Stage.COMMIT, 1, System.nanoTime() - commitStart);
+	}
+
 	private static void commit(final IndexWriter writer) throws IOException {
 		writer.commit();
 
+		LAST_COMMIT_TIME = System.nanoTime();
+		UNCOMMITTED_FILE_COUNT = 0;
+
+		// The index exists once it's committed
+		openNearRealTimeSearcher(writer);
+
 		// Reset the searcher, so will create a new one
 		// (since want to refresh with new documents)
 		if (SEARCHER_MANAGER != null) {
@@ -759,6 +2082,27 @@ public class DYCEIndexer {
 		}
 	}
 
+	/**
+	 * Make the written documents searchable
+	 *
+	 * <p>
+	 * Refreshes the near real-time searcher, which doesn't need a commit (each
+	 * commit syncs the index files to disk, which is slow). Only commits if the
+	 * index doesn't exist yet or if it's time to commit (based on
+	 * DYCESettings.COMMIT_INTERVAL_SECONDS and COMMIT_FILE_COUNT).
+	 * </p>
+	 */
+	private static void refresh(final IndexWriter writer, final DYCEIndexStatistics statistics) throws IOException {
+		long secondsSinceCommit = TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - LAST_COMMIT_TIME);
+
+		if (!IS_NEAR_REAL_TIME || secondsSinceCommit >= DYCESettings.COMMIT_INTERVAL_SECONDS
+				|| UNCOMMITTED_FILE_COUNT >= DYCESettings.COMMIT_FILE_COUNT) {
+			commit(writer, statistics);
+		} else {
+			SEARCHER_MANAGER.maybeRefresh();
+		}
+	}
+
 	public static IndexSearcher getSearcher() throws IOException {
 		if (SEARCHER_MANAGER == null) {
 			SEARCHER_MANAGER = DYCESettings.getSearcherManager(DYCEIndexer.INDEX_PATH);
@@ -771,10 +2115,18 @@ public class DYCEIndexer {
 		}
 	}
 
-	private static String createIndexDoneMessage(final int indexedFiles, final Duration duration) {
+	private static void releaseSearcher(@Nullable final IndexSearcher searcher) throws IOException {
+		if (searcher != null && SEARCHER_MANAGER != null) {
+			SEARCHER_MANAGER.release(searcher);
+		}
+	}
+
+	private static String createIndexDoneMessage(final int indexedFiles, final Duration duration,
+			final DYCEIndexStatistics statistics) {
 		String indexMessage = indexedFiles == 1 ? "1 file" : indexedFiles + " files";
 
-		return String.format("Indexed %s. It took %s.", indexMessage, formatDuration(duration));
+		return String.format("Indexed %s. It took %s. %s.", indexMessage, formatDuration(duration),
+				statistics.getMessage());
 	}
 
 	private static String formatDuration(final Duration duration) {
@@ -826,4 +2178,81 @@ public class DYCEIndexer {
 
 		return durationStringBuilder.toString();
 	}
+
+	/**
+	 * Documents created by a parser, waiting to be written to the index
+	 */
+	private static class ParsedPath {
+		private final PathWithAttributes path;
+		private final Iterable<Document> documents;
+		private final boolean isFailed;
+
+		public ParsedPath(final PathWithAttributes path, final Iterable<Document> documents) {
+			this(path, documents, false);
+		}
+
+		private ParsedPath(final PathWithAttributes path, final Iterable<Document> documents,
+				final boolean isFailed) {
+			this.path = path;
+			this.documents = documents;
+			this.isFailed = isFailed;
+		}
+
+		/**
+		 * Path which could not be parsed (so has no documents to write)
+		 */
+		public static ParsedPath failed(final PathWithAttributes path) {
+			return new ParsedPath(path, Collections.emptyList(), true);
+		}
+
+		public PathWithAttributes getPath() {
+			return this.path;
+		}
+
+		/**
+		 * Documents to write (may be created as they are written)
+		 */
+		public Iterable<Document> getDocuments() {
+			return this.documents;
+		}
+
+		public boolean isFailed() {
+			return this.isFailed;
+		}
+	}
+
+	/**
+	 * Documents created as they are written, followed by the file's
+	 * metadocument
+	 *
+	 * <p>
+	 * Closing closes the file's documents (if they're Closeable)
+	 * </p>
+	 */
+	private static class LazyDocuments implements Iterable<Document>, Closeable {
+		private final Iterable<Document> documents;
+		private final Document metaDocument;
+		private final long lastModified;
+
+		public LazyDocuments(final Iterable<Document> documents, final Document metaDocument,
+				final long lastModified) {
+			this.documents = documents;
+			this.metaDocument = metaDocument;
+			this.lastModified = lastModified;
+		}
+
+		@Override
+		public Iterator<Document> iterator() {
+			return Stream.concat(StreamSupport.stream(this.documents.spliterator(), false)
+					.peek(d -> addLastModified(d, this.lastModified)), Stream.of(this.metaDocument))
+					.iterator();
+		}
+
+		@Override
+		public void close() throws IOException {
+			if (this.documents instanceof Closeable) {
+				((Closeable) this.documents).close();
+			}
+		}
+	}
 }
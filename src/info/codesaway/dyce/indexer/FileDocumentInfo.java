@@ -0,0 +1,24 @@
+package info.codesaway.dyce.indexer;
+
+import java.util.OptionalLong;
+
+import info.codesaway.util.indexer.DocumentInfo;
+
+/**
+ * Information stored in the metadocument for an indexed file
+ */
+public class FileDocumentInfo extends DocumentInfo {
+	/**
+	 * Hash of the file's contents (empty if indexed before hashes were stored)
+	 */
+	private final OptionalLong contentHash;
+
+	public FileDocumentInfo(final long lastModified, final long documentVersion, final OptionalLong contentHash) {
+		super(lastModified, documentVersion);
+		this.contentHash = contentHash;
+	}
+
+	public OptionalLong getContentHash() {
+		return this.contentHash;
+	}
+}
@@ -0,0 +1,32 @@
+package info.codesaway.dyce.indexer;
+
+import java.util.ArrayList;
+
+import org.apache.lucene.document.Document;
+
+/**
+ * Documents created from the file's contents, along with the hash of the
+ * contents
+ *
+ * <p>
+ * Indexers which read the entire file hash the bytes they read, so the file
+ * isn't read again just to hash it (the hash is stored in the metadocument;
+ * see DYCEIndexer.CONTENT_HASH_FIELD)
+ * </p>
+ */
+class HashedDocuments extends ArrayList<Document> {
+	private static final long serialVersionUID = 1L;
+
+	private final long contentHash;
+
+	HashedDocuments(final long contentHash) {
+		this.contentHash = contentHash;
+	}
+
+	/**
+	 * Hash of the file's bytes (see XXHash64)
+	 */
+	long getContentHash() {
+		return this.contentHash;
+	}
+}
@@ -0,0 +1,197 @@
+package info.codesaway.dyce.indexer;
+
+import static info.codesaway.util.indexer.IndexerUtilities.FULL_PATH_FIELD;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.OptionalLong;
+
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.MultiBits;
+import org.apache.lucene.index.MultiTerms;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.index.PostingsEnum;
+import org.apache.lucene.index.ReaderUtil;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.BytesRef;
+import org.eclipse.jdt.annotation.Nullable;
+
+/**
+ * Iterates the indexed files in pathname order (the order of the pathname
+ * terms)
+ *
+ * <p>
+ * Reads one file at a time from the terms dictionary, so uses the same memory
+ * regardless of how many files are indexed
+ * </p>
+ */
+class IndexedFileIterator {
+	private final List<LeafReaderContext> leaves;
+
+	@Nullable
+	private final Bits liveDocs;
+
+	// Every document for the file has the full path
+	private final TermsEnum pathnames;
+
+	// Only the metadocument has the metadocument path
+	// (files indexed before it was added won't have it)
+	private final TermsEnum metadocumentPathnames;
+
+	@Nullable
+	private PostingsEnum postings;
+
+	@Nullable
+	private PostingsEnum metadocumentPostings;
+
+	// Doc values for each segment (created as needed)
+	private final NumericDocValues[] lastModifiedDocValues;
+	private final NumericDocValues[] documentVersionDocValues;
+	private final NumericDocValues[] contentHashDocValues;
+
+	@Nullable
+	private BytesRef pathname;
+
+	@Nullable
+	private FileDocumentInfo documentInfo;
+
+	IndexedFileIterator(final IndexReader reader) throws IOException {
+		this.leaves = reader.leaves();
+		this.liveDocs = MultiBits.getLiveDocs(reader);
+
+		this.pathnames = iterator(MultiTerms.getTerms(reader, FULL_PATH_FIELD));
+		this.metadocumentPathnames = iterator(MultiTerms.getTerms(reader, DYCEIndexer.METADOCUMENT_PATH_FIELD));
+
+		this.lastModifiedDocValues = new NumericDocValues[this.leaves.size()];
+		this.documentVersionDocValues = new NumericDocValues[this.leaves.size()];
+		this.contentHashDocValues = new NumericDocValues[this.leaves.size()];
+	}
+
+	private static TermsEnum iterator(@Nullable final Terms terms) throws IOException {
+		return terms != null ? terms.iterator() : TermsEnum.EMPTY;
+	}
+
+	/**
+	 * Move to the next indexed file
+	 *
+	 * @return <code>true</code> if there is another file
+	 */
+	boolean next() throws IOException {
+		BytesRef term;
+
+		while ((term = this.pathnames.next()) != null) {
+			if (this.metadocumentPathnames.seekExact(term)) {
+				this.metadocumentPostings = this.metadocumentPathnames.postings(this.metadocumentPostings,
+						PostingsEnum.NONE);
+				int metadocument = this.nextLiveDoc(this.metadocumentPostings);
+
+				if (metadocument != DocIdSetIterator.NO_MORE_DOCS) {
+					this.pathname = term;
+					this.documentInfo = this.readDocumentInfo(metadocument);
+					return true;
+				}
+			}
+
+			// No metadocument path (such as if indexed before it was added)
+			// Still indexed if any of its documents weren't deleted
+			this.postings = this.pathnames.postings(this.postings, PostingsEnum.NONE);
+
+			if (this.nextLiveDoc(this.postings) != DocIdSetIterator.NO_MORE_DOCS) {
+				this.pathname = term;
+				this.documentInfo = null;
+				return true;
+			}
+		}
+
+		this.pathname = null;
+		this.documentInfo = null;
+		return false;
+	}
+
+	/**
+	 * Pathname of the current file (only valid until call {@link #next()})
+	 */
+	@Nullable
+	BytesRef getPathname() {
+		return this.pathname;
+	}
+
+	/**
+	 * Information from the current file's metadocument
+	 *
+	 * @return the document info or <code>null</code> if the file should be
+	 *         reindexed (such as it doesn't have the expected metadocument)
+	 */
+	@Nullable
+	FileDocumentInfo getDocumentInfo() {
+		return this.documentInfo;
+	}
+
+	private int nextLiveDoc(final PostingsEnum postings) throws IOException {
+		int docID;
+
+		while ((docID = postings.nextDoc()) != DocIdSetIterator.NO_MORE_DOCS) {
+			if (this.liveDocs == null || this.liveDocs.get(docID)) {
+				break;
+			}
+		}
+
+		return docID;
+	}
+
+	@Nullable
+	private FileDocumentInfo readDocumentInfo(final int docID) throws IOException {
+		int leafIndex = ReaderUtil.subIndex(docID, this.leaves);
+		LeafReaderContext context = this.leaves.get(leafIndex);
+		LeafReader leafReader = context.reader();
+		int leafDocID = docID - context.docBase;
+
+		NumericDocValues lastModified = this.lastModifiedDocValues[leafIndex] = advance(
+				this.lastModifiedDocValues[leafIndex], leafReader, "fileLastModified", leafDocID);
+
+		if (lastModified.docID() != leafDocID) {
+			return null;
+		}
+
+		NumericDocValues documentVersion = this.documentVersionDocValues[leafIndex] = advance(
+				this.documentVersionDocValues[leafIndex], leafReader, "documentVersion", leafDocID);
+
+		NumericDocValues contentHash = this.contentHashDocValues[leafIndex] = advance(
+				this.contentHashDocValues[leafIndex], leafReader, DYCEIndexer.CONTENT_HASH_FIELD, leafDocID);
+
+		return new FileDocumentInfo(lastModified.longValue(),
+				documentVersion.docID() == leafDocID ? documentVersion.longValue() : 0,
+				contentHash.docID() == leafDocID ? OptionalLong.of(contentHash.longValue()) : OptionalLong.empty());
+	}
+
+	/**
+	 * Advance the doc values to the document
+	 *
+	 * <p>
+	 * Pathnames aren't in document order, so if the doc values are already
+	 * past the document, starts over with new doc values
+	 * </p>
+	 *
+	 * @return the doc values (positioned at the document if it has a value)
+	 */
+	private static NumericDocValues advance(@Nullable final NumericDocValues docValues,
+			final LeafReader leafReader, final String field, final int docID) throws IOException {
+		NumericDocValues result = docValues;
+
+		if (result == null || result.docID() > docID) {
+			result = DocValues.getNumeric(leafReader, field);
+		}
+
+		if (result.docID() < docID) {
+			result.advance(docID);
+		}
+
+		return result;
+	}
+}
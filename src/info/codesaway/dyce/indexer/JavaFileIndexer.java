@@ -0,0 +1,68 @@
+package info.codesaway.dyce.indexer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+
+import org.apache.lucene.document.Document;
+
+import info.codesaway.dyce.DYCESettings;
+import info.codesaway.dyce.indexer.DYCEIndexStatistics.Stage;
+
+/**
+ * Indexes each line and the elements in a Java file (parsed using JDT)
+ *
+ * <p>
+ * When resolving bindings while indexing, files in a Java project are parsed
+ * along with the other files from the same project, when indexing many files at
+ * once (see DYCESettings.SHOULD_BATCH_PARSE)
+ * </p>
+ */
+class JavaFileIndexer implements DYCEFileIndexer {
+	// Parsing and resolving bindings is much slower than reading lines
+	private static final int COST = 20;
+
+	private static final long DOCUMENT_VERSION = 7;
+
+	/**
+	 * Indicates if should resolve bindings while indexing
+	 *
+	 * <p>
+	 * Otherwise, files are indexed without them (so are searchable sooner) and
+	 * their bindings are resolved afterwards in the background (see
+	 * DYCEResolveBindingsJob)
+	 * </p>
+	 */
+	static boolean shouldResolveBindings() {
+		return !DYCESettings.SHOULD_RESOLVE_BINDINGS_IN_BACKGROUND;
+	}
+
+	@Override
+	public long getDocumentVersion() {
+		return DOCUMENT_VERSION;
+	}
+
+	@Override
+	public int getCost() {
+		return COST;
+	}
+
+	@Override
+	public Iterable<Document> createDocuments(final PathWithAttributes path) throws IOException {
+		return this.createDocuments(path, new DYCEIndexStatistics());
+	}
+
+	@Override
+	public Iterable<Document> createDocuments(final PathWithAttributes path, final DYCEIndexStatistics statistics)
+			throws IOException {
+		long readStart = System.nanoTime();
+		byte[] content = Files.readAllBytes(path.getPath());
+		char[] source = DYCEIndexer.readJavaSource(path.getPath(), content);
+		statistics.add(Stage.READ, 1, System.nanoTime() - readStart);
+
+		HashedDocuments documents = new HashedDocuments(DYCEIndexer.hashContent(ByteBuffer.wrap(content)));
+		DYCEIndexer.addJavaDocuments(documents, path.getPath(),
+				DYCEIndexer.parseJavaFile(path.getPath(), source, shouldResolveBindings()), source);
+		return documents;
+	}
+}
@@ -0,0 +1,377 @@
+package info.codesaway.dyce.indexer;
+
+import static info.codesaway.util.indexer.IndexerUtilities.FULL_PATH_FIELD;
+import static info.codesaway.util.indexer.IndexerUtilities.PATH_FIELD;
+
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.IntPoint;
+import org.apache.lucene.document.StoredField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.eclipse.jdt.annotation.Nullable;
+import org.eclipse.jdt.core.dom.ASTNode;
+import org.eclipse.jdt.core.dom.ASTVisitor;
+import org.eclipse.jdt.core.dom.AnnotationTypeDeclaration;
+import org.eclipse.jdt.core.dom.CompilationUnit;
+import org.eclipse.jdt.core.dom.EnumDeclaration;
+import org.eclipse.jdt.core.dom.MethodDeclaration;
+import org.eclipse.jdt.core.dom.TypeDeclaration;
+
+/**
+ * Indexes each line of a Java file, classifying the line by what it contains
+ * (such as an import, a comment, or a closing brace)
+ *
+ * <p>
+ * Makes a single pass over the source the file was parsed from, keeping track
+ * of comments and strings, so doesn't read or tokenize the file again. Each
+ * line's enclosing element (method or type) comes from the parsed compilation
+ * unit. Blank lines aren't indexed.
+ * </p>
+ */
+final class JavaLineIndexer {
+	// Line types (searches give less priority to some, such as imports and closing braces)
+	static final String CODE = "code";
+	static final String PACKAGE = "package";
+	static final String IMPORT = "import";
+	static final String ANNOTATION = "annotation";
+	static final String COMMENT = "comment";
+	static final String JAVADOC = "javadoc";
+	static final String CLOSE_BRACE = "close brace";
+	static final String ELSE_LINE = "else line";
+	static final String RETURN = "return";
+	static final String RETURN_NULL = "return null";
+	static final String RETURN_VOID = "return void";
+	static final String SYMBOLS = "symbols";
+
+	private static final Pattern ELSE_LINE_PATTERN = Pattern.compile("\\}?\\s*+else\\s*+\\{?");
+	private static final Pattern RETURN_NULL_PATTERN = Pattern.compile("return\\s++null\\s*+;");
+	private static final Pattern RETURN_VOID_PATTERN = Pattern.compile("return\\s*+;");
+
+	private enum State {
+		CODE, LINE_COMMENT, BLOCK_COMMENT, JAVADOC, STRING, CHAR
+	}
+
+	private JavaLineIndexer() {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Add a document for each line of the Java file
+	 *
+	 * @param documents
+	 * @param path
+	 * @param source the source the file was parsed from
+	 * @param compilationUnit the parsed file (used to find each line's
+	 *            element)
+	 */
+	static void addLineDocuments(final List<Document> documents, final Path path, final char[] source,
+			@Nullable final CompilationUnit compilationUnit) {
+		String pathname = path.toString();
+		String filename = String.valueOf(path.getFileName());
+
+		ElementFinder elements = new ElementFinder(compilationUnit);
+
+		StringBuilder code = new StringBuilder();
+		StringBuilder comment = new StringBuilder();
+		boolean isJavadoc = false;
+
+		State state = State.CODE;
+		int lineNumber = 1;
+
+		for (int i = 0; i <= source.length; i++) {
+			char c = i < source.length ? source[i] : '\n';
+
+			if (c == '\n' || c == '\r') {
+				String type = classify(code, comment, isJavadoc);
+
+				if (type != null) {
+					documents.add(createLineDocument(pathname, filename, lineNumber, elements.getElement(lineNumber),
+							type, code, comment));
+				}
+
+				code.setLength(0);
+				comment.setLength(0);
+				isJavadoc = state == State.JAVADOC;
+
+				if (c == '\r' && i + 1 < source.length && source[i + 1] == '\n') {
+					i++;
+				}
+
+				lineNumber++;
+
+				// Only comments can span lines (strings end at the end of the line)
+				if (state != State.BLOCK_COMMENT && state != State.JAVADOC) {
+					state = State.CODE;
+				}
+
+				continue;
+			}
+
+			char next = i + 1 < source.length ? source[i + 1] : '\0';
+
+			switch (state) {
+			case CODE:
+				if (c == '/' && next == '/') {
+					state = State.LINE_COMMENT;
+					comment.append(c).append(next);
+					i++;
+				} else if (c == '/' && next == '*') {
+					// "/**/" is an empty block comment, not Javadoc
+					boolean isJavadocStart = i + 2 < source.length && source[i + 2] == '*'
+							&& (i + 3 >= source.length || source[i + 3] != '/');
+
+					state = isJavadocStart ? State.JAVADOC : State.BLOCK_COMMENT;
+					isJavadoc |= isJavadocStart;
+					comment.append(c).append(next);
+					i++;
+				} else {
+					if (c == '"') {
+						state = State.STRING;
+					} else if (c == '\'') {
+						state = State.CHAR;
+					}
+
+					code.append(c);
+				}
+				break;
+			case STRING:
+			case CHAR:
+				code.append(c);
+
+				if (c == '\\' && next != '\n' && next != '\r' && next != '\0') {
+					// Escaped character (such as \")
+					code.append(next);
+					i++;
+				} else if (c == (state == State.STRING ? '"' : '\'')) {
+					state = State.CODE;
+				}
+				break;
+			case LINE_COMMENT:
+				comment.append(c);
+				break;
+			case BLOCK_COMMENT:
+			case JAVADOC:
+				comment.append(c);
+
+				if (c == '*' && next == '/') {
+					comment.append(next);
+					i++;
+					state = State.CODE;
+				}
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Classify the line
+	 *
+	 * @return the line's type or <code>null</code> if the line is blank
+	 */
+	@Nullable
+	static String classify(final CharSequence code, final CharSequence comment, final boolean isJavadoc) {
+		String trimmedCode = code.toString().trim();
+
+		if (trimmedCode.isEmpty()) {
+			if (comment.toString().trim().isEmpty()) {
+				return null;
+			}
+
+			return isJavadoc ? JAVADOC : COMMENT;
+		}
+
+		if (trimmedCode.startsWith("package ")) {
+			return PACKAGE;
+		}
+
+		if (trimmedCode.startsWith("import ")) {
+			return IMPORT;
+		}
+
+		if (trimmedCode.startsWith("@") && !trimmedCode.startsWith("@interface")) {
+			return ANNOTATION;
+		}
+
+		if (ELSE_LINE_PATTERN.matcher(trimmedCode).matches()) {
+			return ELSE_LINE;
+		}
+
+		if (RETURN_NULL_PATTERN.matcher(trimmedCode).matches()) {
+			return RETURN_NULL;
+		}
+
+		if (RETURN_VOID_PATTERN.matcher(trimmedCode).matches()) {
+			return RETURN_VOID;
+		}
+
+		if (trimmedCode.startsWith("return ") || trimmedCode.startsWith("return(")) {
+			return RETURN;
+		}
+
+		if (isSymbols(trimmedCode)) {
+			return trimmedCode.charAt(0) == '}' ? CLOSE_BRACE : SYMBOLS;
+		}
+
+		return CODE;
+	}
+
+	/**
+	 * Indicates if the code is only symbols (such as "});")
+	 */
+	private static boolean isSymbols(final String code) {
+		for (int i = 0; i < code.length(); i++) {
+			if (Character.isJavaIdentifierPart(code.charAt(i)) || code.charAt(i) == '"'
+					|| code.charAt(i) == '\'') {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	private static Document createLineDocument(final String pathname, final String filename, final int lineNumber,
+			final String element, final String type, final CharSequence code, final CharSequence comment) {
+		Document document = new Document();
+
+		document.add(new StringField(FULL_PATH_FIELD, pathname, Field.Store.YES));
+
+		// Index path with normal parser, so can search path
+		// (don't store, since value is already stored as part of
+		// fullpath)
+		document.add(new TextField(PATH_FIELD, pathname, Field.Store.NO));
+		document.add(new TextField("file", filename, Field.Store.YES));
+		document.add(new StringField("ext", "java", Field.Store.YES));
+
+		if (!element.isEmpty()) {
+			document.add(new TextField("element", element, Field.Store.YES));
+		}
+
+		document.add(new IntPoint("line", lineNumber));
+		document.add(new StoredField("line", lineNumber));
+
+		document.add(new TextField("type", type, Field.Store.YES));
+
+		String content = code.toString().trim();
+
+		if (!content.isEmpty()) {
+			document.add(new TextField("content", content, Field.Store.YES));
+		}
+
+		String commentText = comment.toString().trim();
+
+		if (!commentText.isEmpty()) {
+			document.add(new TextField("comment", commentText, Field.Store.YES));
+		}
+
+		DYCEDisplayFields.addDocValues(document);
+
+		return document;
+	}
+
+	/**
+	 * Finds the innermost element (method or type) containing each line
+	 *
+	 * <p>
+	 * Lines must be given in order, so only needs a single pass over the
+	 * elements
+	 * </p>
+	 */
+	private static final class ElementFinder {
+		// Elements in the order they start (outer elements before inner ones)
+		private final List<ElementRange> ranges = new ArrayList<>();
+		private int nextRange = 0;
+
+		// Elements containing the current line (innermost on top)
+		private final Deque<ElementRange> enclosing = new ArrayDeque<>();
+
+		ElementFinder(@Nullable final CompilationUnit compilationUnit) {
+			if (compilationUnit == null) {
+				return;
+			}
+
+			compilationUnit.accept(new ASTVisitor() {
+				@Override
+				public boolean visit(final TypeDeclaration node) {
+					this.add(node, node.getName().getIdentifier());
+					return true;
+				}
+
+				@Override
+				public boolean visit(final EnumDeclaration node) {
+					this.add(node, node.getName().getIdentifier());
+					return true;
+				}
+
+				@Override
+				public boolean visit(final AnnotationTypeDeclaration node) {
+					this.add(node, node.getName().getIdentifier());
+					return true;
+				}
+
+				@Override
+				public boolean visit(final MethodDeclaration node) {
+					this.add(node, node.getName().getIdentifier());
+					return true;
+				}
+
+				private void add(final ASTNode node, final String name) {
+					// Includes the element's Javadoc and annotations
+					int startLine = compilationUnit.getLineNumber(node.getStartPosition());
+					int endLine = compilationUnit
+							.getLineNumber(node.getStartPosition() + Math.max(0, node.getLength() - 1));
+
+					if (startLine > 0 && endLine > 0) {
+						ElementFinder.this.ranges.add(new ElementRange(startLine, endLine, name));
+					}
+				}
+			});
+		}
+
+		/**
+		 *
+		 * @param lineNumber the line number (must not be before the line
+		 *            number last given)
+		 * @return the element's name (empty if not in an element)
+		 */
+		String getElement(final int lineNumber) {
+			while (this.nextRange < this.ranges.size() && this.ranges.get(this.nextRange).startLine <= lineNumber) {
+				ElementRange range = this.ranges.get(this.nextRange++);
+
+				// Discard elements which end before the new one starts
+				this.removeEnded(range.startLine);
+				this.enclosing.push(range);
+			}
+
+			this.removeEnded(lineNumber);
+
+			ElementRange innermost = this.enclosing.peek();
+			return innermost != null ? innermost.name : "";
+		}
+
+		private void removeEnded(final int lineNumber) {
+			while (!this.enclosing.isEmpty() && this.enclosing.peek().endLine < lineNumber) {
+				this.enclosing.pop();
+			}
+		}
+	}
+
+	private static final class ElementRange {
+		private final int startLine;
+		private final int endLine;
+		private final String name;
+
+		ElementRange(final int startLine, final int endLine, final String name) {
+			this.startLine = startLine;
+			this.endLine = endLine;
+			this.name = name;
+		}
+	}
+}
@@ -0,0 +1,395 @@
+package info.codesaway.dyce.indexer;
+
+import static info.codesaway.util.indexer.IndexerUtilities.FULL_PATH_FIELD;
+import static info.codesaway.util.indexer.IndexerUtilities.PATH_FIELD;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.IntPoint;
+import org.apache.lucene.document.StoredField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.eclipse.jdt.annotation.Nullable;
+
+import info.codesaway.dyce.DYCESettings;
+import info.codesaway.dyce.indexer.DYCEIndexStatistics.Stage;
+
+/**
+ * Indexes each line of the file as its own document (such as XML, properties,
+ * and SQL files)
+ *
+ * <p>
+ * Most files are read on the parser's thread (at once, so their bytes are also
+ * hashed; see HashedDocuments), so the writer only writes.
+ * Files larger than {@link DYCESettings#MAX_PARSED_LINE_FILE_SIZE} (such as
+ * SQL dumps) are read one buffer at a time, as the documents are written, so
+ * are indexed in bounded memory. Blank lines aren't indexed.
+ * </p>
+ */
+class LineFileIndexer implements DYCEFileIndexer {
+	private static final long DOCUMENT_VERSION = 3;
+
+	// Bytes (and chars) read at a time
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	// Only index the start of very long lines (such as minified files)
+	private static final int MAX_LINE_LENGTH = 4096;
+
+	private static final char BYTE_ORDER_MARK = '\uFEFF';
+
+	@Override
+	public long getDocumentVersion() {
+		return DOCUMENT_VERSION;
+	}
+
+	@Override
+	public int getCost() {
+		return LINE_COST;
+	}
+
+	@Override
+	public Iterable<Document> createDocuments(final PathWithAttributes path) throws IOException {
+		return this.createDocuments(path, new DYCEIndexStatistics());
+	}
+
+	@Override
+	public Iterable<Document> createDocuments(final PathWithAttributes path, final DYCEIndexStatistics statistics)
+			throws IOException {
+		if (path.getSize() > DYCESettings.MAX_PARSED_LINE_FILE_SIZE) {
+			return new LineDocuments(path.getPath(), statistics);
+		}
+
+		ByteBuffer content = ByteBuffer.wrap(Files.readAllBytes(path.getPath()));
+		HashedDocuments documents = new HashedDocuments(DYCEIndexer.hashContent(content));
+
+		try (LineDocumentIterator iterator = new LineDocumentIterator(path.getPath(), content)) {
+			iterator.forEachRemaining(documents::add);
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+
+		return documents;
+	}
+
+	/**
+	 * Documents for a large file, which are read as they are written
+	 *
+	 * <p>
+	 * Closed once written (closes the file, even if writing failed before
+	 * reading it all)
+	 * </p>
+	 */
+	private static final class LineDocuments implements Iterable<Document>, Closeable {
+		private final Path path;
+		private final DYCEIndexStatistics statistics;
+
+		@Nullable
+		private LineDocumentIterator iterator;
+
+		LineDocuments(final Path path, final DYCEIndexStatistics statistics) {
+			this.path = path;
+			this.statistics = statistics;
+		}
+
+		@Override
+		public Iterator<Document> iterator() {
+			this.close();
+
+			LineDocumentIterator iterator = new LineDocumentIterator(this.path, this.statistics);
+			this.iterator = iterator;
+			return iterator;
+		}
+
+		@Override
+		public void close() {
+			LineDocumentIterator iterator = this.iterator;
+
+			if (iterator != null) {
+				iterator.close();
+				this.iterator = null;
+			}
+		}
+	}
+
+	/**
+	 * Reads the next line each time the next document is needed
+	 */
+	private static final class LineDocumentIterator implements Iterator<Document>, Closeable {
+		private final Path path;
+		private final String pathname;
+		private final String filename;
+		private final String extension;
+
+		// Time spent reading is added as parse time, once done (null if the parser already read the file)
+		@Nullable
+		private final DYCEIndexStatistics statistics;
+		private long readNanos;
+
+		// Opened when the first document is needed (unless the file was already read)
+		@Nullable
+		private SeekableByteChannel channel;
+
+		private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+		// The file's bytes, if already read (otherwise, the next part of the file)
+		private final ByteBuffer bytes;
+		private final CharBuffer chars = CharBuffer.allocate(BUFFER_SIZE);
+
+		private final StringBuilder line = new StringBuilder();
+		private int lineNumber = 0;
+
+		private boolean isEndOfInput = false;
+		private boolean isDecoded = false;
+		private boolean isDone = false;
+		private boolean isFirstChar = true;
+		private boolean wasCarriageReturn = false;
+
+		@Nullable
+		private Document next;
+
+		/**
+		 * Read the file one buffer at a time
+		 */
+		LineDocumentIterator(final Path path, final DYCEIndexStatistics statistics) {
+			this(path, statistics, ByteBuffer.allocate(BUFFER_SIZE));
+
+			// Nothing read yet
+			this.bytes.flip();
+		}
+
+		/**
+		 * Decode the file's bytes, which were already read
+		 */
+		LineDocumentIterator(final Path path, final ByteBuffer content) {
+			this(path, null, content.duplicate());
+
+			this.isEndOfInput = true;
+		}
+
+		private LineDocumentIterator(final Path path, @Nullable final DYCEIndexStatistics statistics,
+				final ByteBuffer bytes) {
+			this.path = path;
+			this.statistics = statistics;
+			this.bytes = bytes;
+			this.pathname = path.toString();
+			this.filename = String.valueOf(path.getFileName());
+			this.extension = DYCEIndexer.getExtension(this.filename);
+
+			// Nothing decoded yet
+			this.chars.flip();
+		}
+
+		@Override
+		public boolean hasNext() {
+			if (this.next == null && !this.isDone) {
+				try {
+					this.next = this.advance();
+				} catch (IOException e) {
+					this.close();
+					throw new UncheckedIOException(e);
+				}
+			}
+
+			return this.next != null;
+		}
+
+		@Override
+		public Document next() {
+			if (!this.hasNext()) {
+				throw new NoSuchElementException();
+			}
+
+			Document document = this.next;
+			this.next = null;
+			return document;
+		}
+
+		/**
+		 * Read lines until find one to index
+		 *
+		 * @return the next line's document or <code>null</code> if there are no
+		 *         more lines to index
+		 */
+		@Nullable
+		private Document advance() throws IOException {
+			while (true) {
+				while (this.chars.hasRemaining()) {
+					char c = this.chars.get();
+
+					if (this.isFirstChar) {
+						this.isFirstChar = false;
+
+						if (c == BYTE_ORDER_MARK) {
+							continue;
+						}
+					}
+
+					if (c == '\n' && this.wasCarriageReturn) {
+						// Windows line ending (already ended the line)
+						this.wasCarriageReturn = false;
+						continue;
+					}
+
+					this.wasCarriageReturn = c == '\r';
+
+					if (c == '\n' || c == '\r') {
+						Document document = this.endLine();
+
+						if (document != null) {
+							return document;
+						}
+					} else if (this.line.length() < MAX_LINE_LENGTH) {
+						this.line.append(c);
+					}
+				}
+
+				if (!this.readChars()) {
+					// Last line (if the file doesn't end with a line ending)
+					Document document = this.line.length() > 0 ? this.endLine() : null;
+
+					this.isDone = true;
+					this.close();
+					return document;
+				}
+			}
+		}
+
+		/**
+		 * Fill the chars with the next part of the file
+		 *
+		 * @return <code>false</code> if read the entire file
+		 */
+		private boolean readChars() throws IOException {
+			if (this.isDecoded) {
+				return false;
+			}
+
+			long readStart = System.nanoTime();
+
+			try {
+				return this.readNextChars();
+			} finally {
+				this.readNanos += System.nanoTime() - readStart;
+			}
+		}
+
+		private boolean readNextChars() throws IOException {
+			this.chars.clear();
+
+			while (this.chars.hasRemaining()) {
+				CoderResult result = this.decoder.decode(this.bytes, this.chars, this.isEndOfInput);
+
+				if (result.isOverflow()) {
+					break;
+				}
+
+				if (this.isEndOfInput) {
+					this.decoder.flush(this.chars);
+					this.isDecoded = true;
+					break;
+				}
+
+				// Need more bytes
+				SeekableByteChannel channel = this.channel;
+
+				if (channel == null) {
+					channel = this.channel = Files.newByteChannel(this.path);
+				}
+
+				this.bytes.compact();
+				int read = channel.read(this.bytes);
+				this.bytes.flip();
+
+				if (read == -1) {
+					this.isEndOfInput = true;
+				}
+			}
+
+			this.chars.flip();
+
+			return this.chars.hasRemaining() || !this.isDecoded;
+		}
+
+		/**
+		 * End the current line
+		 *
+		 * @return the document for the line or <code>null</code> if the line is
+		 *         blank
+		 */
+		@Nullable
+		private Document endLine() {
+			this.lineNumber++;
+
+			String content = this.line.toString();
+			this.line.setLength(0);
+
+			if (content.trim().isEmpty()) {
+				return null;
+			}
+
+			Document document = new Document();
+
+			document.add(new StringField(FULL_PATH_FIELD, this.pathname, Field.Store.YES));
+
+			// Index path with normal parser, so can search path
+			// (don't store, since value is already stored as part of
+			// fullpath)
+			document.add(new TextField(PATH_FIELD, this.pathname, Field.Store.NO));
+			document.add(new TextField("file", this.filename, Field.Store.YES));
+			document.add(new StringField("ext", this.extension, Field.Store.YES));
+
+			document.add(new IntPoint("line", this.lineNumber));
+			document.add(new StoredField("line", this.lineNumber));
+
+			document.add(new TextField("content", content, Field.Store.YES));
+
+			DYCEDisplayFields.addDocValues(document);
+
+			return document;
+		}
+
+		@Override
+		public void close() {
+			// Don't read again after closed
+			this.isDone = true;
+
+			SeekableByteChannel channel = this.channel;
+
+			if (channel == null) {
+				return;
+			}
+
+			this.channel = null;
+
+			try {
+				channel.close();
+			} catch (IOException e) {
+				// Done reading anyway
+			}
+
+			DYCEIndexStatistics statistics = this.statistics;
+
+			if (statistics != null) {
+				// File was already counted when its documents were created
+				statistics.add(Stage.PARSE, 0, this.readNanos);
+			}
+		}
+	}
+}
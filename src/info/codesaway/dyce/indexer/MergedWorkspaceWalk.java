@@ -0,0 +1,241 @@
+package info.codesaway.dyce.indexer;
+
+import java.io.Closeable;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.jdt.annotation.Nullable;
+
+/**
+ * Walks the projects' files in pathname order, walking the projects in
+ * parallel
+ *
+ * <p>
+ * Each project is walked in pathname order (see SortedWorkspaceWalk) on its
+ * own walker thread (see ParallelWorkspaceWalk), and the projects' files are
+ * merged as they are read, so the walk can still be merged with the index in a
+ * single pass.
+ * </p>
+ *
+ * <p>
+ * Once every project's walk has started, each project only walks up to
+ * {@link #MAX_BUFFERED_FILES} files ahead of the merge. Before then, projects
+ * aren't held back, since the merge needs the first file from every project
+ * (and there may be fewer walker threads than projects).
+ * </p>
+ */
+class MergedWorkspaceWalk implements Iterator<PathWithAttributes>, Closeable {
+	private static final int MAX_BUFFERED_FILES = 4096;
+
+	// How long to wait for the next file (or for the merge to catch up) before checking again
+	private static final long POLL_MILLISECONDS = 10;
+
+	private final List<ProjectWalk> projectWalks = new ArrayList<>();
+	private final AtomicInteger startedCount = new AtomicInteger();
+
+	// Next file from each project, in pathname order (created when the first file is needed)
+	@Nullable
+	private PriorityQueue<ProjectFile> nextFiles;
+
+	@Nullable
+	private PathWithAttributes next;
+
+	private volatile boolean isClosed;
+
+	/**
+	 *
+	 * @param projectRoots the project name for each project's location
+	 */
+	MergedWorkspaceWalk(final Map<Path, String> projectRoots) {
+		for (Path root : SortedWorkspaceWalk.getOuterRoots(projectRoots)) {
+			this.projectWalks.add(new ProjectWalk(projectRoots, root));
+		}
+
+		for (ProjectWalk projectWalk : this.projectWalks) {
+			projectWalk.future = ParallelWorkspaceWalk.WALKERS.submit(projectWalk);
+		}
+	}
+
+	@Override
+	public boolean hasNext() {
+		if (this.next == null) {
+			this.next = this.advance();
+		}
+
+		return this.next != null;
+	}
+
+	@Override
+	public PathWithAttributes next() {
+		if (!this.hasNext()) {
+			throw new NoSuchElementException();
+		}
+
+		PathWithAttributes result = this.next;
+		this.next = null;
+		return result;
+	}
+
+	@Nullable
+	private PathWithAttributes advance() {
+		PriorityQueue<ProjectFile> nextFiles = this.nextFiles;
+
+		if (nextFiles == null) {
+			nextFiles = this.nextFiles = new PriorityQueue<>(Math.max(1, this.projectWalks.size()));
+
+			for (ProjectWalk projectWalk : this.projectWalks) {
+				PathWithAttributes file = projectWalk.take();
+
+				if (file != null) {
+					nextFiles.add(new ProjectFile(file, projectWalk));
+				}
+			}
+		}
+
+		ProjectFile projectFile = nextFiles.poll();
+
+		if (projectFile == null) {
+			return null;
+		}
+
+		PathWithAttributes file = projectFile.projectWalk.take();
+
+		if (file != null) {
+			nextFiles.add(new ProjectFile(file, projectFile.projectWalk));
+		}
+
+		return projectFile.file;
+	}
+
+	/**
+	 * Stop walking
+	 */
+	@Override
+	public void close() {
+		this.isClosed = true;
+
+		for (ProjectWalk projectWalk : this.projectWalks) {
+			Future<?> future = projectWalk.future;
+
+			if (future != null) {
+				future.cancel(false);
+			}
+		}
+	}
+
+	/**
+	 * Walks a single project, handing out its files in pathname order
+	 */
+	private final class ProjectWalk implements Runnable {
+		private final Map<Path, String> projectRoots;
+		private final Path root;
+
+		private final BlockingQueue<PathWithAttributes> files = new LinkedBlockingQueue<>();
+
+		@Nullable
+		private Future<?> future;
+
+		private volatile boolean isDone;
+
+		// Thrown by the walk (rethrown by the merge, rather than treating the project's remaining files as deleted)
+		@Nullable
+		private volatile RuntimeException failure;
+
+		ProjectWalk(final Map<Path, String> projectRoots, final Path root) {
+			this.projectRoots = projectRoots;
+			this.root = root;
+		}
+
+		@Override
+		public void run() {
+			MergedWorkspaceWalk merge = MergedWorkspaceWalk.this;
+			merge.startedCount.incrementAndGet();
+
+			try {
+				SortedWorkspaceWalk walk = new SortedWorkspaceWalk(this.projectRoots,
+						Collections.singletonList(this.root));
+
+				while (!merge.isClosed && walk.hasNext()) {
+					PathWithAttributes file = walk.next();
+
+					// Wait for the merge to catch up (once every project has started, so the merge has a file from each)
+					while (this.files.size() >= MAX_BUFFERED_FILES
+							&& merge.startedCount.get() == merge.projectWalks.size() && !merge.isClosed) {
+						Thread.sleep(POLL_MILLISECONDS);
+					}
+
+					this.files.add(file);
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} catch (RuntimeException e) {
+				this.failure = e;
+			} finally {
+				this.isDone = true;
+			}
+		}
+
+		/**
+		 * Take the project's next file, waiting until it's walked
+		 *
+		 * @return the next file or <code>null</code> if walked all the
+		 *         project's files
+		 */
+		@Nullable
+		PathWithAttributes take() {
+			while (true) {
+				// Check if done before polling, so don't miss the last files
+				boolean isDone = this.isDone;
+
+				PathWithAttributes file;
+				try {
+					file = this.files.poll(POLL_MILLISECONDS, TimeUnit.MILLISECONDS);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new OperationCanceledException();
+				}
+
+				if (file != null) {
+					return file;
+				}
+
+				if (isDone) {
+					RuntimeException failure = this.failure;
+
+					if (failure != null) {
+						throw failure;
+					}
+
+					return null;
+				}
+			}
+		}
+	}
+
+	private static final class ProjectFile implements Comparable<ProjectFile> {
+		private final PathWithAttributes file;
+		private final ProjectWalk projectWalk;
+
+		ProjectFile(final PathWithAttributes file, final ProjectWalk projectWalk) {
+			this.file = file;
+			this.projectWalk = projectWalk;
+		}
+
+		@Override
+		public int compareTo(final ProjectFile other) {
+			return SortedWorkspaceWalk.compareCodePoints(this.file.getPathname(), other.file.getPathname());
+		}
+	}
+}
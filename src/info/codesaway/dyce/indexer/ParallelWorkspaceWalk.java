@@ -0,0 +1,192 @@
+package info.codesaway.dyce.indexer;
+
+import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Spliterator;
+import java.util.Spliterators.AbstractSpliterator;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import info.codesaway.dyce.DYCESettings;
+
+/**
+ * Walks the projects' files in parallel
+ *
+ * <p>
+ * Each directory is listed in its own fork / join task, so projects and large
+ * subtrees are walked at the same time (mostly helps when reading directories
+ * is slow, such as network drives or when antivirus scans each file). Each
+ * entry's attributes are read once, when listing its directory.
+ * </p>
+ *
+ * <p>
+ * Files are handed out as they are found (in no particular order)
+ * </p>
+ */
+class ParallelWorkspaceWalk {
+	// (also walks each project for MergedWorkspaceWalk)
+	static final ForkJoinPool WALKERS = new ForkJoinPool(Math.max(1, DYCESettings.WALKER_THREAD_COUNT),
+			ParallelWorkspaceWalk::createWalkerThread, null, false);
+
+	// How long to wait for the next file before checking if the walk is done
+	private static final long POLL_MILLISECONDS = 10;
+
+	private final Map<Path, String> projectRoots;
+	private final BlockingQueue<PathWithAttributes> files = new LinkedBlockingQueue<>();
+
+	private volatile boolean isClosed;
+
+	private ParallelWorkspaceWalk(final Map<Path, String> projectRoots) {
+		this.projectRoots = projectRoots;
+	}
+
+	private static ForkJoinWorkerThread createWalkerThread(final ForkJoinPool pool) {
+		ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+		thread.setName("DYCE Walker-" + thread.getPoolIndex());
+		return thread;
+	}
+
+	/**
+	 * Walk the projects' files which should be indexed
+	 *
+	 * @param projectRoots the project name for each project's location
+	 * @return the files (closing the stream stops the walk)
+	 */
+	static Stream<PathWithAttributes> walk(final Map<Path, String> projectRoots) {
+		ParallelWorkspaceWalk walk = new ParallelWorkspaceWalk(projectRoots);
+
+		List<DirectoryTask> roots = new ArrayList<>();
+
+		for (Entry<Path, String> entry : projectRoots.entrySet()) {
+			Path root = entry.getKey();
+
+			// Projects nested in another project are walked as part of the outer project
+			// (otherwise, their files would be walked twice)
+			boolean isNested = projectRoots.keySet()
+					.stream()
+					.anyMatch(p -> !p.equals(root) && root.startsWith(p));
+
+			if (!isNested) {
+				roots.add(walk.new DirectoryTask(root, entry.getValue()));
+			}
+		}
+
+		ForkJoinTask<?> task = WALKERS.submit(() -> ForkJoinTask.invokeAll(roots));
+
+		return StreamSupport.stream(walk.new FileSpliterator(task), false)
+				.onClose(() -> {
+					walk.isClosed = true;
+					task.cancel(false);
+				});
+	}
+
+	private final class DirectoryTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final Path directory;
+		private final String project;
+
+		DirectoryTask(final Path directory, final String project) {
+			this.directory = directory;
+			this.project = project;
+		}
+
+		@Override
+		protected void compute() {
+			if (ParallelWorkspaceWalk.this.isClosed) {
+				return;
+			}
+
+			List<DirectoryTask> subdirectories = new ArrayList<>();
+
+			try (DirectoryStream<Path> stream = Files.newDirectoryStream(this.directory)) {
+				for (Path child : stream) {
+					BasicFileAttributes attributes;
+					try {
+						// Don't follow links (same as Files.walk)
+						attributes = Files.readAttributes(child, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+					} catch (IOException e) {
+						continue;
+					}
+
+					if (attributes.isDirectory()) {
+						// Switch to the nested project, if any
+						String childProject = ParallelWorkspaceWalk.this.projectRoots.getOrDefault(child,
+								this.project);
+
+						subdirectories.add(new DirectoryTask(child, childProject));
+					} else if (DYCESettings.shouldIndexFile(child)) {
+						ParallelWorkspaceWalk.this.files.add(new PathWithAttributes(this.project, child, attributes));
+					}
+				}
+			} catch (IOException | DirectoryIteratorException e) {
+				// Skip directories which cannot be read (same as if they didn't exist)
+			}
+
+			invokeAll(subdirectories);
+		}
+	}
+
+	/**
+	 * Hands out the files as the walkers find them
+	 */
+	private final class FileSpliterator extends AbstractSpliterator<PathWithAttributes> {
+		private final ForkJoinTask<?> task;
+
+		FileSpliterator(final ForkJoinTask<?> task) {
+			super(Long.MAX_VALUE, Spliterator.NONNULL | Spliterator.DISTINCT);
+			this.task = task;
+		}
+
+		@Override
+		public boolean tryAdvance(final Consumer<? super PathWithAttributes> action) {
+			BlockingQueue<PathWithAttributes> files = ParallelWorkspaceWalk.this.files;
+
+			while (true) {
+				PathWithAttributes file = files.poll();
+
+				if (file == null) {
+					if (this.task.isDone()) {
+						// Check again, in case the last files were added right before finishing
+						file = files.poll();
+
+						if (file == null) {
+							return false;
+						}
+					} else {
+						try {
+							file = files.poll(POLL_MILLISECONDS, TimeUnit.MILLISECONDS);
+						} catch (InterruptedException e) {
+							Thread.currentThread().interrupt();
+							return false;
+						}
+
+						if (file == null) {
+							continue;
+						}
+					}
+				}
+
+				action.accept(file);
+				return true;
+			}
+		}
+	}
+}
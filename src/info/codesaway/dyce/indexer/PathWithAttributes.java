@@ -0,0 +1,89 @@
+package info.codesaway.dyce.indexer;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+
+import org.apache.lucene.index.Term;
+
+import info.codesaway.util.indexer.PathWithTerm;
+
+/**
+ * Path to index, along with its attributes
+ *
+ * <p>
+ * Uses the attributes read when walking the files, so each file's attributes
+ * are only read once (unlike PathWithLastModified, which reads the last
+ * modified time again when created)
+ * </p>
+ */
+public class PathWithAttributes implements PathWithTerm {
+	private final String project;
+	private final Path path;
+	private final String pathname;
+	private final long lastModified;
+	private final long size;
+	private final Term term;
+
+	public PathWithAttributes(final String project, final Path path, final BasicFileAttributes attributes) {
+		this(project, path, attributes.lastModifiedTime().toMillis(), attributes.size());
+	}
+
+	private PathWithAttributes(final String project, final Path path, final long lastModified, final long size) {
+		this.project = project;
+		this.path = path;
+		this.pathname = path.toString();
+		this.lastModified = lastModified;
+		this.size = size;
+		this.term = PathWithTerm.getTerm(this.pathname);
+	}
+
+	/**
+	 * Read the path's attributes
+	 *
+	 * @param project
+	 * @param path
+	 * @return the path with its attributes (if cannot read the attributes, such
+	 *         as if the file was deleted, the last modified and size are 0)
+	 */
+	public static PathWithAttributes of(final String project, final Path path) {
+		try {
+			return new PathWithAttributes(project, path, Files.readAttributes(path, BasicFileAttributes.class));
+		} catch (IOException e) {
+			return new PathWithAttributes(project, path, 0, 0);
+		}
+	}
+
+	@Override
+	public String getProject() {
+		return this.project;
+	}
+
+	@Override
+	public Path getPath() {
+		return this.path;
+	}
+
+	public String getPathname() {
+		return this.pathname;
+	}
+
+	public long getLastModified() {
+		return this.lastModified;
+	}
+
+	public long getSize() {
+		return this.size;
+	}
+
+	@Override
+	public Term getTerm() {
+		return this.term;
+	}
+
+	@Override
+	public String toString() {
+		return this.pathname;
+	}
+}
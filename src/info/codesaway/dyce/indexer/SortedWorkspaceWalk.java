@@ -0,0 +1,244 @@
+package info.codesaway.dyce.indexer;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.NoSuchElementException;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+import info.codesaway.dyce.DYCESettings;
+
+/**
+ * Walks the projects' files in pathname order
+ *
+ * <p>
+ * Pathnames are in the same order as the indexed pathname terms (UTF-8 byte
+ * order), so the walk can be merged with the index in a single pass. Only
+ * the directories along the current path are held in memory.
+ * </p>
+ */
+class SortedWorkspaceWalk implements Iterator<PathWithAttributes> {
+	private final Map<Path, String> projectRoots;
+
+	// Directory entries still to walk (the top is the directory currently walking)
+	private final Deque<Iterator<WalkEntry>> stack = new ArrayDeque<>();
+
+	@Nullable
+	private PathWithAttributes next;
+
+	/**
+	 *
+	 * @param projectRoots the project name for each project's location
+	 */
+	SortedWorkspaceWalk(final Map<Path, String> projectRoots) {
+		this(projectRoots, getOuterRoots(projectRoots));
+	}
+
+	/**
+	 * Walk only some of the projects (such as a single project; see
+	 * MergedWorkspaceWalk)
+	 *
+	 * @param projectRoots the project name for each project's location
+	 * @param roots the locations of the projects to walk (not nested in each
+	 *            other; see {@link #getOuterRoots(Map)})
+	 */
+	SortedWorkspaceWalk(final Map<Path, String> projectRoots, final List<Path> roots) {
+		this.projectRoots = projectRoots;
+
+		List<WalkEntry> entries = new ArrayList<>();
+
+		for (Path root : roots) {
+			entries.add(createRootEntry(root, projectRoots.get(root)));
+		}
+
+		Collections.sort(entries);
+
+		this.stack.push(entries.iterator());
+		this.next = this.advance();
+	}
+
+	/**
+	 * Gets the locations of the projects which aren't nested in another
+	 * project, in pathname order
+	 *
+	 * <p>
+	 * Projects nested in another project are walked as part of the outer
+	 * project (otherwise, their files would be out of order and walked twice)
+	 * </p>
+	 */
+	static List<Path> getOuterRoots(final Map<Path, String> projectRoots) {
+		List<WalkEntry> roots = new ArrayList<>();
+
+		for (Entry<Path, String> entry : projectRoots.entrySet()) {
+			roots.add(createRootEntry(entry.getKey(), entry.getValue()));
+		}
+
+		Collections.sort(roots);
+
+		List<Path> outerRoots = new ArrayList<>();
+		String outerKey = null;
+
+		for (WalkEntry root : roots) {
+			if (outerKey == null || !root.key.startsWith(outerKey)) {
+				outerRoots.add(root.path);
+				outerKey = root.key;
+			}
+		}
+
+		return outerRoots;
+	}
+
+	private static WalkEntry createRootEntry(final Path root, final String project) {
+		return new WalkEntry(root, root + root.getFileSystem().getSeparator(), null, project);
+	}
+
+	@Override
+	public boolean hasNext() {
+		return this.next != null;
+	}
+
+	@Override
+	public PathWithAttributes next() {
+		PathWithAttributes result = this.next;
+
+		if (result == null) {
+			throw new NoSuchElementException();
+		}
+
+		this.next = this.advance();
+		return result;
+	}
+
+	@Nullable
+	private PathWithAttributes advance() {
+		while (!this.stack.isEmpty()) {
+			Iterator<WalkEntry> iterator = this.stack.peek();
+
+			if (!iterator.hasNext()) {
+				this.stack.pop();
+				continue;
+			}
+
+			WalkEntry entry = iterator.next();
+
+			BasicFileAttributes attributes = entry.attributes;
+
+			if (attributes == null || attributes.isDirectory()) {
+				List<WalkEntry> children = this.list(entry);
+
+				if (!children.isEmpty()) {
+					this.stack.push(children.iterator());
+				}
+			} else if (DYCESettings.shouldIndexFile(entry.path)) {
+				return new PathWithAttributes(entry.project, entry.path, attributes);
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * List the directory's entries, in pathname order
+	 */
+	private List<WalkEntry> list(final WalkEntry directory) {
+		List<WalkEntry> children = new ArrayList<>();
+		String separator = directory.path.getFileSystem().getSeparator();
+
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory.path)) {
+			for (Path child : stream) {
+				BasicFileAttributes attributes;
+				try {
+					// Don't follow links (same as Files.walk)
+					attributes = Files.readAttributes(child, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+				} catch (IOException e) {
+					continue;
+				}
+
+				boolean isDirectory = attributes.isDirectory();
+
+				String name = String.valueOf(child.getFileName());
+
+				// Sort directories as if they end with the separator, since that's how their files' pathnames compare
+				// (for example, "a-b/c.java" comes before "a/c.java", since '-' comes before '/')
+				String key = isDirectory ? name + separator : name;
+
+				// Switch to the nested project, if any
+				String project = isDirectory ? this.projectRoots.getOrDefault(child, directory.project)
+						: directory.project;
+
+				children.add(new WalkEntry(child, key, attributes, project));
+			}
+		} catch (IOException e) {
+			// Skip directories which cannot be read (same as if they didn't exist)
+			return Collections.emptyList();
+		}
+
+		Collections.sort(children);
+		return children;
+	}
+
+	/**
+	 * Compare by Unicode code point (same order as comparing the UTF-8 bytes)
+	 *
+	 * <p>
+	 * Differs from {@link String#compareTo(String)} for supplementary
+	 * characters, since their surrogates come before chars such as U+FFFD
+	 * </p>
+	 */
+	static int compareCodePoints(final String string1, final String string2) {
+		int length = Math.min(string1.length(), string2.length());
+
+		for (int i = 0; i < length; i++) {
+			char c1 = string1.charAt(i);
+			char c2 = string2.charAt(i);
+
+			if (c1 != c2) {
+				boolean isSurrogate1 = Character.isSurrogate(c1);
+				boolean isSurrogate2 = Character.isSurrogate(c2);
+
+				// Supplementary code points come after all other code points
+				if (isSurrogate1 != isSurrogate2) {
+					return isSurrogate1 ? 1 : -1;
+				}
+
+				return c1 - c2;
+			}
+		}
+
+		return string1.length() - string2.length();
+	}
+
+	private static final class WalkEntry implements Comparable<WalkEntry> {
+		private final Path path;
+		private final String key;
+		// Project roots don't have their attributes read (always walked as directories)
+		@Nullable
+		private final BasicFileAttributes attributes;
+		private final String project;
+
+		WalkEntry(final Path path, final String key, @Nullable final BasicFileAttributes attributes,
+				final String project) {
+			this.path = path;
+			this.key = key;
+			this.attributes = attributes;
+			this.project = project;
+		}
+
+		@Override
+		public int compareTo(final WalkEntry other) {
+			return compareCodePoints(this.key, other.key);
+		}
+	}
+}
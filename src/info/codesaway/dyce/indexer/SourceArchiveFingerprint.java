@@ -0,0 +1,199 @@
+package info.codesaway.dyce.indexer;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Objects;
+import java.util.zip.CRC32;
+import java.util.zip.ZipException;
+
+import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.jdt.annotation.Nullable;
+
+/**
+ * Identifies a version of a source archive (such as the JDK src.zip), so can
+ * tell if it changed without reading all its entries
+ *
+ * <p>
+ * The checksum is of the zip's central directory, which has the name, size,
+ * and CRC of every entry (so changes if any entry changes)
+ * </p>
+ */
+public class SourceArchiveFingerprint {
+	private final String pathname;
+	private final long size;
+	private final long lastModified;
+	private final long centralDirectoryChecksum;
+
+	// https://pkware.cachefly.net/webdocs/casestudies/APPNOTE.TXT
+	private static final int END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06054b50;
+	private static final int END_OF_CENTRAL_DIRECTORY_SIZE = 22;
+	private static final int MAX_COMMENT_LENGTH = 0xFFFF;
+
+	private static final int ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+	private static final int ZIP64_LOCATOR_SIZE = 20;
+	private static final int ZIP64_END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06064b50;
+	private static final int ZIP64_END_OF_CENTRAL_DIRECTORY_SIZE = 56;
+
+	private static final long ZIP64_MAGIC = 0xFFFF_FFFFL;
+
+	public SourceArchiveFingerprint(final String pathname, final long size, final long lastModified,
+			final long centralDirectoryChecksum) {
+		this.pathname = pathname;
+		this.size = size;
+		this.lastModified = lastModified;
+		this.centralDirectoryChecksum = centralDirectoryChecksum;
+	}
+
+	/**
+	 * Create the fingerprint for the archive
+	 *
+	 * @param archivePath
+	 * @return the fingerprint
+	 * @throws IOException if cannot read the archive (such as if it doesn't
+	 *             exist)
+	 */
+	public static SourceArchiveFingerprint of(final Path archivePath) throws IOException {
+		BasicFileAttributes attributes = Files.readAttributes(archivePath, BasicFileAttributes.class);
+
+		long checksum;
+		try (FileChannel channel = FileChannel.open(archivePath, StandardOpenOption.READ)) {
+			checksum = checksumCentralDirectory(channel);
+		}
+
+		return new SourceArchiveFingerprint(archivePath.toString(), attributes.size(),
+				attributes.lastModifiedTime().toMillis(), checksum);
+	}
+
+	private static long checksumCentralDirectory(final FileChannel channel) throws IOException {
+		long size = channel.size();
+
+		// The end of central directory record is at the end of the file,
+		// followed by an optional comment
+		int tailLength = (int) Math.min(size, END_OF_CENTRAL_DIRECTORY_SIZE + MAX_COMMENT_LENGTH);
+		long tailPosition = size - tailLength;
+		ByteBuffer tail = read(channel, tailPosition, tailLength);
+
+		int endOfCentralDirectory = -1;
+		for (int i = tailLength - END_OF_CENTRAL_DIRECTORY_SIZE; i >= 0; i--) {
+			if (tail.getInt(i) == END_OF_CENTRAL_DIRECTORY_SIGNATURE) {
+				endOfCentralDirectory = i;
+				break;
+			}
+		}
+
+		if (endOfCentralDirectory == -1) {
+			throw new ZipException("Cannot find end of central directory");
+		}
+
+		long centralDirectorySize = tail.getInt(endOfCentralDirectory + 12) & 0xFFFF_FFFFL;
+		long centralDirectoryOffset = tail.getInt(endOfCentralDirectory + 16) & 0xFFFF_FFFFL;
+
+		int locator = endOfCentralDirectory - ZIP64_LOCATOR_SIZE;
+
+		if ((centralDirectorySize == ZIP64_MAGIC || centralDirectoryOffset == ZIP64_MAGIC) && locator >= 0
+				&& tail.getInt(locator) == ZIP64_LOCATOR_SIGNATURE) {
+			// Large zip, sizes are in the Zip64 end of central directory record
+			long zip64Offset = tail.getLong(locator + 8);
+			ByteBuffer zip64 = read(channel, zip64Offset, ZIP64_END_OF_CENTRAL_DIRECTORY_SIZE);
+
+			if (zip64.getInt(0) == ZIP64_END_OF_CENTRAL_DIRECTORY_SIGNATURE) {
+				centralDirectorySize = zip64.getLong(40);
+				centralDirectoryOffset = zip64.getLong(48);
+			}
+		}
+
+		CRC32 crc = new CRC32();
+		ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+
+		long position = centralDirectoryOffset;
+		long remaining = centralDirectorySize;
+
+		while (remaining > 0) {
+			buffer.clear();
+			buffer.limit((int) Math.min(buffer.capacity(), remaining));
+
+			int read = channel.read(buffer, position);
+
+			if (read == -1) {
+				throw new EOFException("Central directory is past the end of the file");
+			}
+
+			buffer.flip();
+			crc.update(buffer);
+
+			position += read;
+			remaining -= read;
+		}
+
+		return crc.getValue();
+	}
+
+	private static ByteBuffer read(final FileChannel channel, final long position, final int length)
+			throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, position + buffer.position()) == -1) {
+				throw new EOFException();
+			}
+		}
+
+		buffer.flip();
+		return buffer;
+	}
+
+	public String getPathname() {
+		return this.pathname;
+	}
+
+	public long getSize() {
+		return this.size;
+	}
+
+	public long getLastModified() {
+		return this.lastModified;
+	}
+
+	public long getCentralDirectoryChecksum() {
+		return this.centralDirectoryChecksum;
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(this.pathname, this.size, this.lastModified, this.centralDirectoryChecksum);
+	}
+
+	@Override
+	public boolean equals(final @Nullable Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (obj == null) {
+			return false;
+		}
+		if (this.getClass() != obj.getClass()) {
+			return false;
+		}
+		SourceArchiveFingerprint other = (SourceArchiveFingerprint) obj;
+		return Objects.equals(this.pathname, other.pathname) && this.size == other.size
+				&& this.lastModified == other.lastModified
+				&& this.centralDirectoryChecksum == other.centralDirectoryChecksum;
+	}
+
+	@Override
+	public String toString() {
+		@NonNull
+		@SuppressWarnings("null")
+		String toString = String.format("%s (size = %d; lastModified = %d; centralDirectoryChecksum = %08x)",
+				this.pathname, this.size, this.lastModified, this.centralDirectoryChecksum);
+
+		return toString;
+	}
+}
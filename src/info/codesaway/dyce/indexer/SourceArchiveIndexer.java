@@ -0,0 +1,623 @@
+package info.codesaway.dyce.indexer;
+
+import java.io.IOException;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.IndexWriterConfig.OpenMode;
+import org.apache.lucene.index.MultiReader;
+import org.apache.lucene.store.FSDirectory;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.jdt.annotation.Nullable;
+
+import info.codesaway.dyce.Activator;
+import info.codesaway.dyce.DYCESettings;
+import info.codesaway.dyce.indexer.DYCEIndexStatistics.Stage;
+import info.codesaway.dyce.util.DYCEUtilities;
+import info.codesaway.util.indexer.LuceneStep;
+
+/**
+ * Indexes source archives (such as the JDK src.zip), each into its own index
+ *
+ * <p>
+ * Source archives rarely change, so each is indexed once and force merged into
+ * a single segment. An archive index is never written to again (if the
+ * archive changes, a new index is created), and is searched along with the
+ * workspace index. This way, rebuilding the workspace index doesn't need to
+ * reindex the archives.
+ * </p>
+ */
+public class SourceArchiveIndexer {
+	private static final Path SOURCE_ARCHIVES_PATH = Activator.STATE_LOCATION.resolve("SourceArchives");
+
+	// Written once the archive index is complete
+	private static final String MANIFEST_FILENAME = "manifest.txt";
+
+	private static final String JDK_SOURCE_ZIP_FILENAME = "src.zip";
+	private static final String SOURCES_JAR_SUFFIX = "-sources.jar";
+
+	// Only Java files are indexed from the archives
+	private static final String JAVA_EXTENSION = "java";
+
+	// Reader for each archive index (keyed by index path)
+	// (holds a reference to each reader, which is released once the archive is reindexed or removed)
+	private static final Map<Path, DirectoryReader> READERS = new LinkedHashMap<>();
+
+	// Changes each time an archive reader is opened or closed
+	// (so cached search results from the old readers aren't used)
+	private static volatile long readersGeneration;
+
+	// Source archives to index (null if need to look for them again)
+	// (directories are only walked again once rescanArchives is called, such as when rebuilding the index)
+	@Nullable
+	private static volatile List<Path> sourceArchives;
+
+	// Fingerprint for each archive, reused until the archive's size or last modified time changes
+	// (so doesn't read each archive's central directory every update)
+	private static final Map<Path, SourceArchiveFingerprint> FINGERPRINTS = new ConcurrentHashMap<>();
+
+	// Archive indexes used as of the last update and whether any stale indexes couldn't be deleted
+	// (only used by update, which is only run by the index job)
+	private static Set<Path> lastIndexPaths = Collections.emptySet();
+	private static boolean hasStaleIndexes = true;
+
+	/**
+	 * Index any source archives which changed and open the archive indexes
+	 *
+	 * @param monitor
+	 * @param statistics
+	 * @return the number of archive entries indexed
+	 * @throws IOException
+	 */
+	public static int update(final IProgressMonitor monitor, final DYCEIndexStatistics statistics)
+			throws IOException {
+		int indexedEntries = 0;
+
+		Set<Path> archiveDirectories = new HashSet<>();
+		Set<Path> indexPaths = new HashSet<>();
+
+		long documentVersion = DYCESettings.getDocumentVersion(JAVA_EXTENSION);
+
+		for (Path archivePath : getSourceArchives()) {
+			if (monitor.isCanceled()) {
+				throw new OperationCanceledException();
+			}
+
+			SourceArchiveFingerprint fingerprint;
+			try {
+				fingerprint = getFingerprint(archivePath);
+			} catch (NoSuchFileException e) {
+				// Archive was removed, so look for the archives again next update
+				sourceArchives = null;
+				continue;
+			} catch (IOException e) {
+				e.printStackTrace();
+				continue;
+			}
+
+			// Each version of the archive gets its own index
+			// (so can create the new index while still searching the old one)
+			Path archiveDirectory = getArchiveDirectory(archivePath);
+			Path indexPath = archiveDirectory.resolve(
+					String.format("%08x", Objects.hash(fingerprint, documentVersion)));
+
+			// An open index is complete and current, since the index path is based on the fingerprint and version
+			// (so only need to read the manifest before opening the index)
+			if (!isReaderOpen(indexPath)) {
+				SourceArchiveManifest manifest = SourceArchiveManifest.read(indexPath.resolve(MANIFEST_FILENAME));
+
+				if (manifest == null || !manifest.isCurrent(fingerprint, documentVersion)) {
+					try {
+						indexedEntries += indexArchive(archivePath, indexPath, fingerprint, documentVersion, monitor,
+								statistics);
+					} catch (IOException e) {
+						// Don't let one bad archive prevent indexing the others
+						e.printStackTrace();
+
+						// Keep searching the archive's previous index, until the archive is indexed again
+						Path previousIndexPath = findPreviousIndex(archiveDirectory, indexPath);
+
+						if (previousIndexPath == null) {
+							continue;
+						}
+
+						indexPath = previousIndexPath;
+					}
+				}
+			}
+
+			openReader(indexPath);
+
+			archiveDirectories.add(archiveDirectory);
+			indexPaths.add(indexPath);
+		}
+
+		closeReaders(indexPaths);
+
+		// Only need to look for stale indexes if the archive indexes changed
+		if (hasStaleIndexes || !indexPaths.equals(lastIndexPaths)) {
+			hasStaleIndexes = !deleteStaleIndexes(archiveDirectories, indexPaths);
+			lastIndexPaths = indexPaths;
+		}
+
+		return indexedEntries;
+	}
+
+	/**
+	 * Look for the source archives again the next update (such as to find
+	 * archives added to the directories in
+	 * {@link DYCESettings#SOURCE_ARCHIVES})
+	 */
+	public static void rescanArchives() {
+		sourceArchives = null;
+		FINGERPRINTS.clear();
+	}
+
+	/**
+	 * Get the archive's fingerprint, reusing the previous fingerprint if the
+	 * archive's size and last modified time didn't change
+	 */
+	private static SourceArchiveFingerprint getFingerprint(final Path archivePath) throws IOException {
+		BasicFileAttributes attributes = Files.readAttributes(archivePath, BasicFileAttributes.class);
+		SourceArchiveFingerprint fingerprint = FINGERPRINTS.get(archivePath);
+
+		if (fingerprint == null || fingerprint.getSize() != attributes.size()
+				|| fingerprint.getLastModified() != attributes.lastModifiedTime().toMillis()) {
+			fingerprint = SourceArchiveFingerprint.of(archivePath);
+			FINGERPRINTS.put(archivePath, fingerprint);
+		}
+
+		return fingerprint;
+	}
+
+	/**
+	 * Gets the source archives to index
+	 *
+	 * <p>
+	 * Any directories in {@link DYCESettings#SOURCE_ARCHIVES} are expanded to
+	 * the "-sources.jar" files in them
+	 * </p>
+	 *
+	 * <p>
+	 * The archives are only looked for the first time and after
+	 * {@link #rescanArchives()}, since walking the directories is slow
+	 * </p>
+	 */
+	private static List<Path> getSourceArchives() {
+		List<Path> archives = sourceArchives;
+
+		if (archives == null) {
+			archives = findSourceArchives();
+			sourceArchives = archives;
+		}
+
+		return archives;
+	}
+
+	private static List<Path> findSourceArchives() {
+		List<Path> archives = new ArrayList<>();
+
+		for (Path path : DYCESettings.SOURCE_ARCHIVES) {
+			if (Files.isDirectory(path)) {
+				try (Stream<Path> stream = Files.walk(path)) {
+					stream.filter(p -> String.valueOf(p.getFileName()).endsWith(SOURCES_JAR_SUFFIX))
+							.filter(Files::isRegularFile)
+							.sorted()
+							.forEachOrdered(archives::add);
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			} else if (Files.isRegularFile(path)) {
+				archives.add(path);
+			}
+		}
+
+		return archives;
+	}
+
+	private static boolean isJDK(final Path archivePath) {
+		return JDK_SOURCE_ZIP_FILENAME.equals(String.valueOf(archivePath.getFileName()));
+	}
+
+	private static Path getArchiveDirectory(final Path archivePath) {
+		// Include hash of full path, in case multiple archives have the same filename
+		String directoryName = String.format("%s-%08x", archivePath.getFileName(),
+				archivePath.toString().hashCode());
+
+		return SOURCE_ARCHIVES_PATH.resolve(directoryName);
+	}
+
+	private static boolean shouldIndexEntry(final Path archivePath, final Path entry) {
+		if (Files.isDirectory(entry)) {
+			return false;
+		}
+
+		String entryName = entry.toString();
+
+		if (!entryName.endsWith("." + JAVA_EXTENSION)) {
+			return false;
+		}
+
+		if (!isJDK(archivePath)) {
+			return true;
+		}
+
+		for (String jdkPackage : DYCESettings.JDK_SOURCE_PACKAGES) {
+			if (entryName.startsWith("/" + jdkPackage + "/")) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Index the archive into a new index
+	 *
+	 * @return the number of entries indexed
+	 */
+	private static int indexArchive(final Path archivePath, final Path indexPath,
+			final SourceArchiveFingerprint fingerprint, final long documentVersion, final IProgressMonitor monitor,
+			final DYCEIndexStatistics statistics) throws IOException {
+		String project = isJDK(archivePath) ? "[JDK]" : "[" + archivePath.getFileName() + "]";
+
+		IndexWriterConfig config = DYCEIndexer
+				.setIndexSort(new IndexWriterConfig(DYCEUtilities.createAnalyzer(LuceneStep.INDEX))
+						.setOpenMode(OpenMode.CREATE)
+						// Only keep the index once it's complete (such as if indexing is canceled)
+						.setCommitOnClose(false));
+
+		int parserCount = Math.max(1, DYCESettings.PARSER_THREAD_COUNT);
+		statistics.setParserCount(parserCount);
+
+		try (FileSystem zipFileSystem = FileSystems.newFileSystem(archivePath, (ClassLoader) null);
+				FSDirectory directory = FSDirectory.open(indexPath);
+				IndexWriter writer = new IndexWriter(directory, config)) {
+
+			List<PathWithAttributes> entries = new ArrayList<>();
+
+			for (Path root : zipFileSystem.getRootDirectories()) {
+				try (Stream<Path> stream = Files.walk(root)) {
+					stream.filter(p -> shouldIndexEntry(archivePath, p))
+							.map(p -> PathWithAttributes.of(project, p))
+							.forEachOrdered(entries::add);
+				}
+			}
+
+			ExecutorService parsers = Executors.newFixedThreadPool(parserCount, DYCEIndexer::createParserThread);
+
+			try {
+				// Nothing else writes to the archive index and the order doesn't matter,
+				// so each parser adds its documents directly
+				List<Future<Void>> futures = new ArrayList<>(entries.size());
+
+				for (PathWithAttributes entry : entries) {
+					Callable<Void> task = () -> {
+						addDocuments(writer, entry, monitor, statistics);
+						return null;
+					};
+
+					futures.add(parsers.submit(task));
+				}
+
+				for (Future<Void> future : futures) {
+					waitFor(future, monitor);
+				}
+			} finally {
+				parsers.shutdownNow();
+			}
+
+			// Never written to again, so merge into a single segment (fastest to search)
+			writer.forceMerge(1);
+
+			long commitStart = System.nanoTime();
+			writer.commit();
+			statistics.add(Stage.COMMIT, 1, System.nanoTime() - commitStart);
+
+			new SourceArchiveManifest(fingerprint, documentVersion, entries.size())
+					.write(indexPath.resolve(MANIFEST_FILENAME));
+
+			return entries.size();
+		}
+	}
+
+	private static void addDocuments(final IndexWriter writer, final PathWithAttributes entry,
+			final IProgressMonitor monitor, final DYCEIndexStatistics statistics) throws IOException {
+		if (monitor.isCanceled()) {
+			throw new OperationCanceledException();
+		}
+
+		long parseStart = System.nanoTime();
+		CountedDocuments documents = new CountedDocuments(DYCEIndexer.createDocuments(entry, statistics));
+		long writeStart = System.nanoTime();
+		statistics.addParse(entry.getPathname(), writeStart - parseStart);
+
+		writer.addDocuments(documents);
+		statistics.addWrite(documents.getCount(), System.nanoTime() - writeStart);
+	}
+
+	private static void waitFor(final Future<Void> future, final IProgressMonitor monitor) {
+		try {
+			future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new OperationCanceledException();
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+
+			if (cause instanceof OperationCanceledException) {
+				throw (OperationCanceledException) cause;
+			}
+
+			// Skip the entry, but keep indexing the rest of the archive
+			cause.printStackTrace();
+		}
+	}
+
+	/**
+	 * Find the archive's previous index (such as if indexing the archive again
+	 * failed)
+	 *
+	 * @param indexPath the archive's new index (which isn't complete)
+	 * @return the previous index or <code>null</code> if there isn't a
+	 *         complete one
+	 */
+	@Nullable
+	private static Path findPreviousIndex(final Path archiveDirectory, final Path indexPath) {
+		synchronized (READERS) {
+			for (Path path : READERS.keySet()) {
+				if (archiveDirectory.equals(path.getParent()) && !path.equals(indexPath)) {
+					return path;
+				}
+			}
+		}
+
+		if (!Files.isDirectory(archiveDirectory)) {
+			return null;
+		}
+
+		// Not open yet (such as if Eclipse was restarted), so use the most recently completed index
+		Path previousIndexPath = null;
+		FileTime previousTime = null;
+
+		try (Stream<Path> indexes = Files.list(archiveDirectory)) {
+			for (Path path : (Iterable<Path>) indexes::iterator) {
+				Path manifestPath = path.resolve(MANIFEST_FILENAME);
+
+				if (path.equals(indexPath) || SourceArchiveManifest.read(manifestPath) == null) {
+					continue;
+				}
+
+				FileTime time = Files.getLastModifiedTime(manifestPath);
+
+				if (previousTime == null || time.compareTo(previousTime) > 0) {
+					previousIndexPath = path;
+					previousTime = time;
+				}
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+
+		return previousIndexPath;
+	}
+
+	private static boolean isReaderOpen(final Path indexPath) {
+		synchronized (READERS) {
+			return READERS.containsKey(indexPath);
+		}
+	}
+
+	private static void openReader(final Path indexPath) throws IOException {
+		synchronized (READERS) {
+			if (!READERS.containsKey(indexPath)) {
+				READERS.put(indexPath, openDirectoryReader(indexPath));
+				readersGeneration++;
+			}
+		}
+	}
+
+	/**
+	 * Open a reader for the index, which closes the index's directory once the
+	 * last reference to the reader is released
+	 */
+	private static DirectoryReader openDirectoryReader(final Path indexPath) throws IOException {
+		FSDirectory directory = FSDirectory.open(indexPath);
+		DirectoryReader reader;
+
+		try {
+			reader = DirectoryReader.open(directory);
+		} catch (IOException | RuntimeException e) {
+			directory.close();
+			throw e;
+		}
+
+		// Searches still using the reader hold their own reference, so the directory stays open until they're done
+		reader.getReaderCacheHelper().addClosedListener(key -> directory.close());
+		return reader;
+	}
+
+	/**
+	 * Close the readers for the archive indexes which are no longer used
+	 *
+	 * @param indexPaths the archive indexes which are still used
+	 */
+	private static void closeReaders(final Set<Path> indexPaths) {
+		synchronized (READERS) {
+			Iterator<Entry<Path, DirectoryReader>> iterator = READERS.entrySet().iterator();
+
+			while (iterator.hasNext()) {
+				Entry<Path, DirectoryReader> entry = iterator.next();
+
+				if (!indexPaths.contains(entry.getKey())) {
+					iterator.remove();
+					decRef(entry.getValue());
+					readersGeneration++;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Close the readers for all the archive indexes
+	 */
+	public static void closeReaders() {
+		synchronized (READERS) {
+			READERS.values().forEach(SourceArchiveIndexer::decRef);
+			READERS.clear();
+			readersGeneration++;
+		}
+	}
+
+	/**
+	 * Get the generation of the archive readers, which changes each time an
+	 * archive reader is opened or closed
+	 */
+	public static long getReadersGeneration() {
+		return readersGeneration;
+	}
+
+	private static void decRef(final DirectoryReader reader) {
+		try {
+			// Searches still using the reader hold their own reference
+			// (reader is closed once they're done)
+			reader.decRef();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Combine the workspace index with the source archive indexes, so can
+	 * search them together
+	 *
+	 * @param workspaceReader
+	 * @return the combined reader (close when done; closing doesn't close the
+	 *         workspace reader)
+	 * @throws IOException
+	 */
+	public static MultiReader combineReaders(final IndexReader workspaceReader) throws IOException {
+		synchronized (READERS) {
+			List<IndexReader> readers = new ArrayList<>(READERS.size() + 1);
+			readers.add(workspaceReader);
+			readers.addAll(READERS.values());
+
+			// Increments each reader's reference count
+			// (so stays open, even if an archive is reindexed while searching)
+			return new MultiReader(readers.toArray(new IndexReader[0]), false);
+		}
+	}
+
+	/**
+	 * Get the readers for the archive indexes, to search each archive on its
+	 * own
+	 *
+	 * <p>
+	 * Increments each reader's reference count (call decRef on each reader
+	 * once done)
+	 * </p>
+	 */
+	public static List<DirectoryReader> acquireReaders() {
+		synchronized (READERS) {
+			List<DirectoryReader> readers = new ArrayList<>(READERS.values());
+			readers.forEach(DirectoryReader::incRef);
+			return readers;
+		}
+	}
+
+	/**
+	 * Delete indexes for old versions of archives and for archives no longer
+	 * indexed
+	 *
+	 * <p>
+	 * If cannot delete an index (such as a search still has it open), will try
+	 * again the next time update
+	 * </p>
+	 *
+	 * @return whether all the stale indexes were deleted
+	 */
+	private static boolean deleteStaleIndexes(final Set<Path> archiveDirectories, final Set<Path> indexPaths) {
+		if (!Files.isDirectory(SOURCE_ARCHIVES_PATH)) {
+			return true;
+		}
+
+		boolean isDeleted = true;
+
+		try (Stream<Path> archives = Files.list(SOURCE_ARCHIVES_PATH)) {
+			for (Path archiveDirectory : (Iterable<Path>) archives::iterator) {
+				if (!archiveDirectories.contains(archiveDirectory)) {
+					isDeleted &= delete(archiveDirectory);
+					continue;
+				}
+
+				try (Stream<Path> indexes = Files.list(archiveDirectory)) {
+					for (Path index : (Iterable<Path>) indexes::iterator) {
+						if (!indexPaths.contains(index)) {
+							isDeleted &= delete(index);
+						}
+					}
+				} catch (IOException e) {
+					e.printStackTrace();
+					isDeleted = false;
+				}
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+			isDeleted = false;
+		}
+
+		return isDeleted;
+	}
+
+	/**
+	 * Delete the path (including its contents, if a directory)
+	 *
+	 * @return whether the path was deleted
+	 */
+	static boolean delete(final Path path) {
+		try (Stream<Path> stream = Files.walk(path)) {
+			// Delete the files before their directory
+			stream.sorted(Comparator.reverseOrder())
+					.forEach(p -> {
+						try {
+							Files.deleteIfExists(p);
+						} catch (IOException e) {
+							// Try again next time
+						}
+					});
+		} catch (IOException e) {
+			// Try again next time
+		}
+
+		return !Files.exists(path);
+	}
+}
@@ -0,0 +1,134 @@
+package info.codesaway.dyce.indexer;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+/**
+ * Which version of a source archive (such as the JDK src.zip) an archive
+ * index was created from
+ *
+ * <p>
+ * Written once the archive index is complete; if the archive's fingerprint
+ * still matches, the archive doesn't need to be indexed again
+ * </p>
+ */
+public class SourceArchiveManifest {
+	private final SourceArchiveFingerprint fingerprint;
+	private final long documentVersion;
+	private final int entryCount;
+
+	private static final String HEADER = "DYCE source archive manifest 2";
+
+	public SourceArchiveManifest(final SourceArchiveFingerprint fingerprint, final long documentVersion,
+			final int entryCount) {
+		this.fingerprint = fingerprint;
+		this.documentVersion = documentVersion;
+		this.entryCount = entryCount;
+	}
+
+	public SourceArchiveFingerprint getFingerprint() {
+		return this.fingerprint;
+	}
+
+	public long getDocumentVersion() {
+		return this.documentVersion;
+	}
+
+	/**
+	 * Number of the archive's entries which were indexed
+	 */
+	public int getEntryCount() {
+		return this.entryCount;
+	}
+
+	/**
+	 * Indicates if the archive index is current
+	 *
+	 * @param fingerprint the archive's current fingerprint
+	 * @param documentVersion the current document version
+	 * @return <code>true</code> if the archive didn't change since indexed
+	 */
+	public boolean isCurrent(final SourceArchiveFingerprint fingerprint, final long documentVersion) {
+		return this.fingerprint.equals(fingerprint) && this.documentVersion == documentVersion;
+	}
+
+	/**
+	 * Read the manifest
+	 *
+	 * @param manifestPath
+	 * @return the manifest or <code>null</code> if there is no manifest (or
+	 *         it's not in the expected format)
+	 * @throws IOException
+	 */
+	@Nullable
+	public static SourceArchiveManifest read(final Path manifestPath) throws IOException {
+		try (BufferedReader reader = Files.newBufferedReader(manifestPath, StandardCharsets.UTF_8)) {
+			if (!HEADER.equals(reader.readLine())) {
+				return null;
+			}
+
+			String pathname = reader.readLine();
+			String size = reader.readLine();
+			String lastModified = reader.readLine();
+			String checksum = reader.readLine();
+			String documentVersion = reader.readLine();
+			String entryCount = reader.readLine();
+
+			if (entryCount == null) {
+				return null;
+			}
+
+			SourceArchiveFingerprint fingerprint = new SourceArchiveFingerprint(pathname, Long.parseLong(size),
+					Long.parseLong(lastModified), Long.parseLong(checksum, 16));
+
+			return new SourceArchiveManifest(fingerprint, Long.parseLong(documentVersion),
+					Integer.parseInt(entryCount));
+		} catch (NoSuchFileException e) {
+			return null;
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Write the manifest (replaces the existing manifest only once fully
+	 * written)
+	 *
+	 * @param manifestPath
+	 * @throws IOException
+	 */
+	public void write(final Path manifestPath) throws IOException {
+		Files.createDirectories(manifestPath.getParent());
+		Path tempPath = manifestPath.resolveSibling(manifestPath.getFileName() + ".tmp");
+
+		try (BufferedWriter writer = Files.newBufferedWriter(tempPath, StandardCharsets.UTF_8)) {
+			writeLine(writer, HEADER);
+			writeLine(writer, this.fingerprint.getPathname());
+			writeLine(writer, String.valueOf(this.fingerprint.getSize()));
+			writeLine(writer, String.valueOf(this.fingerprint.getLastModified()));
+			writeLine(writer, Long.toHexString(this.fingerprint.getCentralDirectoryChecksum()));
+			writeLine(writer, String.valueOf(this.documentVersion));
+			writeLine(writer, String.valueOf(this.entryCount));
+		}
+
+		try {
+			Files.move(tempPath, manifestPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(tempPath, manifestPath, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	private static void writeLine(final BufferedWriter writer, final String line) throws IOException {
+		writer.write(line);
+		writer.newLine();
+	}
+}
@@ -0,0 +1,50 @@
+package info.codesaway.dyce.jobs;
+
+import java.io.IOException;
+
+import org.apache.lucene.search.SearcherManager;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+
+import info.codesaway.dyce.indexer.DYCEElementDictionary;
+
+/**
+ * Rebuilds the element dictionary (see DYCEElementDictionary) from the
+ * searcher manager's index
+ *
+ * <p>
+ * Scheduled with a delay each time the searcher refreshes, so the refreshes
+ * while waiting (such as every group of files while indexing) are rebuilt
+ * once, and the refreshing thread doesn't wait for the rebuild
+ * </p>
+ */
+public class DYCEElementDictionaryJob extends Job {
+	private final SearcherManager searcherManager;
+
+	public DYCEElementDictionaryJob(final SearcherManager searcherManager) {
+		super("DYCE Building Element Dictionary");
+
+		this.searcherManager = searcherManager;
+
+		this.setSystem(true);
+		this.setPriority(Job.DECORATE);
+	}
+
+	@Override
+	protected IStatus run(final IProgressMonitor monitor) {
+		if (monitor.isCanceled()) {
+			return Status.CANCEL_STATUS;
+		}
+
+		try {
+			DYCEElementDictionary.rebuild(this.searcherManager);
+		} catch (IOException e) {
+			// Built again the next time the searcher refreshes
+			e.printStackTrace();
+		}
+
+		return Status.OK_STATUS;
+	}
+}
@@ -0,0 +1,552 @@
+package info.codesaway.dyce.jobs;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.ExitableDirectoryReader.ExitableFilterAtomicReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.MultiReader;
+import org.apache.lucene.index.QueryTimeout;
+import org.apache.lucene.index.ReaderUtil;
+import org.apache.lucene.search.CollectorManager;
+import org.apache.lucene.search.FieldDoc;
+import org.apache.lucene.search.FilterCollector;
+import org.apache.lucene.search.FilterLeafCollector;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.LeafCollector;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.TopDocsCollector;
+import org.apache.lucene.search.TopFieldCollector;
+import org.apache.lucene.search.TopFieldDocs;
+import org.apache.lucene.search.TopScoreDocCollector;
+import org.apache.lucene.store.AlreadyClosedException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.jdt.annotation.Nullable;
+
+import info.codesaway.dyce.DYCESearcher;
+import info.codesaway.dyce.DYCESearcherFactory;
+import info.codesaway.dyce.DYCESettings;
+import info.codesaway.dyce.indexer.DYCEDisplayFields;
+import info.codesaway.dyce.indexer.SourceArchiveIndexer;
+
+/**
+ * Searches each index of a searcher (see DYCESearcher) at the same time, then
+ * merges the top hits
+ *
+ * <p>
+ * Each index is a shard; each hit's shardIndex is the index it was found in,
+ * and its doc is the document in that index. Holds a reference to each index
+ * until closed.
+ * </p>
+ */
+final class DYCEFederatedSearcher implements Closeable {
+	// Counts hits exactly up to this many (same as IndexSearcher's default)
+	private static final int TOTAL_HITS_THRESHOLD = 1000;
+
+	// Number of documents to collect between checking if the search was cancelled
+	private static final int CANCEL_CHECK_INTERVAL = 1024;
+
+	// Shared by all searches, so searching many indexes doesn't create many threads
+	// (along with the segment threads, at most about one thread per processor; see DYCESettings.SEARCH_THREAD_COUNT)
+	private static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(DYCESettings.SEARCH_THREAD_COUNT,
+			DYCEFederatedSearcher::createSearchThread);
+
+	private final List<SearcherManager> searcherManagers = new ArrayList<>();
+	private final List<IndexSearcher> acquiredSearchers = new ArrayList<>();
+	private final List<DirectoryReader> archiveReaders;
+
+	// Index readers, in shard order
+	private final List<IndexReader> readers = new ArrayList<>();
+
+	// Searchers for each shard (only stop expanding terms once the search is cancelled)
+	// (each searches its index's segments at the same time; see DYCESearcherFactory)
+	private final List<IndexSearcher> searchers = new ArrayList<>();
+
+	// Generation of the archive readers, as of when they were acquired
+	private final long archiveGeneration;
+
+	// Changed if the searcher is used again (such as to get the next page of results)
+	private volatile IProgressMonitor monitor;
+
+	private DYCEFederatedSearcher(final List<DirectoryReader> archiveReaders, final long archiveGeneration,
+			final IProgressMonitor monitor) {
+		this.archiveReaders = archiveReaders;
+		this.archiveGeneration = archiveGeneration;
+		this.monitor = monitor;
+	}
+
+	private static Thread createSearchThread(final Runnable runnable) {
+		Thread thread = new Thread(runnable, "DYCE Searcher");
+		// Don't prevent Eclipse from shutting down
+		thread.setDaemon(true);
+		return thread;
+	}
+
+	/**
+	 * Acquire the indexes of the searcher
+	 *
+	 * @return the federated searcher or <code>null</code> if the main index
+	 *         doesn't exist yet
+	 */
+	@Nullable
+	static DYCEFederatedSearcher acquire(final DYCESearcher searcher, final IProgressMonitor monitor)
+			throws IOException {
+		// Read before acquiring the archive readers (if changes after, the results just aren't found in the cache)
+		long archiveGeneration = SourceArchiveIndexer.getReadersGeneration();
+
+		List<DirectoryReader> archiveReaders = searcher.shouldIncludeSourceArchives()
+				? SourceArchiveIndexer.acquireReaders()
+				: new ArrayList<>();
+
+		DYCEFederatedSearcher federatedSearcher = new DYCEFederatedSearcher(archiveReaders, archiveGeneration,
+				monitor);
+
+		try {
+			if (!federatedSearcher.add(searcher.getIndexPath())) {
+				federatedSearcher.close();
+				return null;
+			}
+
+			for (Path indexPath : searcher.getAdditionalIndexPaths()) {
+				// Skip indexes which don't exist
+				federatedSearcher.add(indexPath);
+			}
+
+			for (DirectoryReader reader : archiveReaders) {
+				federatedSearcher.addShard(reader);
+			}
+		} catch (IOException | RuntimeException e) {
+			federatedSearcher.close();
+			throw e;
+		}
+
+		return federatedSearcher;
+	}
+
+	/**
+	 * Add the index as a shard
+	 *
+	 * @return <code>true</code> if added the index; <code>false</code> if the
+	 *         index doesn't exist
+	 */
+	private boolean add(final Path indexPath) throws IOException {
+		SearcherManager searcherManager = DYCESettings.getSearcherManager(indexPath);
+
+		if (searcherManager == null) {
+			return false;
+		}
+
+		IndexSearcher searcher;
+		try {
+			searcher = searcherManager.acquire();
+		} catch (AlreadyClosedException e) {
+			// Replaced since got it (such as by a near real-time one), so use the new one
+			searcherManager = DYCESettings.getSearcherManager(indexPath);
+
+			if (searcherManager == null) {
+				return false;
+			}
+
+			searcher = searcherManager.acquire();
+		}
+
+		this.searcherManagers.add(searcherManager);
+		this.acquiredSearchers.add(searcher);
+
+		this.addShard(searcher.getIndexReader());
+		return true;
+	}
+
+	private void addShard(final IndexReader reader) throws IOException {
+		this.readers.add(reader);
+		this.searchers.add(DYCESearcherFactory.createSearcher(createCancellableReader(reader, this::isCanceled)));
+	}
+
+	private boolean isCanceled() {
+		return this.monitor.isCanceled();
+	}
+
+	/**
+	 * Set the monitor for the next search (such as when the searcher is kept
+	 * to get the next page of results)
+	 */
+	void setMonitor(final IProgressMonitor monitor) {
+		this.monitor = monitor;
+	}
+
+	/**
+	 * Get the generation of the archive readers, as of when they were
+	 * acquired (see SourceArchiveIndexer.getReadersGeneration)
+	 */
+	long getArchiveGeneration() {
+		return this.archiveGeneration;
+	}
+
+	/**
+	 * Get the version of each index, which changes each time the index changes
+	 *
+	 * @return the versions or <code>null</code> if an index doesn't have a
+	 *         version
+	 */
+	@Nullable
+	List<Long> getVersions() {
+		List<Long> versions = new ArrayList<>(this.readers.size());
+
+		for (IndexReader reader : this.readers) {
+			if (!(reader instanceof DirectoryReader)) {
+				return null;
+			}
+
+			versions.add(((DirectoryReader) reader).getVersion());
+		}
+
+		return versions;
+	}
+
+	/**
+	 * Search each index at the same time, then merge the top hits
+	 *
+	 * <p>
+	 * If the monitor is cancelled while searching, stops expanding the query's
+	 * terms (such as for a wildcard) and collecting hits, then throws an
+	 * ExitingReaderException or OperationCanceledException
+	 * </p>
+	 *
+	 * <p>
+	 * If sorted, segments sorted the same way (see
+	 * DYCESettings.SHOULD_SORT_INDEX_BY_RECENCY) stop being searched once they
+	 * have no more competitive hits, so the total hits are only counted up to
+	 * the hit limit
+	 * </p>
+	 *
+	 * @param searchAfter the last hit of the prior page, to get the next page
+	 *            (<code>null</code> to get the first page)
+	 * @param sort how to sort the hits (<code>null</code> to sort by score)
+	 */
+	TopDocs search(final Query query, final int hitLimit, @Nullable final ScoreDoc searchAfter,
+			@Nullable final Sort sort) throws IOException {
+		// Counting every hit would search each segment in full, instead of stopping early
+		int totalHitsThreshold = sort != null ? hitLimit : TOTAL_HITS_THRESHOLD;
+
+		List<Future<TopDocs>> futures = new ArrayList<>(this.searchers.size());
+
+		for (int i = 0; i < this.searchers.size(); i++) {
+			IndexSearcher searcher = this.searchers.get(i);
+			ScoreDoc shardSearchAfter = getShardSearchAfter(searchAfter, i);
+			TopDocsCollectorManager collectorManager = new TopDocsCollectorManager(hitLimit, shardSearchAfter, sort,
+					totalHitsThreshold, this.monitor);
+
+			futures.add(EXECUTOR.submit(() -> {
+				try {
+					return searcher.search(query, collectorManager);
+				} catch (RuntimeException e) {
+					throw unwrapSliceException(e);
+				}
+			}));
+		}
+
+		TopDocs[] shardHits = new TopDocs[futures.size()];
+
+		try {
+			for (int i = 0; i < shardHits.length; i++) {
+				shardHits[i] = futures.get(i).get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new OperationCanceledException();
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			} else if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			} else if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+
+			throw new IOException(cause);
+		} finally {
+			// Stop searching the other indexes, if one failed
+			futures.forEach(f -> f.cancel(true));
+		}
+
+		// Sets each hit's shardIndex
+		if (sort != null) {
+			return TopDocs.merge(sort, hitLimit, Arrays.copyOf(shardHits, shardHits.length, TopFieldDocs[].class));
+		}
+
+		return TopDocs.merge(hitLimit, shardHits);
+	}
+
+	/**
+	 * Get the exception thrown while searching a slice
+	 *
+	 * <p>
+	 * IndexSearcher wraps exceptions from the slices it searches on other
+	 * threads (such as when a search is cancelled)
+	 * </p>
+	 */
+	private static RuntimeException unwrapSliceException(final RuntimeException e) {
+		if (e.getCause() instanceof ExecutionException && e.getCause().getCause() instanceof RuntimeException) {
+			return (RuntimeException) e.getCause().getCause();
+		}
+
+		return e;
+	}
+
+	/**
+	 * Get the hit to search after in the shard
+	 *
+	 * <p>
+	 * Merged hits with the same score (or sort values) are ordered by shard,
+	 * so a shard before the last hit's shard skips all hits with the same
+	 * score, and a shard after it keeps them
+	 * </p>
+	 */
+	@Nullable
+	private static ScoreDoc getShardSearchAfter(@Nullable final ScoreDoc searchAfter, final int shardIndex) {
+		if (searchAfter == null || searchAfter.shardIndex == shardIndex) {
+			return searchAfter;
+		}
+
+		int doc = shardIndex < searchAfter.shardIndex ? Integer.MAX_VALUE : -1;
+
+		if (searchAfter instanceof FieldDoc) {
+			return new FieldDoc(doc, searchAfter.score, ((FieldDoc) searchAfter).fields, shardIndex);
+		}
+
+		return new ScoreDoc(doc, searchAfter.score, shardIndex);
+	}
+
+	/**
+	 * Read the fields shown for each hit, from the doc values (see
+	 * DYCEDisplayFields)
+	 *
+	 * @return the documents (in the same order as the hits)
+	 */
+	Document[] readDisplayFields(final ScoreDoc[] hits) throws IOException {
+		// Doc values can only be read forward, so read the hits in document order
+		Integer[] order = new Integer[hits.length];
+
+		for (int i = 0; i < order.length; i++) {
+			order[i] = i;
+		}
+
+		Arrays.sort(order, Comparator.<Integer> comparingInt(i -> hits[i].shardIndex)
+				.thenComparingInt(i -> hits[i].doc));
+
+		Document[] documents = new Document[hits.length];
+
+		int shardIndex = -1;
+		List<LeafReaderContext> leaves = null;
+		int leafIndex = -1;
+		LeafReaderContext leaf = null;
+		DYCEDisplayFields.Reader displayFields = null;
+
+		for (int i : order) {
+			ScoreDoc hit = hits[i];
+
+			if (hit.shardIndex != shardIndex) {
+				shardIndex = hit.shardIndex;
+				leaves = this.readers.get(shardIndex).leaves();
+				leafIndex = -1;
+			}
+
+			int index = ReaderUtil.subIndex(hit.doc, leaves);
+
+			if (index != leafIndex) {
+				leafIndex = index;
+				leaf = leaves.get(index);
+				displayFields = new DYCEDisplayFields.Reader(leaf.reader());
+			}
+
+			documents[i] = displayFields.read(hit.doc - leaf.docBase);
+		}
+
+		return documents;
+	}
+
+	/**
+	 * Release the indexes
+	 */
+	@Override
+	public void close() throws IOException {
+		IOException exception = null;
+
+		for (IndexSearcher searcher : this.searchers) {
+			try {
+				searcher.getIndexReader().close();
+			} catch (IOException e) {
+				exception = e;
+			}
+		}
+
+		for (int i = 0; i < this.acquiredSearchers.size(); i++) {
+			try {
+				this.searcherManagers.get(i).release(this.acquiredSearchers.get(i));
+			} catch (IOException e) {
+				exception = e;
+			}
+		}
+
+		for (DirectoryReader reader : this.archiveReaders) {
+			try {
+				reader.decRef();
+			} catch (IOException e) {
+				exception = e;
+			}
+		}
+
+		if (exception != null) {
+			throw exception;
+		}
+	}
+
+	/**
+	 * Wrap each segment of the reader, so expanding a query's terms stops once
+	 * the monitor is cancelled
+	 *
+	 * <p>
+	 * The returned reader holds its own reference to each segment, so closing
+	 * it doesn't close the reader
+	 * </p>
+	 */
+	private static MultiReader createCancellableReader(final IndexReader reader, final QueryTimeout timeout)
+			throws IOException {
+		List<LeafReaderContext> leaves = reader.leaves();
+		LeafReader[] cancellableLeaves = new LeafReader[leaves.size()];
+
+		for (int i = 0; i < cancellableLeaves.length; i++) {
+			cancellableLeaves[i] = new CancellableLeafReader(leaves.get(i).reader(), timeout);
+		}
+
+		return new MultiReader(cancellableLeaves, true);
+	}
+
+	/**
+	 * Segment which stops enumerating terms once the search is cancelled
+	 */
+	private static final class CancellableLeafReader extends ExitableFilterAtomicReader {
+		CancellableLeafReader(final LeafReader in, final QueryTimeout timeout) {
+			super(in, timeout);
+			in.incRef();
+		}
+
+		@Override
+		protected void doClose() throws IOException {
+			// Release the reference, instead of closing the segment
+			this.in.decRef();
+		}
+	}
+
+	/**
+	 * Collects the top hits of each slice, then merges them
+	 */
+	private static final class TopDocsCollectorManager implements CollectorManager<CancellableCollector, TopDocs> {
+		private final int hitLimit;
+		@Nullable
+		private final ScoreDoc searchAfter;
+		@Nullable
+		private final Sort sort;
+		private final int totalHitsThreshold;
+		private final IProgressMonitor monitor;
+
+		TopDocsCollectorManager(final int hitLimit, @Nullable final ScoreDoc searchAfter, @Nullable final Sort sort,
+				final int totalHitsThreshold, final IProgressMonitor monitor) {
+			this.hitLimit = hitLimit;
+			this.searchAfter = searchAfter;
+			this.sort = sort;
+			this.totalHitsThreshold = totalHitsThreshold;
+			this.monitor = monitor;
+		}
+
+		@Override
+		public CancellableCollector newCollector() {
+			TopDocsCollector<?> collector;
+
+			if (this.sort != null) {
+				// Stops collecting a segment once it has no more competitive hits, if the segment is sorted the same way
+				collector = TopFieldCollector.create(this.sort, this.hitLimit, (FieldDoc) this.searchAfter,
+						this.totalHitsThreshold);
+			} else {
+				collector = TopScoreDocCollector.create(this.hitLimit, this.searchAfter, this.totalHitsThreshold);
+			}
+
+			return new CancellableCollector(collector, this.monitor);
+		}
+
+		@Override
+		public TopDocs reduce(final Collection<CancellableCollector> collectors) {
+			TopDocs[] sliceHits = collectors.stream()
+					.map(c -> c.collector.topDocs())
+					.toArray(TopDocs[]::new);
+
+			// Slices are in document order, so hits with the same score stay in document order
+			// (the shard index is set once the shards are merged)
+			if (this.sort != null) {
+				return TopDocs.merge(this.sort, 0, this.hitLimit,
+						Arrays.copyOf(sliceHits, sliceHits.length, TopFieldDocs[].class), true);
+			}
+
+			return TopDocs.merge(0, this.hitLimit, sliceHits, true);
+		}
+	}
+
+	/**
+	 * Collector which stops collecting once the search is cancelled
+	 */
+	private static final class CancellableCollector extends FilterCollector {
+		private final TopDocsCollector<?> collector;
+		private final IProgressMonitor monitor;
+
+		CancellableCollector(final TopDocsCollector<?> collector, final IProgressMonitor monitor) {
+			super(collector);
+			this.collector = collector;
+			this.monitor = monitor;
+		}
+
+		@Override
+		public LeafCollector getLeafCollector(final LeafReaderContext context) throws IOException {
+			this.checkCanceled();
+
+			return new FilterLeafCollector(super.getLeafCollector(context)) {
+				private int count;
+
+				@Override
+				public void collect(final int doc) throws IOException {
+					if (++this.count % CANCEL_CHECK_INTERVAL == 0) {
+						CancellableCollector.this.checkCanceled();
+					}
+
+					super.collect(doc);
+				}
+			};
+		}
+
+		private void checkCanceled() {
+			if (this.monitor.isCanceled()) {
+				throw new OperationCanceledException();
+			}
+		}
+	}
+}
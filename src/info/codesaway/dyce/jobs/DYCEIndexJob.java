@@ -1,7 +1,9 @@
 package info.codesaway.dyce.jobs;
 
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Stream;
@@ -10,21 +12,33 @@ import org.apache.lucene.index.Term;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.ISchedulingRule;
 import org.eclipse.core.runtime.jobs.Job;
 import org.eclipse.jdt.annotation.Nullable;
 import org.eclipse.swt.widgets.Display;
 
+import info.codesaway.dyce.Activator;
+import info.codesaway.dyce.DYCESettings;
 import info.codesaway.dyce.DYCEView;
+import info.codesaway.dyce.indexer.DYCEIndexStatistics;
 import info.codesaway.dyce.indexer.DYCEIndexer;
-import info.codesaway.util.indexer.PathWithLastModified;
+import info.codesaway.dyce.indexer.PathWithAttributes;
+import info.codesaway.dyce.indexer.SourceArchiveIndexer;
 import info.codesaway.util.indexer.PathWithTerm;
 
 public class DYCEIndexJob extends Job {
 	private final DYCEView view;
 
-	private final Set<PathWithLastModified> indexPaths = ConcurrentHashMap.newKeySet();
+	private final Set<PathWithAttributes> indexPaths = ConcurrentHashMap.newKeySet();
 	private final Set<Term> deleteDocuments = ConcurrentHashMap.newKeySet();
 	private boolean incrementalRebuildIndex = false;
+	// Whether to swap in the rebuilt index (see DYCERebuildIndexJob)
+	private volatile boolean swapInRebuiltIndex = false;
+
+	// Queued work is also written to the journal, so it's not lost if Eclipse closes before it's indexed
+	// (synchronize on the journal when changing the queued work, so the journal matches)
+	private final DYCEIndexJournal journal = new DYCEIndexJournal(
+			Activator.STATE_LOCATION.resolve("IndexJournal.txt"));
 
 	/**
 	 * Delay after search is done before should show index message
@@ -42,10 +56,40 @@ public class DYCEIndexJob extends Job {
 
 	public static final Term[] EMPTY_TERM_ARRAY = {};
 
-	public DYCEIndexJob(final DYCEView view) {
+	/**
+	 * Rule for the jobs which write to the workspace index, so only one runs
+	 * at a time
+	 */
+	public static final ISchedulingRule INDEX_WRITER_RULE = new ISchedulingRule() {
+		@Override
+		public boolean contains(final ISchedulingRule rule) {
+			return rule == this;
+		}
+
+		@Override
+		public boolean isConflicting(final ISchedulingRule rule) {
+			return rule == this;
+		}
+	};
+
+	/**
+	 * Delay after indexing before resolving bindings in the background
+	 *
+	 * <p>
+	 * Defaults to 5 seconds (so saving several files in a row doesn't
+	 * repeatedly start and cancel it)
+	 * </p>
+	 */
+	private static final long RESOLVE_BINDINGS_DELAY = 5 * 1000;
+
+	private final DYCEResolveBindingsJob resolveBindingsJob;
+
+	public DYCEIndexJob(final DYCEView view, final DYCEResolveBindingsJob resolveBindingsJob) {
 		super("DYCE Indexing");
 
 		this.view = view;
+		this.resolveBindingsJob = resolveBindingsJob;
+		this.setRule(INDEX_WRITER_RULE);
 	}
 
 	// TODO: add these back?
@@ -65,27 +109,116 @@ public class DYCEIndexJob extends Job {
 		this.view.setIndexCreated(isIndexCreated);
 	}
 
-	public void schedule(final boolean incrementalRebuildIndex, final Collection<PathWithLastModified> indexPaths,
+	public void schedule(final boolean incrementalRebuildIndex, final Collection<PathWithAttributes> indexPaths,
 			final Collection<Term> deleteDocuments) {
+		this.schedule(incrementalRebuildIndex, indexPaths, deleteDocuments, true);
+	}
+
+	/**
+	 * Schedule swapping in the rebuilt index
+	 *
+	 * <p>
+	 * Also checks every file, to index any files modified while rebuilding
+	 * </p>
+	 */
+	public void scheduleSwapInRebuiltIndex() {
+		this.swapInRebuiltIndex = true;
+		this.schedule(true, Collections.emptyList(), Collections.emptyList());
+	}
+
+	/**
+	 * Schedule the work still outstanding when Eclipse last closed
+	 *
+	 * @return <code>true</code> if the outstanding work was scheduled (or there
+	 *         was none); <code>false</code> if there is no journal or index, so
+	 *         every file needs to be checked
+	 */
+	public boolean scheduleJournal() {
+		if (!this.journal.exists() || !DYCEIndexer.indexExists()) {
+			return false;
+		}
+
+		DYCEIndexJournal.Entries entries;
+		try {
+			entries = this.journal.read();
+		} catch (IOException e) {
+			e.printStackTrace();
+			return false;
+		}
+
+		if (!entries.isEmpty()) {
+			// Already in the journal, so don't write it again
+			this.schedule(entries.isIncrementalRebuildIndex(), entries.getIndexPaths(), entries.getDeleteDocuments(),
+					false);
+		}
+
+		return true;
+	}
+
+	private void schedule(final boolean incrementalRebuildIndex, final Collection<PathWithAttributes> indexPaths,
+			final Collection<Term> deleteDocuments, final boolean shouldWriteJournal) {
 		// TODO: don't use parameter for anything yet
 		// (not sure if I need to, other than to give user heads up possibly)
 		// (though you can query while indexing, unless it's the first time the
 		// index
 		// has been built)
-		this.incrementalRebuildIndex |= incrementalRebuildIndex;
+		synchronized (this.journal) {
+			this.incrementalRebuildIndex |= incrementalRebuildIndex;
 
-		if (!indexPaths.isEmpty()) {
-			// System.out.println("Need to index: " + indexPaths);
-			this.indexPaths.addAll(indexPaths);
-		}
+			if (!indexPaths.isEmpty()) {
+				// System.out.println("Need to index: " + indexPaths);
+				this.indexPaths.addAll(indexPaths);
+			}
+
+			if (!deleteDocuments.isEmpty()) {
+				this.deleteDocuments.addAll(deleteDocuments);
+			}
+
+			if (shouldWriteJournal) {
+				try {
+					this.journal.append(incrementalRebuildIndex, indexPaths, deleteDocuments);
+				} catch (IOException e) {
+					e.printStackTrace();
 
-		if (!deleteDocuments.isEmpty()) {
-			this.deleteDocuments.addAll(deleteDocuments);
+					// Journal may be missing work, so check every file the next time the view is created
+					this.journal.delete();
+				}
+			}
 		}
 
+		// Files to index take priority over resolving bindings
+		// (resolves the rest once done indexing)
+		this.resolveBindingsJob.cancel();
 		this.schedule();
 	}
 
+	/**
+	 * Schedule resolving the bindings for the Java files indexed without them
+	 * (see DYCESettings.SHOULD_RESOLVE_BINDINGS_IN_BACKGROUND)
+	 */
+	public void scheduleResolveBindings() {
+		if (DYCESettings.SHOULD_RESOLVE_BINDINGS_IN_BACKGROUND) {
+			this.resolveBindingsJob.schedule(RESOLVE_BINDINGS_DELAY);
+		}
+	}
+
+	/**
+	 * Replace the journal with the work still outstanding (called once the
+	 * indexed work is committed)
+	 */
+	private void rewriteJournal() {
+		synchronized (this.journal) {
+			try {
+				this.journal.rewrite(this.incrementalRebuildIndex, this.indexPaths, this.deleteDocuments);
+			} catch (IOException e) {
+				e.printStackTrace();
+
+				// Journal may be missing work, so check every file the next time the view is created
+				this.journal.delete();
+			}
+		}
+	}
+
 	public void removePath(final PathWithTerm path) {
 		// System.out.println("Indexed " + path);
 		this.indexPaths.remove(path);
@@ -116,6 +249,9 @@ public class DYCEIndexJob extends Job {
 
 		String message = "";
 
+		// Throughput of each stage of indexing (parsing and writing)
+		DYCEIndexStatistics statistics = new DYCEIndexStatistics();
+
 		//		if (display != null) {
 		//			display.syncExec(() -> {
 		//				// Run in UI
@@ -124,12 +260,19 @@ public class DYCEIndexJob extends Job {
 		//		}
 
 		try {
+			// Swap in the rebuilt index before anything else
+			// (so the files modified since are indexed into the rebuilt index)
+			if (this.swapInRebuiltIndex) {
+				this.swapInRebuiltIndex = false;
+				DYCEIndexer.swapInRebuiltIndex(this);
+			}
+
 			// First index specific paths, if any
 			// (this way, recently modified files are indexed even if the entire
 			// index isn't
 			// built yet or needs to be updated)
 			if (!this.indexPaths.isEmpty() || !this.deleteDocuments.isEmpty()) {
-				Stream<PathWithLastModified> stream = this.indexPaths.parallelStream();
+				Stream<PathWithAttributes> stream = this.indexPaths.parallelStream();
 				Term[] deletes = this.deleteDocuments.isEmpty() ? EMPTY_TERM_ARRAY
 						: this.deleteDocuments.toArray(EMPTY_TERM_ARRAY);
 
@@ -138,7 +281,12 @@ public class DYCEIndexJob extends Job {
 				// Note: any deleted files will be part of indexPaths, so don't
 				// pass anything
 				// specific for deleted
-				DYCEIndexer.index(stream, this, monitor, true, deletes);
+				DYCEIndexer.index(stream, this, monitor, true, deletes, statistics);
+
+				// Deletes are committed along with the indexed files
+				if (deletes.length > 0) {
+					this.deleteDocuments.removeAll(Arrays.asList(deletes));
+				}
 
 				if (monitor.isCanceled()) {
 					return Status.CANCEL_STATUS;
@@ -146,14 +294,35 @@ public class DYCEIndexJob extends Job {
 			}
 
 			if (this.incrementalRebuildIndex) {
-				message = DYCEIndexer.incrementalRebuildIndex(this, monitor);
+				message = DYCEIndexer.incrementalRebuildIndex(this, monitor, statistics);
+
+				// Source archives (such as the JDK) each have their own index
+				// (only indexed again if the archive changed)
+				int indexedEntries = SourceArchiveIndexer.update(monitor, statistics);
 				this.incrementalRebuildIndex = false;
 
 				if (monitor.isCanceled()) {
 					return Status.CANCEL_STATUS;
 				}
+
+				if (indexedEntries > 0) {
+					message = String.format("%s Indexed %,d source archive entries.", message, indexedEntries)
+							.trim();
+				}
+			}
+
+			if (message.isEmpty() && statistics.getWrittenFiles() > 0) {
+				message = statistics.getMessage();
 			}
 
+			// Everything indexed has been committed, so only need to keep the work queued since
+			this.rewriteJournal();
+
+			this.showMessage(display, message);
+			this.showStatistics(display, statistics);
+
+			this.scheduleResolveBindings();
+
 			return Status.OK_STATUS;
 		} catch (IOException e) {
 			if (display != null) {
@@ -168,24 +337,31 @@ public class DYCEIndexJob extends Job {
 
 			return Status.OK_STATUS;
 		}
-		//		finally {
-		//			// Used to make lambda happy
-		//			String finalMessage = message;
-		//			if (display != null) {
-		//				display.syncExec(() -> {
-		//					// Run in UI
-		//
-		//					//					if (this.view.getStatus().equals(DYCEView.INDEXING_STATUS)) {
-		//					//						this.view.setStatus("");
-		//					//					}
-		//
-		//					if (!finalMessage.isEmpty() && this.view.getStatus().isEmpty()
-		//							&& this.view.getLastSearchDoneTime() < System.currentTimeMillis() - MESSAGE_DELAY) {
-		//
-		//						this.view.setMessage(finalMessage);
-		//					}
-		//				});
-		//			}
-		//		}
+	}
+
+	private void showStatistics(@Nullable final Display display, final DYCEIndexStatistics statistics) {
+		if (display == null || statistics.getWrittenFiles() == 0) {
+			return;
+		}
+
+		display.asyncExec(() -> {
+			// Run in UI
+			this.view.setIndexStatistics(statistics);
+		});
+	}
+
+	private void showMessage(@Nullable final Display display, final String message) {
+		if (display == null || message.isEmpty()) {
+			return;
+		}
+
+		display.asyncExec(() -> {
+			// Run in UI
+
+			// Don't wipe out the message for a search which was just done
+			if (this.view.getLastSearchDoneTime() < System.currentTimeMillis() - MESSAGE_DELAY) {
+				this.view.setMessage(message);
+			}
+		});
 	}
 }
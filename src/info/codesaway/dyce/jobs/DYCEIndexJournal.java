@@ -0,0 +1,248 @@
+package info.codesaway.dyce.jobs;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.lucene.index.Term;
+
+import info.codesaway.dyce.indexer.PathWithAttributes;
+import info.codesaway.util.indexer.PathWithTerm;
+
+/**
+ * Append-only journal of the work queued for the index job
+ *
+ * <p>
+ * If Eclipse closes (or crashes) before the work is done, the work still
+ * outstanding is read back when the view is next created, instead of checking
+ * every file
+ * </p>
+ *
+ * <p>
+ * Each line is one of
+ * </p>
+ * <ul>
+ * <li>I (tab) project (tab) pathname - index the file</li>
+ * <li>D (tab) pathname - delete the file's documents</li>
+ * <li>R - check every file (incremental rebuild)</li>
+ * </ul>
+ */
+public class DYCEIndexJournal {
+	private static final String INDEX = "I";
+	private static final String DELETE = "D";
+	private static final String REBUILD = "R";
+
+	private static final String SEPARATOR = "\t";
+
+	private final Path path;
+
+	public DYCEIndexJournal(final Path path) {
+		this.path = path;
+	}
+
+	/**
+	 * Indicates if the journal exists
+	 *
+	 * <p>
+	 * The journal is truncated (not deleted) once the work is done, so if it
+	 * doesn't exist, the index was never tracked by the journal
+	 * </p>
+	 */
+	public boolean exists() {
+		return Files.exists(this.path);
+	}
+
+	/**
+	 * Add the work to the end of the journal
+	 */
+	public void append(final boolean incrementalRebuildIndex, final Collection<PathWithAttributes> indexPaths,
+			final Collection<Term> deleteDocuments) throws IOException {
+		if (!incrementalRebuildIndex && indexPaths.isEmpty() && deleteDocuments.isEmpty()) {
+			return;
+		}
+
+		this.write(this.path, incrementalRebuildIndex, indexPaths, deleteDocuments, StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+	}
+
+	/**
+	 * Replace the journal with just the work still outstanding
+	 *
+	 * <p>
+	 * If there is no work outstanding, truncates the journal
+	 * </p>
+	 */
+	public void rewrite(final boolean incrementalRebuildIndex, final Collection<PathWithAttributes> indexPaths,
+			final Collection<Term> deleteDocuments) throws IOException {
+		// Only replace the journal once the new one is fully written
+		Path tempPath = this.path.resolveSibling(this.path.getFileName() + ".tmp");
+
+		this.write(tempPath, incrementalRebuildIndex, indexPaths, deleteDocuments, StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+
+		try {
+			Files.move(tempPath, this.path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(tempPath, this.path, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	/**
+	 * Delete the journal (such as if couldn't write to it, so it may be missing
+	 * work)
+	 */
+	public void delete() {
+		try {
+			Files.deleteIfExists(this.path);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	private void write(final Path path, final boolean incrementalRebuildIndex,
+			final Collection<PathWithAttributes> indexPaths, final Collection<Term> deleteDocuments,
+			final OpenOption... options) throws IOException {
+		StringBuilder lines = new StringBuilder();
+
+		if (incrementalRebuildIndex) {
+			lines.append(REBUILD).append('\n');
+		}
+
+		for (PathWithAttributes indexPath : indexPaths) {
+			appendLine(lines, INDEX, indexPath.getProject(), indexPath.getPathname());
+		}
+
+		for (Term term : deleteDocuments) {
+			appendLine(lines, DELETE, term.text());
+		}
+
+		try (FileChannel channel = FileChannel.open(path, options)) {
+			ByteBuffer buffer = StandardCharsets.UTF_8.encode(lines.toString());
+
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+
+			// Make sure the work is on disk before indexing it
+			channel.force(false);
+		}
+	}
+
+	private static void appendLine(final StringBuilder lines, final String... values) {
+		for (String value : values) {
+			// Cannot write values which would break up the line
+			// (extremely unlikely in a pathname; these files will be found the next time every file is checked)
+			if (value.indexOf('\n') != -1 || value.indexOf('\r') != -1 || value.contains(SEPARATOR)) {
+				return;
+			}
+		}
+
+		lines.append(String.join(SEPARATOR, values)).append('\n');
+	}
+
+	/**
+	 * Read the work in the journal
+	 *
+	 * <p>
+	 * If a file is in the journal multiple times, only the last entry is used
+	 * (such as if a file was modified then deleted)
+	 * </p>
+	 */
+	public Entries read() throws IOException {
+		boolean incrementalRebuildIndex = false;
+
+		// Last entry for each pathname (either the path to index or the term to delete)
+		Map<String, Object> entries = new LinkedHashMap<>();
+
+		try (BufferedReader reader = Files.newBufferedReader(this.path, StandardCharsets.UTF_8)) {
+			String line;
+
+			while ((line = reader.readLine()) != null) {
+				String[] values = line.split(SEPARATOR, -1);
+
+				switch (values[0]) {
+				case REBUILD:
+					incrementalRebuildIndex = true;
+					break;
+				case INDEX:
+					if (values.length == 3) {
+						entries.remove(values[2]);
+						entries.put(values[2], PathWithAttributes.of(values[1], Paths.get(values[2])));
+					}
+					break;
+				case DELETE:
+					if (values.length == 2) {
+						entries.remove(values[1]);
+						entries.put(values[1], PathWithTerm.getTerm(values[1]));
+					}
+					break;
+				default:
+					// Ignore lines which aren't complete (such as if Eclipse crashed while writing)
+					break;
+				}
+			}
+		} catch (NoSuchFileException e) {
+			// No work outstanding
+		}
+
+		List<PathWithAttributes> indexPaths = new ArrayList<>();
+		List<Term> deleteDocuments = new ArrayList<>();
+
+		for (Object entry : entries.values()) {
+			if (entry instanceof PathWithAttributes) {
+				indexPaths.add((PathWithAttributes) entry);
+			} else {
+				deleteDocuments.add((Term) entry);
+			}
+		}
+
+		return new Entries(incrementalRebuildIndex, indexPaths, deleteDocuments);
+	}
+
+	/**
+	 * Work read from the journal
+	 */
+	public static class Entries {
+		private final boolean incrementalRebuildIndex;
+		private final List<PathWithAttributes> indexPaths;
+		private final List<Term> deleteDocuments;
+
+		Entries(final boolean incrementalRebuildIndex, final List<PathWithAttributes> indexPaths,
+				final List<Term> deleteDocuments) {
+			this.incrementalRebuildIndex = incrementalRebuildIndex;
+			this.indexPaths = indexPaths;
+			this.deleteDocuments = deleteDocuments;
+		}
+
+		public boolean isIncrementalRebuildIndex() {
+			return this.incrementalRebuildIndex;
+		}
+
+		public List<PathWithAttributes> getIndexPaths() {
+			return this.indexPaths;
+		}
+
+		public List<Term> getDeleteDocuments() {
+			return this.deleteDocuments;
+		}
+
+		public boolean isEmpty() {
+			return !this.incrementalRebuildIndex && this.indexPaths.isEmpty() && this.deleteDocuments.isEmpty();
+		}
+	}
+}
@@ -0,0 +1,142 @@
+package info.codesaway.dyce.jobs;
+
+import java.io.IOException;
+import java.text.NumberFormat;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.queryparser.classic.MultiFieldQueryParser;
+import org.apache.lucene.queryparser.classic.ParseException;
+import org.apache.lucene.queryparser.flexible.core.QueryNodeException;
+import org.apache.lucene.queryparser.flexible.standard.StandardQueryParser;
+import org.apache.lucene.queryparser.flexible.standard.config.PointsConfig;
+import org.apache.lucene.queryparser.flexible.standard.config.StandardQueryConfigHandler.Operator;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.BoostQuery;
+import org.apache.lucene.search.Query;
+import org.eclipse.jdt.annotation.Nullable;
+
+import info.codesaway.dyce.DYCESearch;
+import info.codesaway.dyce.util.DYCEUtilities;
+import info.codesaway.util.indexer.LuceneStep;
+
+/**
+ * Turns a search into the query to run
+ *
+ * <p>
+ * The analyzer and the queries which are the same for every search are
+ * created once (the first time a search is run), so each search only parses
+ * the text being searched for. The analyzer and queries are thread-safe; the
+ * query parsers aren't, so each thread has its own.
+ * </p>
+ */
+final class DYCEQueryCompiler {
+	private static final String[] CONTENT_AND_COMMENT_FIELDS = { "content", "comment" };
+
+	@Nullable
+	private static volatile DYCEQueryCompiler INSTANCE;
+
+	private final Analyzer analyzer;
+	private final Map<String, PointsConfig> pointsConfigMap;
+
+	private final Query commentedOutQuery;
+	private final Query lowPriorityQuery;
+
+	private final ThreadLocal<StandardQueryParser> standardQueryParsers;
+	private final ThreadLocal<MultiFieldQueryParser> multiFieldQueryParsers;
+
+	private DYCEQueryCompiler() throws IOException, QueryNodeException {
+		// TODO: Handle abbreviation versus normal (such as esht for
+		// escheat)
+		// Reference: https://www.baeldung.com/lucene-analyzers
+		this.analyzer = DYCEUtilities.createAnalyzer(LuceneStep.QUERY);
+
+		// TODO: how to support this using Classic parser, which doesn't support this
+
+		// Allow searching for numeric range on "line" field
+		// https://github.com/apache/lucene-solr/blob/master/lucene/queryparser/src/test/org/apache/lucene/queryparser/flexible/standard/TestPointQueryParser.java
+		Map<String, PointsConfig> pointsConfigMap = new HashMap<>();
+		pointsConfigMap.put("line", new PointsConfig(NumberFormat.getIntegerInstance(Locale.ROOT), Integer.class));
+		this.pointsConfigMap = Collections.unmodifiableMap(pointsConfigMap);
+
+		this.standardQueryParsers = ThreadLocal.withInitial(() -> {
+			StandardQueryParser standardQueryParser = new StandardQueryParser(this.analyzer);
+			standardQueryParser.setPointsConfigMap(this.pointsConfigMap);
+			return standardQueryParser;
+		});
+
+		this.multiFieldQueryParsers = ThreadLocal
+				.withInitial(() -> new MultiFieldQueryParser(CONTENT_AND_COMMENT_FIELDS, this.analyzer));
+
+		StandardQueryParser standardQueryParser = this.getStandardQueryParser(Operator.AND);
+
+		// Set commented out lines as lower priority
+		// (whereas Javadoc keeps the same priority)
+		String commentedOutQueryText = "*:*" + " AND NOT comment";
+		this.commentedOutQuery = standardQueryParser.parse(commentedOutQueryText, "type");
+
+		// Mark as lower priority for search
+		// (acts as a "not in")
+		// https://stackoverflow.com/a/12109781
+		String lowPriorityQueryText = "*:*" + " AND NOT import" + " AND NOT empty" + " AND NOT \"close brace\""
+				+ " AND NOT symbols" + " AND NOT \"else line\"" + " AND NOT \"return null\""
+				+ " AND NOT \"return void\"";
+		this.lowPriorityQuery = standardQueryParser.parse(lowPriorityQueryText, "type");
+	}
+
+	/**
+	 * Get the compiler (created the first time it's used)
+	 */
+	static DYCEQueryCompiler get() throws IOException, QueryNodeException {
+		DYCEQueryCompiler compiler = INSTANCE;
+
+		if (compiler == null) {
+			synchronized (DYCEQueryCompiler.class) {
+				compiler = INSTANCE;
+
+				if (compiler == null) {
+					compiler = new DYCEQueryCompiler();
+					INSTANCE = compiler;
+				}
+			}
+		}
+
+		return compiler;
+	}
+
+	private StandardQueryParser getStandardQueryParser(final Operator defaultOperator) {
+		StandardQueryParser standardQueryParser = this.standardQueryParsers.get();
+		standardQueryParser.setDefaultOperator(defaultOperator);
+		return standardQueryParser;
+	}
+
+	/**
+	 * Create the query to run for the search
+	 */
+	Query compile(final DYCESearch search) throws QueryNodeException, ParseException {
+		Query query;
+		if (search.shouldIncludeComments()) {
+			MultiFieldQueryParser multiFieldQueryParser = this.multiFieldQueryParsers.get();
+			multiFieldQueryParser.setDefaultOperator(search.getClassicDefaultOperator());
+
+			query = multiFieldQueryParser.parse(search.getText());
+		} else {
+			query = this.getStandardQueryParser(search.getDefaultOperator()).parse(search.getText(), "content");
+		}
+
+		BooleanQuery.Builder builder = new BooleanQuery.Builder()
+				.add(new BoostQuery(query, 1f), BooleanClause.Occur.MUST)
+				.add(new BoostQuery(this.commentedOutQuery, 0.5f), BooleanClause.Occur.SHOULD)
+				.add(new BoostQuery(this.lowPriorityQuery, 0.75f), BooleanClause.Occur.SHOULD);
+
+		if (search.getExtraQuery().isPresent()) {
+			builder.add(search.getExtraQuery().get(), BooleanClause.Occur.SHOULD);
+		}
+
+		return builder.build();
+	}
+}
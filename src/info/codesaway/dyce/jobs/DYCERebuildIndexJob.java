@@ -0,0 +1,78 @@
+package info.codesaway.dyce.jobs;
+
+import java.io.IOException;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.jdt.annotation.Nullable;
+import org.eclipse.swt.widgets.Display;
+
+import info.codesaway.dyce.DYCEView;
+import info.codesaway.dyce.indexer.DYCEIndexStatistics;
+import info.codesaway.dyce.indexer.DYCEIndexer;
+
+/**
+ * Rebuilds the entire index next to the workspace index, then has the index
+ * job swap it in
+ *
+ * <p>
+ * Separate from the index job, so searches and indexing modified files keep
+ * using the existing index while rebuilding (and modifying a file doesn't
+ * cancel the rebuild)
+ * </p>
+ */
+public class DYCERebuildIndexJob extends Job {
+	private final DYCEView view;
+	private final DYCEIndexJob indexJob;
+
+	public DYCERebuildIndexJob(final DYCEView view, final DYCEIndexJob indexJob) {
+		super("DYCE Rebuilding Index");
+
+		this.view = view;
+		this.indexJob = indexJob;
+		this.setPriority(Job.LONG);
+	}
+
+	@Override
+	protected IStatus run(final IProgressMonitor monitor) {
+		if (monitor.isCanceled()) {
+			return Status.CANCEL_STATUS;
+		}
+
+		@Nullable
+		Display display = this.view.getDisplay();
+
+		try {
+			DYCEIndexStatistics statistics = new DYCEIndexStatistics();
+			String message = DYCEIndexer.bulkRebuildIndex(monitor, statistics);
+
+			// Index job swaps in the rebuilt index
+			// (then indexes any files modified while rebuilding)
+			this.indexJob.scheduleSwapInRebuiltIndex();
+
+			if (display != null) {
+				display.asyncExec(() -> {
+					// Run in UI
+					this.view.setMessage(message);
+					this.view.setIndexStatistics(statistics);
+				});
+			}
+
+			return Status.OK_STATUS;
+		} catch (IOException e) {
+			if (display != null) {
+				display.syncExec(() -> {
+					// Run in UI
+					this.view.setStatus(DYCEView.ERROR_STATUS);
+					this.view.setMessage("Could not rebuild index. Please try again later.");
+				});
+			}
+
+			e.printStackTrace();
+
+			return Status.OK_STATUS;
+		}
+	}
+}
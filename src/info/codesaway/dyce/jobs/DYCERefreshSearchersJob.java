@@ -0,0 +1,37 @@
+package info.codesaway.dyce.jobs;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+
+import info.codesaway.dyce.DYCESettings;
+
+/**
+ * Refreshes the searcher managers, so searches see the latest changes to the
+ * indexes
+ *
+ * <p>
+ * Refreshing a near real-time searcher flushes the index writer's buffered
+ * documents, so is done in the background instead of on the UI thread
+ * </p>
+ */
+public class DYCERefreshSearchersJob extends Job {
+	public DYCERefreshSearchersJob() {
+		super("DYCE Refreshing Searchers");
+
+		this.setSystem(true);
+		this.setPriority(Job.SHORT);
+	}
+
+	@Override
+	protected IStatus run(final IProgressMonitor monitor) {
+		if (monitor.isCanceled()) {
+			return Status.CANCEL_STATUS;
+		}
+
+		DYCESettings.maybeRefreshSearcherManagers();
+
+		return Status.OK_STATUS;
+	}
+}
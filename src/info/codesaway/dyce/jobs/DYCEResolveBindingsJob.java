@@ -0,0 +1,75 @@
+package info.codesaway.dyce.jobs;
+
+import java.io.IOException;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.jdt.annotation.Nullable;
+import org.eclipse.swt.widgets.Display;
+
+import info.codesaway.dyce.DYCEView;
+import info.codesaway.dyce.indexer.DYCEIndexStatistics;
+import info.codesaway.dyce.indexer.DYCEIndexer;
+
+/**
+ * Resolves the bindings for the Java files indexed without them, so their
+ * methods include the declaring type and signature
+ *
+ * <p>
+ * Runs at a low priority after indexing (see
+ * DYCESettings.SHOULD_RESOLVE_BINDINGS_IN_BACKGROUND). Uses the same rule as
+ * the index job, so the two never write to the index at the same time; the
+ * index job cancels this job when there are files to index, so they aren't
+ * held up.
+ * </p>
+ */
+public class DYCEResolveBindingsJob extends Job {
+	private final DYCEView view;
+
+	public DYCEResolveBindingsJob(final DYCEView view) {
+		super("DYCE Resolving Bindings");
+
+		this.view = view;
+		this.setPriority(Job.DECORATE);
+		this.setRule(DYCEIndexJob.INDEX_WRITER_RULE);
+	}
+
+	@Override
+	protected IStatus run(final IProgressMonitor monitor) {
+		if (monitor.isCanceled()) {
+			return Status.CANCEL_STATUS;
+		}
+
+		@Nullable
+		Display display = this.view.getDisplay();
+
+		try {
+			DYCEIndexStatistics statistics = new DYCEIndexStatistics();
+			int resolvedCount = DYCEIndexer.resolveBindings(monitor, statistics);
+
+			if (resolvedCount > 0 && display != null) {
+				String message = resolvedCount == 1 ? "Resolved bindings for 1 file."
+						: String.format("Resolved bindings for %,d files.", resolvedCount);
+
+				display.asyncExec(() -> {
+					// Run in UI
+					this.view.setMessage(message);
+					this.view.setIndexStatistics(statistics);
+				});
+			}
+
+			return Status.OK_STATUS;
+		} catch (OperationCanceledException e) {
+			// Resolves the rest the next time runs
+			return Status.CANCEL_STATUS;
+		} catch (IOException e) {
+			// Resolves them the next time runs
+			e.printStackTrace();
+
+			return Status.OK_STATUS;
+		}
+	}
+}
@@ -3,32 +3,23 @@ package info.codesaway.dyce.jobs;
 import static info.codesaway.util.indexer.IndexerUtilities.FULL_PATH_FIELD;
 
 import java.io.IOException;
-import java.text.NumberFormat;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Locale;
-import java.util.Map;
 
-import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.document.Document;
-import org.apache.lucene.queryparser.classic.MultiFieldQueryParser;
+import org.apache.lucene.index.ExitableDirectoryReader.ExitingReaderException;
 import org.apache.lucene.queryparser.classic.ParseException;
 import org.apache.lucene.queryparser.flexible.core.QueryNodeException;
-import org.apache.lucene.queryparser.flexible.standard.StandardQueryParser;
-import org.apache.lucene.queryparser.flexible.standard.config.PointsConfig;
-import org.apache.lucene.search.BooleanClause;
-import org.apache.lucene.search.BooleanQuery;
-import org.apache.lucene.search.BoostQuery;
-import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.ScoreDoc;
-import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.search.Sort;
 import org.apache.lucene.search.TopDocs;
 import org.apache.lucene.search.TotalHits.Relation;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
 import org.eclipse.core.runtime.Status;
 import org.eclipse.core.runtime.jobs.Job;
 import org.eclipse.jdt.annotation.Nullable;
@@ -36,21 +27,27 @@ import org.eclipse.swt.widgets.Display;
 
 import info.codesaway.dyce.DYCESearch;
 import info.codesaway.dyce.DYCESearchResult;
+import info.codesaway.dyce.DYCESearchResultCache;
 import info.codesaway.dyce.DYCESearchResultEntry;
 import info.codesaway.dyce.DYCESettings;
 import info.codesaway.dyce.DYCEView;
-import info.codesaway.dyce.util.DYCEUtilities;
-import info.codesaway.util.indexer.LuceneStep;
+import info.codesaway.dyce.indexer.DYCEIndexer;
 
 public class DYCESearchJob extends Job {
 
 	private final DYCEView view;
 	private DYCESearch currentSearch;
-	// TODO: implement so when get to end to search after and append these
-	// results to the existing results
+	// Last hit of the prior page, when getting the next page of results
+	// (the results are then appended to the existing results)
 	private ScoreDoc searchAfter;
-
-	private static final String[] CONTENT_AND_COMMENT_FIELDS = { "content", "comment" };
+	// Number of results already shown (used to number the next page)
+	private int resultOffset;
+	// Changes each time a new search is scheduled (so a run can tell if its search was replaced)
+	private long searchGeneration;
+	// Searcher the current search's pages are from, kept until a new search
+	// (the next page starts after the last hit of the prior page, so must search the same version of the indexes)
+	@Nullable
+	private DYCEFederatedSearcher pagedSearcher;
 
 	public DYCESearchJob(final DYCEView view) {
 		super("DYCE Searching");
@@ -177,13 +174,69 @@ public class DYCESearchJob extends Job {
 		}
 	}
 
-	private void schedule(final DYCESearch search) {
+	private synchronized void schedule(final DYCESearch search) {
 		this.currentSearch = search;
 		this.searchAfter = null;
+		this.resultOffset = 0;
+		this.searchGeneration++;
+		this.releasePagedSearcher();
 
 		this.schedule(search.getDelay());
 	}
 
+	/**
+	 * Release the searcher the current search's pages are from (such as once
+	 * a new search is done)
+	 */
+	public synchronized void releasePagedSearcher() {
+		if (this.pagedSearcher != null) {
+			closeQuietly(this.pagedSearcher);
+			this.pagedSearcher = null;
+		}
+	}
+
+	/**
+	 * Keep the searcher to get the next pages of the search (closes it
+	 * instead, if a new search was scheduled since)
+	 */
+	private synchronized void keepPagedSearcher(final DYCEFederatedSearcher searcher, final long searchGeneration) {
+		if (searchGeneration == this.searchGeneration && this.pagedSearcher == null) {
+			this.pagedSearcher = searcher;
+		} else {
+			closeQuietly(searcher);
+		}
+	}
+
+	private static void closeQuietly(final DYCEFederatedSearcher searcher) {
+		try {
+			searcher.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Get the next page of results, which are appended to the existing results
+	 *
+	 * @param result the last page of results
+	 * @param resultOffset the number of results already shown
+	 */
+	public synchronized void scheduleNextPage(final DYCESearchResult result, final int resultOffset) {
+		ScoreDoc lastDocument = result.getLastDocument();
+
+		// Ignore if a new search was done since
+		if (lastDocument == null || !result.getSearch().equals(this.currentSearch)) {
+			return;
+		}
+
+		this.cancel();
+		this.currentSearch = result.getSearch();
+		this.searchAfter = lastDocument;
+		this.resultOffset = resultOffset;
+
+		this.schedule();
+	}
+
 	@Override
 	protected IStatus run(final IProgressMonitor monitor) {
 		if (monitor.isCanceled()) {
@@ -192,7 +245,53 @@ public class DYCESearchJob extends Job {
 
 		Display display = this.view.getDisplay();
 
+		// Scheduling a new search changes the current search
+		// (so keep the search this run is for)
+		DYCESearch search;
+		ScoreDoc searchAfter;
+		int resultOffset;
+		long searchGeneration;
+		DYCEFederatedSearcher searcher;
+
+		synchronized (this) {
+			search = this.currentSearch;
+			searchAfter = this.searchAfter;
+			resultOffset = this.resultOffset;
+			searchGeneration = this.searchGeneration;
+
+			// Used by this run (kept again once done, if still the current search)
+			searcher = this.pagedSearcher;
+			this.pagedSearcher = null;
+		}
+
+		if (searchAfter != null && searcher == null) {
+			// Searcher for the prior pages was released, so the last hit may not be from the current indexes
+			// (start over from the first page)
+			searchAfter = null;
+			resultOffset = 0;
+		}
+
+		// Whether the next page was shown (if getting it is canceled or fails, scrolling tries getting it again)
+		boolean isNextPageDone = searchAfter == null;
+		// Whether to keep the searcher, to get the search's next pages
+		// (if getting the next page is canceled or fails, keep it to try again)
+		boolean shouldKeepSearcher = searchAfter != null;
+
 		try {
+			if (searcher == null) {
+				searcher = DYCEFederatedSearcher.acquire(search.getSearcher(), monitor);
+
+				if (searcher == null) {
+					String message = "Cannot query until index is initialized. Your query will run shortly.";
+					showResult(display, search, new DYCESearchResult(search, Collections.emptyList(), message, false,
+							null));
+					return Status.OK_STATUS;
+				}
+			} else {
+				// Searcher was acquired by an earlier run (so stop searching once this run is canceled)
+				searcher.setMonitor(monitor);
+			}
+
 			// System.out.println("Searching for " + this.searchText);
 
 			// display.syncExec(() -> {
@@ -205,12 +304,13 @@ public class DYCESearchJob extends Job {
 			// });
 
 			//			System.out.println("Run: " + this.currentSearch);
-			// TODO: implement
-			DYCESearchResult result = search(this.currentSearch, this.searchAfter);
-			//			this.searchAfter = result.getLastDocument();
+			DYCESearchResult result = search(search, searcher, searchAfter, resultOffset);
 
 			//			System.out.println("Result count: " + result.getResults().size());
 
+			// Only need the searcher if there are more pages
+			shouldKeepSearcher = result.getLastDocument() != null;
+
 			if (monitor.isCanceled()) {
 				return Status.CANCEL_STATUS;
 			}
@@ -222,39 +322,22 @@ public class DYCESearchJob extends Job {
 			// TODO: implement
 			//			this.view.setIndexCreated(this.result.isIndexCreated());
 
-			if (display != null) {
-				display.syncExec(() -> {
-					// Run in UI
-					List<DYCESearchResultEntry> resultsList = result.getResults();
-
-					this.view.setResults(resultsList);
-
-					if (!resultsList.isEmpty()) {
-						if (this.currentSearch.shouldSelectFirstResult()) {
-							this.view.selectAndRevealTopResult();
-						} else {
-							// Show top of results (since if at end when ran
-							// last query, would likely want
-							// to see the top result when perform a search)
-							// Don't want to select item, just want to reveal it
-							this.view.revealTopResult();
-						}
-					}
-
-					//				this.view.setLastSearchDoneTime(System.currentTimeMillis());
-
-					if (this.view.getStatus().equals(DYCEView.ERROR_STATUS)) {
-						if (DYCEView.isIndexing()) {
-							//							this.view.setStatus(DYCEView.INDEXING_STATUS);
-						} else {
-							this.view.setStatus("");
-						}
-					}
+			if (searchAfter != null) {
+				if (display != null) {
+					display.syncExec(() -> {
+						// Run in UI
+						this.view.appendResults(result);
+					});
+				}
 
-					// TODO: implement
-					//					this.view.setMessage(this.result.getMessage());
-				});
+				isNextPageDone = true;
+				return Status.OK_STATUS;
 			}
+
+			showResult(display, search, result);
+		} catch (ExitingReaderException | OperationCanceledException e) {
+			// Search was replaced by a newer search (such as typed another character)
+			return Status.CANCEL_STATUS;
 		} catch (IOException e) {
 			e.printStackTrace();
 			if (display != null) {
@@ -275,235 +358,290 @@ public class DYCESearchJob extends Job {
 					this.view.setMessage("Search query is not valid.");
 				});
 			}
+		} finally {
+			if (searcher != null) {
+				if (shouldKeepSearcher) {
+					this.keepPagedSearcher(searcher, searchGeneration);
+				} else {
+					closeQuietly(searcher);
+				}
+			}
+
+			if (!isNextPageDone && display != null) {
+				// Such as if canceled or couldn't search (so scrolling tries getting the next page again)
+				display.asyncExec(this.view::nextPageFailed);
+			}
 		}
 
 		return Status.OK_STATUS;
 	}
 
+	/**
+	 * Show the first page of results
+	 */
+	private void showResult(@Nullable final Display display, final DYCESearch search,
+			final DYCESearchResult result) {
+		if (display != null) {
+			display.syncExec(() -> {
+				// Run in UI
+				List<DYCESearchResultEntry> resultsList = result.getResults();
+
+				this.view.setResults(result);
+
+				if (!resultsList.isEmpty()) {
+					if (search.shouldSelectFirstResult()) {
+						this.view.selectAndRevealTopResult();
+					} else {
+						// Show top of results (since if at end when ran
+						// last query, would likely want
+						// to see the top result when perform a search)
+						// Don't want to select item, just want to reveal it
+						this.view.revealTopResult();
+					}
+				}
+
+				//				this.view.setLastSearchDoneTime(System.currentTimeMillis());
+
+				if (this.view.getStatus().equals(DYCEView.ERROR_STATUS)) {
+					if (DYCEView.isIndexing()) {
+						//							this.view.setStatus(DYCEView.INDEXING_STATUS);
+					} else {
+						this.view.setStatus("");
+					}
+				}
+
+				// TODO: implement
+				//					this.view.setMessage(this.result.getMessage());
+			});
+		}
+	}
+
 	public static DYCESearchResult search(final DYCESearch search, @Nullable final ScoreDoc searchAfter)
 			throws IOException, QueryNodeException, ParseException {
+		return search(search, searchAfter, 0, new NullProgressMonitor());
+	}
+
+	/**
+	 * Search the searcher's indexes
+	 *
+	 * <p>
+	 * If the monitor is cancelled while searching, stops expanding the query's
+	 * terms (such as for a wildcard) and collecting hits, then throws an
+	 * ExitingReaderException or OperationCanceledException
+	 * </p>
+	 *
+	 * @param searchAfter the last hit of the prior page, to get the next page
+	 *            (<code>null</code> to get the first page)
+	 * @param resultOffset the number of results in the prior pages
+	 */
+	public static DYCESearchResult search(final DYCESearch search, @Nullable final ScoreDoc searchAfter,
+			final int resultOffset, final IProgressMonitor monitor)
+			throws IOException, QueryNodeException, ParseException {
 
 		// TODO: add menu option to do full reindex
 
 		// https://www.baeldung.com/lucene
 		// https://howtodoinjava.com/lucene/lucene-index-search-examples/
 
-		// TODO: make more generic to handle multiple SearchManagers
-		SearcherManager searcherManager = DYCESettings
-				.getSearcherManager(search.getSearcher().getIndexPath());
+		// Searches each index at the same time (such as the workspace and each source archive)
+		// (each archive has its own index, so rebuilding the workspace index doesn't reindex them)
+		DYCEFederatedSearcher searcher = DYCEFederatedSearcher.acquire(search.getSearcher(), monitor);
 
-		if (searcherManager == null) {
+		if (searcher == null) {
 			String message = "Cannot query until index is initialized. Your query will run shortly.";
 			return new DYCESearchResult(search, Collections.emptyList(), message, false, null);
 		}
 
-		IndexSearcher searcher = searcherManager.acquire();
-
-		List<DYCESearchResultEntry> results = new ArrayList<>();
-		String message;
-		ScoreDoc lastDocument = null;
 		try {
-			// TODO: Handle abbreviation versus normal (such as esht for
-			// escheat)
-			// Reference: https://www.baeldung.com/lucene-analyzers
-			Analyzer analyzer = DYCEUtilities.createAnalyzer(LuceneStep.QUERY);
-
-			// StandardQueryTreeBuilder builder = new
-			// StandardQueryTreeBuilder();
-			// builder.set
-
-			StandardQueryParser standardQueryParser = new StandardQueryParser(analyzer);
-			standardQueryParser.setDefaultOperator(search.getDefaultOperator());
-
-			// TODO: how to support this using Classic parser, which doesn't support this
-
-			// Allow searching for numeric range on "line" field
-			// https://github.com/apache/lucene-solr/blob/master/lucene/queryparser/src/test/org/apache/lucene/queryparser/flexible/standard/TestPointQueryParser.java
-			Map<String, PointsConfig> pointsConfigMap = new HashMap<>();
-			pointsConfigMap.put("line", new PointsConfig(NumberFormat.getIntegerInstance(Locale.ROOT), Integer.class));
+			return search(search, searcher, searchAfter, resultOffset);
+		} finally {
+			searcher.close();
+		}
+	}
 
-			standardQueryParser.setPointsConfigMap(pointsConfigMap);
+	/**
+	 * Search the searcher's indexes (doesn't close the searcher)
+	 *
+	 * @param searchAfter the last hit of the prior page, to get the next page
+	 *            (<code>null</code> to get the first page); must be from the
+	 *            same searcher
+	 * @param resultOffset the number of results in the prior pages
+	 */
+	private static DYCESearchResult search(final DYCESearch search, final DYCEFederatedSearcher searcher,
+			@Nullable final ScoreDoc searchAfter, final int resultOffset)
+			throws IOException, QueryNodeException, ParseException {
+		long archiveGeneration = searcher.getArchiveGeneration();
 
-			Query query;
-			if (search.shouldIncludeComments()) {
-				MultiFieldQueryParser multiFieldQueryParser = new MultiFieldQueryParser(CONTENT_AND_COMMENT_FIELDS,
-						analyzer);
-				multiFieldQueryParser.setDefaultOperator(search.getClassicDefaultOperator());
+		// Version of each index being searched, used to cache the results (null if cannot cache)
+		List<Long> indexVersions = searchAfter == null ? searcher.getVersions() : null;
 
-				query = multiFieldQueryParser.parse(search.getText());
-			} else {
-				query = standardQueryParser.parse(search.getText(), "content");
-			}
+		if (indexVersions != null) {
+			DYCESearchResult cachedResult = DYCESearchResultCache.get(search, indexVersions, archiveGeneration);
 
-			// Set commented out lines as lower priority
-			// (whereas Javadoc keeps the same priority)
-			String commentedOutQueryText = "*:*" + " AND NOT comment";
-			Query commentedOutQuery = standardQueryParser.parse(commentedOutQueryText, "type");
-
-			// Mark as lower priority for search
-			// (acts as a "not in")
-			// https://stackoverflow.com/a/12109781
-			String lowPriorityQueryText = "*:*" + " AND NOT import" + " AND NOT empty" + " AND NOT \"close brace\""
-					+ " AND NOT symbols" + " AND NOT \"else line\"" + " AND NOT \"return null\""
-					+ " AND NOT \"return void\"";
-			Query lowPriorityQuery = standardQueryParser.parse(lowPriorityQueryText, "type");
-
-			BooleanQuery.Builder builder = new BooleanQuery.Builder()
-					.add(new BoostQuery(query, 1f), BooleanClause.Occur.MUST)
-					.add(new BoostQuery(commentedOutQuery, 0.5f), BooleanClause.Occur.SHOULD)
-					.add(new BoostQuery(lowPriorityQuery, 0.75f), BooleanClause.Occur.SHOULD);
-
-			if (search.getExtraQuery().isPresent()) {
-				builder.add(search.getExtraQuery().get(), BooleanClause.Occur.SHOULD);
+			if (cachedResult != null) {
+				return cachedResult;
 			}
+		}
 
-			BooleanQuery booleanQuery = builder.build();
+		// First page shows the hit limit (later pages get more at a time, as scroll through the results)
+		int hitLimit = searchAfter == null ? search.getHitLimit()
+				: Math.max(search.getHitLimit(), DYCESettings.RESULT_PAGE_SIZE);
 
-			TopDocs hits;
-			if (searchAfter != null) {
-				hits = searcher.searchAfter(searchAfter, booleanQuery, search.getHitLimit());
+		List<DYCESearchResultEntry> results = new ArrayList<>();
+		String message;
+		ScoreDoc lastDocument = null;
+		long count;
+		boolean isRelationEqualTo;
+		// Only parses the search text (the rest of the query is created once)
+		Query query = DYCEQueryCompiler.get().compile(search);
+
+		// Most recent matches first (if the index is sorted the same way, only searches until has enough hits)
+		Sort sort = search.shouldSortByRecency() ? DYCEIndexer.RECENCY_SORT : null;
+		TopDocs hits = searcher.search(query, hitLimit, searchAfter, sort);
+
+		count = hits.totalHits.value;
+		isRelationEqualTo = hits.totalHits.relation == Relation.EQUAL_TO;
+
+		String totalResultsMessage;
+
+		if (isRelationEqualTo) {
+			if (count == 0) {
+				totalResultsMessage = "There are no results";
+			} else if (count == 1) {
+				totalResultsMessage = "Total Results: 1 hit";
+			} else if (count <= search.getHitLimit()) {
+				totalResultsMessage = "Total Results: " + count + " hits";
 			} else {
-				hits = searcher.search(booleanQuery, search.getHitLimit());
+				totalResultsMessage = String.format("Showing Results 1-%d of %d hits", search.getHitLimit(), count);
 			}
+		} else {
+			totalResultsMessage = String.format("Showing Results 1-%d of over %d hits", search.getHitLimit(),
+					count);
+		}
 
-			long count = hits.totalHits.value;
-			boolean isRelationEqualTo = hits.totalHits.relation == Relation.EQUAL_TO;
+		// 1/4/2020 - Don't need to show how long it took (it's fast, we get
+		// it)
+		// The time portion just distracts from the results
+		message = totalResultsMessage;
+
+		// message = String.format("%s (it took %s %s)%n",
+		// totalResultsMessage,
+		// seconds, secondsString);
+
+		/** Highlighter Code Start ****/
+		/*
+		 * //
+		 * https://howtodoinjava.com/lucene/lucene-search-highlight-example/
+		 *
+		 * //Uses HTML &lt;B&gt;&lt;/B&gt; tag to highlight the searched
+		 * terms Formatter formatter = new SimpleHTMLFormatter();
+		 *
+		 * //It scores text fragments by the number of unique query terms
+		 * found //Basically the matching score in layman terms QueryScorer
+		 * scorer = new QueryScorer(query);
+		 *
+		 * //used to markup highlighted terms found in the best sections of
+		 * a text Highlighter highlighter = new Highlighter(formatter,
+		 * scorer);
+		 *
+		 * //It breaks text up into same-size texts but does not split up
+		 * spans Fragmenter fragmenter = new SimpleSpanFragmenter(scorer,
+		 * 10);
+		 *
+		 * //breaks text up into same-size fragments with no concerns over
+		 * spotting sentence boundaries. //Fragmenter fragmenter = new
+		 * SimpleFragmenter(10);
+		 *
+		 * //set fragmenter to highlighter
+		 * highlighter.setTextFragmenter(fragmenter);
+		 *
+		 * //Iterate over found results for (ScoreDoc scoreDoc :
+		 * hits.scoreDocs) { int docid = scoreDoc.doc; Document doc =
+		 * searcher.doc(docid); String title =
+		 * doc.get(PathWithTerm.FULL_PATH_FIELD);
+		 *
+		 * //Printing - to which document result belongs System.out.println(
+		 * "Path " + " : " + title);
+		 *
+		 * //Get stored text from found document String text =
+		 * doc.get("content");
+		 *
+		 * //Create token stream // TokenStream stream =
+		 * TokenSources.getAnyTokenStream(searcher.getIndexReader(), docid,
+		 * "content", analyzer); TokenStream stream =
+		 * analyzer.tokenStream("content", text);
+		 *
+		 * //Get highlighted text fragments String[] frags; try { frags =
+		 * highlighter.getBestFragments(stream, text, 10); } catch
+		 * (InvalidTokenOffsetsException e) { e.printStackTrace(); frags =
+		 * new String[0]; } for (String frag : frags) {
+		 * System.out.println("=======================");
+		 * System.out.println(frag); } }
+		 */
+
+		int resultIndex = resultOffset;
+
+		if (hits.scoreDocs.length > 0) {
+			lastDocument = hits.scoreDocs[hits.scoreDocs.length - 1];
+		}
 
-			String totalResultsMessage;
+		Document[] documents = searcher.readDisplayFields(hits.scoreDocs);
 
-			if (isRelationEqualTo) {
-				if (count == 0) {
-					totalResultsMessage = "There are no results";
-				} else if (count == 1) {
-					totalResultsMessage = "Total Results: 1 hit";
-				} else if (count <= search.getHitLimit()) {
-					totalResultsMessage = "Total Results: " + count + " hits";
-				} else {
-					totalResultsMessage = String.format("Showing Results 1-%d of %d hits", search.getHitLimit(), count);
-				}
+		for (Document d : documents) {
+			String path = d.get(FULL_PATH_FIELD);
+			String file = d.get("file");
+			String element = d.get("element");
+			String line = d.get("line");
+			String type = d.get("type");
+			// String date = d.get("date");
+			String content = d.get("content");
+			String extension = d.get("ext");
+
+			if (content != null) {
+				content = content.trim();
 			} else {
-				totalResultsMessage = String.format("Showing Results 1-%d of over %d hits", search.getHitLimit(),
-						count);
+				content = "";
 			}
 
-			// 1/4/2020 - Don't need to show how long it took (it's fast, we get
-			// it)
-			// The time portion just distracts from the results
-			message = totalResultsMessage;
-
-			// message = String.format("%s (it took %s %s)%n",
-			// totalResultsMessage,
-			// seconds, secondsString);
-
-			/** Highlighter Code Start ****/
-			/*
-			 * //
-			 * https://howtodoinjava.com/lucene/lucene-search-highlight-example/
-			 *
-			 * //Uses HTML &lt;B&gt;&lt;/B&gt; tag to highlight the searched
-			 * terms Formatter formatter = new SimpleHTMLFormatter();
-			 *
-			 * //It scores text fragments by the number of unique query terms
-			 * found //Basically the matching score in layman terms QueryScorer
-			 * scorer = new QueryScorer(query);
-			 *
-			 * //used to markup highlighted terms found in the best sections of
-			 * a text Highlighter highlighter = new Highlighter(formatter,
-			 * scorer);
-			 *
-			 * //It breaks text up into same-size texts but does not split up
-			 * spans Fragmenter fragmenter = new SimpleSpanFragmenter(scorer,
-			 * 10);
-			 *
-			 * //breaks text up into same-size fragments with no concerns over
-			 * spotting sentence boundaries. //Fragmenter fragmenter = new
-			 * SimpleFragmenter(10);
-			 *
-			 * //set fragmenter to highlighter
-			 * highlighter.setTextFragmenter(fragmenter);
-			 *
-			 * //Iterate over found results for (ScoreDoc scoreDoc :
-			 * hits.scoreDocs) { int docid = scoreDoc.doc; Document doc =
-			 * searcher.doc(docid); String title =
-			 * doc.get(PathWithTerm.FULL_PATH_FIELD);
-			 *
-			 * //Printing - to which document result belongs System.out.println(
-			 * "Path " + " : " + title);
-			 *
-			 * //Get stored text from found document String text =
-			 * doc.get("content");
-			 *
-			 * //Create token stream // TokenStream stream =
-			 * TokenSources.getAnyTokenStream(searcher.getIndexReader(), docid,
-			 * "content", analyzer); TokenStream stream =
-			 * analyzer.tokenStream("content", text);
-			 *
-			 * //Get highlighted text fragments String[] frags; try { frags =
-			 * highlighter.getBestFragments(stream, text, 10); } catch
-			 * (InvalidTokenOffsetsException e) { e.printStackTrace(); frags =
-			 * new String[0]; } for (String frag : frags) {
-			 * System.out.println("=======================");
-			 * System.out.println(frag); } }
-			 */
-
-			int resultIndex = 0;
-
-			if (hits.scoreDocs.length > 0) {
-				lastDocument = hits.scoreDocs[hits.scoreDocs.length - 1];
+			if (element == null) {
+				element = "";
 			}
 
-			for (ScoreDoc sd : hits.scoreDocs) {
-				Document d = searcher.doc(sd.doc);
-				String path = d.get(FULL_PATH_FIELD);
-				String file = d.get("file");
-				String element = d.get("element");
-				String line = d.get("line");
-				String type = d.get("type");
-				// String date = d.get("date");
-				String content = d.get("content");
-				String extension = d.get("ext");
-
-				if (content != null) {
-					content = content.trim();
-				} else {
-					content = "";
-				}
+			if (type == null) {
+				type = "";
+			}
 
-				if (element == null) {
-					element = "";
-				}
+			String comment = d.get("comment");
 
-				if (type == null) {
-					type = "";
-				}
+			if (comment != null && !comment.isEmpty()) {
+				// Show comment text after the content
+				// (so can focus attention on the content first)
+				content = content + " " + comment;
+			}
 
-				String comment = d.get("comment");
+			resultIndex++;
 
-				if (comment != null && !comment.isEmpty()) {
-					// Show comment text after the content
-					// (so can focus attention on the content first)
-					content = content + " " + comment;
-				}
+			results.add(
+					new DYCESearchResultEntry(resultIndex, file, element, line, content, type, path, extension));
 
-				resultIndex++;
+			// if (isTesting && type != null) {
+			// System.out.println("Type: " + type);
+			// }
 
-				results.add(
-						new DYCESearchResultEntry(resultIndex, file, element, line, content, type, path, extension));
+			// System.out.printf("%sFound match in (%s:%s)%s - %s%n", type
+			// != null ? "(" + type + ") " : "", file, line,
+			// date != null ? " for " + date : "",
+			// path);
+		}
 
-				// if (isTesting && type != null) {
-				// System.out.println("Type: " + type);
-				// }
+		// Results are shared with later searches, if cached
+		DYCESearchResult result = new DYCESearchResult(search, Collections.unmodifiableList(results), message, true,
+				lastDocument, count, isRelationEqualTo);
 
-				// System.out.printf("%sFound match in (%s:%s)%s - %s%n", type
-				// != null ? "(" + type + ") " : "", file, line,
-				// date != null ? " for " + date : "",
-				// path);
-			}
-		} finally {
-			searcherManager.release(searcher);
-			searcher = null;
+		if (indexVersions != null) {
+			DYCESearchResultCache.put(search, indexVersions, archiveGeneration, result);
 		}
 
-		return new DYCESearchResult(search, results, message, true, lastDocument);
+		return result;
 	}
 }
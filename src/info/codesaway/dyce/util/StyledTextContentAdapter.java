@@ -0,0 +1,50 @@
+package info.codesaway.dyce.util;
+
+import org.eclipse.jface.fieldassist.IControlContentAdapter;
+import org.eclipse.swt.custom.StyledText;
+import org.eclipse.swt.graphics.Point;
+import org.eclipse.swt.graphics.Rectangle;
+import org.eclipse.swt.widgets.Control;
+
+/**
+ * Lets content proposals (see ContentProposalAdapter) be used with a
+ * StyledText, such as the search box
+ */
+public class StyledTextContentAdapter implements IControlContentAdapter {
+	@Override
+	public String getControlContents(final Control control) {
+		return ((StyledText) control).getText();
+	}
+
+	@Override
+	public void setControlContents(final Control control, final String text, final int cursorPosition) {
+		StyledText styledText = (StyledText) control;
+		styledText.setText(text);
+		styledText.setCaretOffset(cursorPosition);
+	}
+
+	@Override
+	public void insertControlContents(final Control control, final String text, final int cursorPosition) {
+		StyledText styledText = (StyledText) control;
+		Point selection = styledText.getSelection();
+		styledText.insert(text);
+		styledText.setCaretOffset(selection.x + Math.min(cursorPosition, text.length()));
+	}
+
+	@Override
+	public int getCursorPosition(final Control control) {
+		return ((StyledText) control).getCaretOffset();
+	}
+
+	@Override
+	public Rectangle getInsertionBounds(final Control control) {
+		StyledText styledText = (StyledText) control;
+		Point caretLocation = styledText.getLocationAtOffset(styledText.getCaretOffset());
+		return new Rectangle(caretLocation.x, caretLocation.y, 1, styledText.getLineHeight());
+	}
+
+	@Override
+	public void setCursorPosition(final Control control, final int index) {
+		((StyledText) control).setCaretOffset(index);
+	}
+}
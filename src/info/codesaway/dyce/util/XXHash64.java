@@ -0,0 +1,113 @@
+package info.codesaway.dyce.util;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * xxHash64, a fast non-cryptographic hash
+ *
+ * <p>
+ * Used to tell if a file's contents changed (such as when only the last
+ * modified time changed)
+ * </p>
+ *
+ * @see <a href=
+ *      "https://github.com/Cyan4973/xxHash/blob/dev/doc/xxhash_spec.md">xxHash
+ *      specification</a>
+ */
+public final class XXHash64 {
+	private XXHash64() {
+		throw new UnsupportedOperationException();
+	}
+
+	private static final long PRIME64_1 = 0x9E3779B185EBCA87L;
+	private static final long PRIME64_2 = 0xC2B2AE3D27D4EB4FL;
+	private static final long PRIME64_3 = 0x165667B19E3779F9L;
+	private static final long PRIME64_4 = 0x85EBCA77C2B2AE63L;
+	private static final long PRIME64_5 = 0x27D4EB2F165667C5L;
+
+	/**
+	 * Hash the remaining bytes in the buffer (doesn't change the buffer's
+	 * position)
+	 *
+	 * @param buffer
+	 * @param seed
+	 * @return the hash
+	 */
+	public static long hash(final ByteBuffer buffer, final long seed) {
+		ByteBuffer input = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+
+		int position = input.position();
+		int end = input.limit();
+		int length = end - position;
+
+		long hash;
+
+		if (length >= 32) {
+			long v1 = seed + PRIME64_1 + PRIME64_2;
+			long v2 = seed + PRIME64_2;
+			long v3 = seed;
+			long v4 = seed - PRIME64_1;
+
+			int limit = end - 32;
+
+			do {
+				v1 = round(v1, input.getLong(position));
+				v2 = round(v2, input.getLong(position + 8));
+				v3 = round(v3, input.getLong(position + 16));
+				v4 = round(v4, input.getLong(position + 24));
+				position += 32;
+			} while (position <= limit);
+
+			hash = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7) + Long.rotateLeft(v3, 12)
+					+ Long.rotateLeft(v4, 18);
+
+			hash = mergeRound(hash, v1);
+			hash = mergeRound(hash, v2);
+			hash = mergeRound(hash, v3);
+			hash = mergeRound(hash, v4);
+		} else {
+			hash = seed + PRIME64_5;
+		}
+
+		hash += length;
+
+		while (position + 8 <= end) {
+			hash ^= round(0, input.getLong(position));
+			hash = Long.rotateLeft(hash, 27) * PRIME64_1 + PRIME64_4;
+			position += 8;
+		}
+
+		if (position + 4 <= end) {
+			hash ^= (input.getInt(position) & 0xFFFF_FFFFL) * PRIME64_1;
+			hash = Long.rotateLeft(hash, 23) * PRIME64_2 + PRIME64_3;
+			position += 4;
+		}
+
+		while (position < end) {
+			hash ^= (input.get(position) & 0xFF) * PRIME64_5;
+			hash = Long.rotateLeft(hash, 11) * PRIME64_1;
+			position++;
+		}
+
+		// Avalanche
+		hash ^= hash >>> 33;
+		hash *= PRIME64_2;
+		hash ^= hash >>> 29;
+		hash *= PRIME64_3;
+		hash ^= hash >>> 32;
+
+		return hash;
+	}
+
+	private static long round(long accumulator, final long input) {
+		accumulator += input * PRIME64_2;
+		accumulator = Long.rotateLeft(accumulator, 31);
+		return accumulator * PRIME64_1;
+	}
+
+	private static long mergeRound(long accumulator, final long value) {
+		accumulator ^= round(0, value);
+		return accumulator * PRIME64_1 + PRIME64_4;
+	}
+}